@@ -4,8 +4,17 @@ createArray() {
         IFS='; ' read -a $1 <<< "$2"
 }
 
-while getopts y:d:i:u: OPT; do
+# c=expire the metadata cache of the repo p=only download the packages y=repo d=delete i=install u=update
+# f=manifest file with one "action<TAB>package" line per package, action being delete, install or update
+
+while getopts cpy:d:i:u:f: OPT; do
 	case "$OPT" in
+		c)
+			EXPIRE_CACHE=1
+			;;
+		p)
+			PREFETCH=1
+			;;
 		d)
 			if [[ ! -z "$OPTARG" ]]; then
 				createArray DELETE $OPTARG
@@ -26,6 +35,9 @@ while getopts y:d:i:u: OPT; do
 				REPO="$OPTARG"
 			fi 
 			;;
+		f)
+			MANIFEST="$OPTARG"
+			;;
 		\?)
 			echo "Unknow command!" 1>&2
 			exit 1	
@@ -39,57 +51,113 @@ eoe() {
 	fi
 }
 
-grepEchoDef() {
-	local msg=$(grep "$2" log/yumError.log)
-        if [ ! -z "$msg" ]; then
-        	echo "$1 : $msg" 1>&2
-        fi
+jsonEscape() {
+	printf '%s' "$1" | tr '\n\t' '  ' | tr -d '\000-\037' | sed -e 's/\\/\\\\/g' -e 's/"/\\"/g'
 }
 
-grepecho() {	
-	grepEchoDef $1 "No package *"
-	grepEchoDef $1 "No Match for argument: *"
-	grepEchoDef $1 "Package \<.*\> already installed"
+## one JSON record per item on stdout, the agent parses them as they arrive
+result() {
+	printf '{"action":"%s","item":"%s","status":"%s","duration":%d,"message":"%s"}\n' "$1" "$(jsonEscape "$2")" "$3" "$4" "$(jsonEscape "$5")"
 }
 
+now() {
+	echo $(( $(date +%s%N) / 1000000 ))
+}
+
+if [ ! -z "$MANIFEST" ]; then
+	while IFS=$'\t' read -r ACTION ITEM; do
+		case "$ACTION" in
+			delete)
+				DELETE+=("$ITEM")
+				;;
+			install)
+				INSTALL+=("$ITEM")
+				;;
+			update)
+				UPDATE+=("$ITEM")
+				;;
+		esac
+	done < "$MANIFEST"
+fi
+
 if [ -z "$REPO" ]; then
 	echo "No repo was given" 1>&2
 	exit 1;
 fi
 
-##clean yum
-yum -q --enablerepo=$REPO clean all
-eoe "Yum clean all failed."
+if command -v dnf &> /dev/null; then
+	PM=dnf
+	UPDATE_CMD=upgrade
+else
+	PM=yum
+	UPDATE_CMD=update
+fi
 
-## delete 
-for element in "${DELETE[@]}"
-do
-	delete_str="$delete_str $element"
-done
+## the agent asks for this only if the repo changed since the last run
+if [ ! -z "$EXPIRE_CACHE" ]; then
+	$PM -q --disablerepo='*' --enablerepo=$REPO clean expire-cache
+	eoe "Expiring the metadata cache failed."
+fi
 
-if [ ! -z "$delete_str" ]; then
-	yum -y --enablerepo=$REPO remove $delete_str &>log/yumError.log
-	grepecho "DELETE"
+## download only, the agent runs this without holding its execution lock and installs later from the cache
+## best effort: yum exits with 1 on --downloadonly and the real transaction downloads whatever is missing
+if [ ! -z "$PREFETCH" ]; then
+	## xargs splits very long package lists into several calls
+	printf '%s\n' "${INSTALL[@]}" | xargs -r $PM -y -q --downloadonly --enablerepo=$REPO install &>log/yumPrefetch.log
+	printf '%s\n' "${UPDATE[@]}" | xargs -r $PM -y -q --downloadonly --enablerepo=$REPO $UPDATE_CMD &>>log/yumPrefetch.log
+	exit 0
 fi
 
-## install
+## one transaction for all changes, so dependencies are resolved and metadata is loaded only once
+TRANSACTION=$(mktemp)
+trap 'rm -f "$TRANSACTION"' EXIT
+if [ ${#DELETE[@]} -gt 0 ]; then
+	echo "remove ${DELETE[*]}" >> "$TRANSACTION"
+fi
+if [ ${#INSTALL[@]} -gt 0 ]; then
+	echo "install ${INSTALL[*]}" >> "$TRANSACTION"
+fi
+if [ ${#UPDATE[@]} -gt 0 ]; then
+	echo "$UPDATE_CMD ${UPDATE[*]}" >> "$TRANSACTION"
+fi
+if [ ! -s "$TRANSACTION" ]; then
+	exit 0
+fi
+echo "run" >> "$TRANSACTION"
+
+BEGIN=$(now)
+$PM -y --enablerepo=$REPO shell "$TRANSACTION" &>log/yumError.log
+DURATION=$(( $(now) - BEGIN ))
+
+## report every package, the transaction is checked by looking at what is installed afterwards
+NOT_INSTALLED=" $(printf '%s\n' "${DELETE[@]}" "${INSTALL[@]}" "${UPDATE[@]}" | xargs -r rpm -q 2>&1 | sed -n 's/^package \(.*\) is not installed$/\1/p' | tr '\n' ' ') "
+reason() {
+	local msg=$(grep -F -m 1 -- "$1" log/yumError.log)
+	echo "${msg:-$2}"
+}
+for element in "${DELETE[@]}"
+do
+	if [[ "$NOT_INSTALLED" != *" $element "* ]]; then
+		result delete "$element" failed $DURATION "$(reason "$element" "still installed after the transaction")"
+	else
+		result delete "$element" ok $DURATION ""
+	fi
+done
 for element in "${INSTALL[@]}"
 do
-        install_str="$install_str $element"
+	if [[ "$NOT_INSTALLED" == *" $element "* ]]; then
+		result install "$element" failed $DURATION "$(reason "$element" "not installed after the transaction")"
+	else
+		result install "$element" ok $DURATION ""
+	fi
 done
-if [ ! -z "$install_str" ]; then
-	yum -y --enablerepo=$REPO install $install_str &>log/yumError.log
-	grepecho "INSTALL"
-fi
-
-## update
 for element in "${UPDATE[@]}"
 do
-        update_str="$update_str $element"
+	if [[ "$NOT_INSTALLED" == *" $element "* ]]; then
+		result update "$element" failed $DURATION "$(reason "$element" "not installed after the transaction")"
+	else
+		result update "$element" ok $DURATION ""
+	fi
 done
-if [ ! -z "$update_str" ]; then
-	yum -y --enablerepo=$REPO update $update_str &>log/yumError.log
-	grepecho "UPDATE"
-fi
 
 exit 0;
@@ -5,8 +5,9 @@ createArray() {
 }
 
 # r=run/start s=stop u=update/reload
+# f=manifest file with one "action<TAB>service" line per service, action being start, stop or restart
 
-while getopts r:s:u: OPT; do
+while getopts r:s:u:f: OPT; do
 	case "$OPT" in
 		r)
 			if [[ ! -z "$OPTARG" ]]; then
@@ -22,7 +23,10 @@ while getopts r:s:u: OPT; do
 			if [[ ! -z "$OPTARG" ]]; then
 				createArray RESTART $OPTARG
 			fi 
-			;;		
+			;;
+		f)
+			MANIFEST="$OPTARG"
+			;;
 		\?)
 			echo "Unknow command!" 1>&2
 			exit 1	
@@ -30,35 +34,86 @@ while getopts r:s:u: OPT; do
     esac
 done
 
-prErr() {
-	if [ $? -gt 0 ]; then
-		echo "$1 of element $2 failed." 1>&2
-	fi
+if [ ! -z "$MANIFEST" ]; then
+	while IFS=$'\t' read -r ACTION ITEM; do
+		case "$ACTION" in
+			start)
+				START+=("$ITEM")
+				;;
+			stop)
+				STOP+=("$ITEM")
+				;;
+			restart)
+				RESTART+=("$ITEM")
+				;;
+		esac
+	done < "$MANIFEST"
+fi
+
+jsonEscape() {
+	printf '%s' "$1" | tr '\n\t' '  ' | tr -d '\000-\037' | sed -e 's/\\/\\\\/g' -e 's/"/\\"/g'
+}
+
+## one JSON record per item on stdout, the agent parses them as they arrive
+result() {
+	printf '{"action":"%s","item":"%s","status":"%s","duration":%d,"message":"%s"}\n' "$1" "$(jsonEscape "$2")" "$3" "$4" "$(jsonEscape "$5")"
+}
+
+now() {
+	echo $(( $(date +%s%N) / 1000000 ))
+}
+
+TMP=$(mktemp)
+trap 'rm -f "$TMP"' EXIT
+
+## runs a service action with its output going to a file, a daemon keeping the output open must not block the script
+serviceAction() {
+	service $1 $2 >"$TMP" 2>&1
+	local RC=$?
+	MSG=$(head -c 2000 "$TMP")
+	return $RC
 }
 
 ## handle restart
 for element in "${RESTART[@]}"
 do
-    service $element restart &> /dev/null		
+	BEGIN=$(now)
+	serviceAction $element restart
 	if [ $? -gt 0 ]; then
-		echo "RESTART of $element failed. Attemp to stop and start seperately." 1>&2
+		## attempt to stop and start separately, reported with the error of the restart if that works
+		RESTART_MSG=$MSG
 		service $element stop &> /dev/null
-		prErr "STOPPING" $element
-		service $element start &> /dev/null
-		prErr "STARTING" $element
+		serviceAction $element start
+		if [ $? -gt 0 ]; then
+			result restart "$element" failed $(( $(now) - BEGIN )) "$MSG"
+		else
+			result restart "$element" ok-fallback $(( $(now) - BEGIN )) "$RESTART_MSG"
+		fi
+		continue
 	fi
+	result restart "$element" ok $(( $(now) - BEGIN )) ""
 done
 
 ##handle stop
 for element in "${STOP[@]}"
 do
-	service $element stop &> /dev/null
-	prErr "STOPPING" $element
+	BEGIN=$(now)
+	serviceAction $element stop
+	if [ $? -gt 0 ]; then
+		result stop "$element" failed $(( $(now) - BEGIN )) "$MSG"
+	else
+		result stop "$element" ok $(( $(now) - BEGIN )) ""
+	fi
 done
 
 ##handle start
 for element in "${START[@]}"
 do
-	service $element start &> /dev/null
-	prErr "STARTING" $element
-done
\ No newline at end of file
+	BEGIN=$(now)
+	serviceAction $element start
+	if [ $? -gt 0 ]; then
+		result start "$element" failed $(( $(now) - BEGIN )) "$MSG"
+	else
+		result start "$element" ok $(( $(now) - BEGIN )) ""
+	fi
+done
@@ -0,0 +1,55 @@
+#!/bin/bash
+
+# Keeps the helper scripts loaded as functions and runs them on request, so the agent doesn't start a new bash per call.
+# request:  id, script name, argument count and the arguments, each terminated by NUL
+# response: "@@CCW <id> <exit code>" once stdout and stderr of the call are complete in <workdir>/out and <workdir>/err
+
+SCRIPTDIR=$(cd "$(dirname "$0")" && pwd)
+WORKDIR="$1"
+
+if [ -z "$WORKDIR" ] || [ ! -d "$WORKDIR" ]; then
+	echo "No work directory was given" 1>&2
+	exit 1
+fi
+# the agent closes stdin when it goes away
+trap 'rm -rf "$WORKDIR"' EXIT
+
+load() {
+	local name=$(basename "$1" .sh)
+	eval "__ccw_${name}() {
+$(cat "$1")
+}"
+}
+
+for script in "$SCRIPTDIR"/*.sh; do
+	if [ "$script" != "$SCRIPTDIR/worker.sh" ]; then
+		load "$script"
+	fi
+done
+touch "$WORKDIR/loaded"
+
+while IFS= read -r -d '' id && IFS= read -r -d '' script && IFS= read -r -d '' argc; do
+	args=()
+	for ((i = 0; i < argc; i++)); do
+		IFS= read -r -d '' arg || exit 1
+		args+=("$arg")
+	done
+	name=${script##*/}
+	name=${name%.sh}
+	file="$SCRIPTDIR/$name.sh"
+	# pick up scripts updated while the worker is running
+	if [ "$file" -nt "$WORKDIR/loaded" ]; then
+		load "$file"
+		touch "$WORKDIR/loaded"
+	fi
+	(
+		OPTIND=1
+		if declare -F "__ccw_$name" > /dev/null; then
+			"__ccw_$name" "${args[@]}"
+		else
+			echo "The script $script couldn't be found" 1>&2
+			exit 127
+		fi
+	) < /dev/null > "$WORKDIR/out" 2> "$WORKDIR/err"
+	echo "@@CCW $id $?"
+done
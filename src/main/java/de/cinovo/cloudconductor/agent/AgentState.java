@@ -38,6 +38,8 @@ public class AgentState {
 	
 	/** a write lock for jobs */
 	public static final Lock executionLock = new ReentrantLock();
+	/** a lock for package changes, held while packages get downloaded without the execution lock */
+	public static final Lock packageLock = new ReentrantLock();
 	
 	private static AgentState instance;
 	private static VelocityContext velocityContext;
@@ -0,0 +1,222 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.executors.helper.BaseExecutor;
+import de.cinovo.cloudconductor.agent.helper.AgentVars;
+import de.cinovo.cloudconductor.agent.helper.RepoType;
+import de.cinovo.cloudconductor.agent.helper.RepoTypeHelper;
+import de.cinovo.cloudconductor.api.lib.exceptions.CloudConductorException;
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Keeps the installed packages in memory as long as the package database is unchanged. The database is fingerprinted by name,
+ * size, modification time and inode of its files, so an unchanged database costs a few stat calls instead of a rpm -qa. A list
+ * derived from a package transaction is kept under a key of its own and only until the rescan interval
+ * (nodeagent.package.rescan.interval) since the last full read is over, then the database is read completely again.
+ */
+public class CachedInstalledPackages extends BaseExecutor<List<PackageVersion>> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CachedInstalledPackages.class);
+
+	private static final String DERIVED_PREFIX = "derived:";
+
+	private static String cachedFingerprint;
+	private static List<PackageVersion> cachedPackages;
+	private static long lastFullRead = 0;
+
+	private final RepoType repoType;
+	private List<PackageVersion> result;
+	private boolean failed = false;
+
+
+	/**
+	 * uses the package database of the configured repo type
+	 */
+	public CachedInstalledPackages() {
+		this(null);
+	}
+
+	/**
+	 * @param repoType the repo type selecting the package database, null for the configured one
+	 */
+	public CachedInstalledPackages(RepoType repoType) {
+		this.repoType = repoType;
+	}
+
+	/**
+	 * drops the cached packages, the next execution reads the package database again
+	 */
+	public static synchronized void invalidate() {
+		CachedInstalledPackages.cachedFingerprint = null;
+		CachedInstalledPackages.cachedPackages = null;
+	}
+
+	/**
+	 * Replaces the cached packages with a list the caller derived from a package transaction. It may lack packages the transaction
+	 * pulled in, so it is only served until the next full read is due.
+	 * 
+	 * @param type the repo type selecting the package database
+	 * @param packages the installed packages
+	 */
+	public static void updateDerived(RepoType type, List<PackageVersion> packages) {
+		String fingerprint = CachedInstalledPackages.fingerprint(RepoTypeHelper.getPackageDatabase(type));
+		synchronized (CachedInstalledPackages.class) {
+			CachedInstalledPackages.cachedFingerprint = fingerprint == null ? null : CachedInstalledPackages.DERIVED_PREFIX + fingerprint;
+			CachedInstalledPackages.cachedPackages = fingerprint == null ? null : Collections.unmodifiableList(new ArrayList<>(packages));
+		}
+	}
+
+	/**
+	 * @return true if the rescan interval since the last full read of the package database is over
+	 */
+	public static synchronized boolean isRescanDue() {
+		return (System.currentTimeMillis() - CachedInstalledPackages.lastFullRead) >= CachedInstalledPackages.getRescanInterval();
+	}
+
+	private static long getRescanInterval() {
+		String configured = System.getProperty(AgentVars.PACKAGE_RESCAN_INTERVAL_PROP);
+		if ((configured != null) && !configured.isEmpty()) {
+			try {
+				return TimeUnit.SECONDS.toMillis(Long.parseLong(configured.trim()));
+			} catch (NumberFormatException e) {
+				CachedInstalledPackages.LOGGER.warn("Invalid package rescan interval configured: " + configured);
+			}
+		}
+		return TimeUnit.SECONDS.toMillis(AgentVars.PACKAGE_RESCAN_INTERVAL_DEFAULT);
+	}
+
+	/**
+	 * @param type the repo type
+	 * @return the executor reading the package database completely
+	 */
+	protected IExecutor<List<PackageVersion>> createDelegate(RepoType type) {
+		return RepoTypeHelper.getInstalledPackages(type);
+	}
+
+	@Override
+	protected void doExecute() throws ExecutionError {
+		RepoType type = this.repoType;
+		if (type == null) {
+			try {
+				type = RepoTypeHelper.getRepoType();
+			} catch (CloudConductorException e) {
+				throw new ExecutionError(e);
+			}
+		}
+		String fingerprint = CachedInstalledPackages.fingerprint(RepoTypeHelper.getPackageDatabase(type));
+		synchronized (CachedInstalledPackages.class) {
+			String cached = CachedInstalledPackages.cachedFingerprint;
+			if ((fingerprint != null) && (fingerprint.equals(cached) || ((CachedInstalledPackages.DERIVED_PREFIX + fingerprint).equals(cached) && !CachedInstalledPackages.isRescanDue()))) {
+				this.result = CachedInstalledPackages.cachedPackages;
+				return;
+			}
+		}
+
+		long start = System.currentTimeMillis();
+		try {
+			this.result = Collections.unmodifiableList(new ArrayList<>(this.executeDelegate(this.createDelegate(type))));
+		} catch (ExecutionError e) {
+			this.failed = true;
+			throw e;
+		}
+
+		synchronized (CachedInstalledPackages.class) {
+			// keyed by the fingerprint taken before the read, a change during the read invalidates it
+			CachedInstalledPackages.cachedFingerprint = fingerprint;
+			CachedInstalledPackages.cachedPackages = this.result;
+			CachedInstalledPackages.lastFullRead = start;
+		}
+	}
+
+	@Override
+	protected void abort() {
+		// the delegate gets cancelled by the base executor
+	}
+
+	/**
+	 * @param database the package database file or folder
+	 * @return the fingerprint or null if the database can't be read
+	 */
+	static String fingerprint(File database) {
+		File[] files;
+		if (database.isDirectory()) {
+			files = database.listFiles();
+			if (files == null) {
+				return null;
+			}
+			Arrays.sort(files);
+		} else if (database.isFile()) {
+			files = new File[] {database};
+		} else {
+			return null;
+		}
+		StringBuilder fingerprint = new StringBuilder();
+		for (File file : files) {
+			String name = file.getName();
+			// the environment, lock and shared memory files change on every read access
+			if (name.startsWith("__db.") || name.endsWith(".lock") || name.endsWith("-shm") || !file.isFile()) {
+				continue;
+			}
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+				fingerprint.append(name);
+				fingerprint.append(':');
+				fingerprint.append(attributes.size());
+				fingerprint.append(':');
+				fingerprint.append(attributes.lastModifiedTime().toMillis());
+				fingerprint.append(':');
+				fingerprint.append(attributes.fileKey());
+				fingerprint.append(';');
+			} catch (IOException e) {
+				CachedInstalledPackages.LOGGER.debug("Couldn't stat " + file, e);
+				return null;
+			}
+		}
+		return fingerprint.toString();
+	}
+
+	@Override
+	public List<PackageVersion> getResult() {
+		return this.result;
+	}
+
+	@Override
+	public boolean failed() {
+		return this.failed;
+	}
+}
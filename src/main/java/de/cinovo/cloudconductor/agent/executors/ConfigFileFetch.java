@@ -0,0 +1,222 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.Files;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.exceptions.TransformationErrorException;
+import de.cinovo.cloudconductor.agent.executors.helper.BaseExecutor;
+import de.cinovo.cloudconductor.agent.helper.ConfigFileDataHandler.FileData;
+import de.cinovo.cloudconductor.agent.helper.FileHelper;
+import de.cinovo.cloudconductor.agent.helper.FileManifest;
+import de.cinovo.cloudconductor.agent.helper.ServerCom;
+import de.cinovo.cloudconductor.api.lib.exceptions.CloudConductorException;
+import de.cinovo.cloudconductor.api.model.ConfigFile;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Fetches and renders the content of one config file for the {@link FileExecutor}. Fetches run as far in parallel as the file
+ * executor allows, rendering is limited to the number of processors. The content is rendered straight into a temporary file next
+ * to the local file and hashed on the way, the file executor then either moves it over the local file or discards it.
+ */
+class ConfigFileFetch extends BaseExecutor<File> {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConfigFileFetch.class);
+	
+	private static final Semaphore renderPermits = new Semaphore(Runtime.getRuntime().availableProcessors());
+	
+	private final ConfigFile file;
+	private final File localFile;
+	private File target;
+	private File temp;
+	private HashCode hash;
+	private String etag;
+	private boolean writeFailed = false;
+	private boolean discarded = false;
+	
+	
+	/**
+	 * @param file the file to fetch
+	 * @param localFile the local file
+	 */
+	ConfigFileFetch(ConfigFile file, File localFile) {
+		this.file = file;
+		this.localFile = localFile;
+	}
+	
+	@Override
+	protected void doExecute() throws ExecutionError {
+		// a file written from unchanged server content needs neither rendering nor hashing
+		if (FileManifest.isCurrent(this.file.getName(), this.localFile, this.file.getChecksum())) {
+			return;
+		}
+		FileData data;
+		try {
+			data = ServerCom.fetchFileData(this.file, FileManifest.getETag(this.file.getName(), this.localFile));
+		} catch (CloudConductorException e) {
+			throw new ExecutionError(e);
+		}
+		if (data == null) {
+			return;
+		}
+		try {
+			ConfigFileFetch.renderPermits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExecutionError("Interrupted while waiting to render " + this.file.getName(), e);
+		}
+		try {
+			this.write(data.getContent());
+			this.etag = data.getETag();
+		} catch (TransformationErrorException | RuntimeException e) {
+			throw new ExecutionError(e);
+		} finally {
+			ConfigFileFetch.renderPermits.release();
+		}
+		synchronized (this) {
+			if (this.discarded) {
+				this.delete();
+			}
+		}
+	}
+	
+	private void write(String content) throws TransformationErrorException {
+		File written = null;
+		try {
+			// a symbolic link stays in place, the file it points to gets replaced
+			File resolved = this.localFile.getCanonicalFile();
+			Files.createParentDirs(resolved);
+			written = java.nio.file.Files.createTempFile(resolved.getParentFile().toPath(), "." + resolved.getName() + ".", ".tmp").toFile();
+			HashingOutputStream hashing = new HashingOutputStream(Hashing.md5(), new FileOutputStream(written));
+			try (Writer out = new BufferedWriter(new OutputStreamWriter(hashing, StandardCharsets.UTF_8))) {
+				ServerCom.render(this.file, content, out);
+			}
+			this.hash = hashing.hash();
+			this.target = resolved;
+			this.temp = written;
+		} catch (IOException e) {
+			ConfigFileFetch.LOGGER.warn("Failed to write " + this.localFile.getAbsolutePath(), e);
+			ConfigFileFetch.deleteQuietly(written);
+			this.writeFailed = true;
+		} catch (TransformationErrorException | RuntimeException e) {
+			ConfigFileFetch.deleteQuietly(written);
+			throw e;
+		}
+	}
+	
+	@Override
+	protected void abort() {
+		// the http call can't be interrupted, the file executor just doesn't wait for it
+	}
+	
+	/**
+	 * @return the entity tag of the fetched content, null if none or nothing got fetched
+	 */
+	String getETag() {
+		return this.etag;
+	}
+	
+	/**
+	 * @return the md5 hash of the rendered content, null if nothing got rendered
+	 */
+	HashCode getHash() {
+		return this.hash;
+	}
+	
+	/**
+	 * @return true if the rendered content couldn't be written
+	 */
+	boolean isWriteFailed() {
+		return this.writeFailed;
+	}
+	
+	/**
+	 * Moves the rendered content over the local file.
+	 *
+	 * @throws IOException if the file couldn't be moved, the rendered content is discarded then
+	 */
+	synchronized void replace() throws IOException {
+		try {
+			this.move(this.temp, this.target);
+			this.temp = null;
+		} finally {
+			this.delete();
+		}
+	}
+	
+	/**
+	 * @param source the rendered content
+	 * @param target the local file to replace
+	 * @throws IOException if the file couldn't be moved
+	 */
+	void move(File source, File target) throws IOException {
+		FileHelper.replace(source, target);
+	}
+	
+	/**
+	 * Deletes the rendered content, right away or as soon as the fetch finishes.
+	 */
+	synchronized void discard() {
+		this.discarded = true;
+		this.delete();
+	}
+	
+	private void delete() {
+		ConfigFileFetch.deleteQuietly(this.temp);
+		this.temp = null;
+	}
+	
+	private static void deleteQuietly(File file) {
+		if ((file != null) && !file.delete() && file.exists()) {
+			ConfigFileFetch.LOGGER.warn("Failed to delete " + file.getAbsolutePath());
+		}
+	}
+	
+	/**
+	 * @return the temporary file holding the rendered content, null if the local file is current or the content was discarded
+	 */
+	@Override
+	public synchronized File getResult() {
+		return this.temp;
+	}
+	
+	@Override
+	public boolean failed() {
+		return false;
+	}
+}
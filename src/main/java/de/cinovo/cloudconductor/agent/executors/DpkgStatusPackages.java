@@ -0,0 +1,181 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.executors.helper.BaseExecutor;
+import de.cinovo.cloudconductor.agent.helper.AgentVars;
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Reads the installed packages from the dpkg status file. The file is memory mapped and parsed stanza by stanza, only the
+ * Package, Status and Version fields are decoded. dpkg replaces the file by a rename, so a mapped file never changes while
+ * being parsed.
+ */
+public class DpkgStatusPackages extends BaseExecutor<List<PackageVersion>> {
+
+	private static final byte[] PACKAGE = "Package:".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] STATUS = "Status:".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] VERSION = "Version:".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] INSTALLED = " installed".getBytes(StandardCharsets.US_ASCII);
+
+	private final File status;
+	private List<PackageVersion> result;
+
+
+	/**
+	 * uses the configured dpkg status file
+	 */
+	public DpkgStatusPackages() {
+		this(new File(System.getProperty(AgentVars.DPKG_STATUS_PROP, AgentVars.DPKG_STATUS_DEFAULT)));
+	}
+
+	/**
+	 * @param status the dpkg status file
+	 */
+	public DpkgStatusPackages(File status) {
+		this.status = status;
+	}
+
+	@Override
+	protected void doExecute() throws ExecutionError {
+		try (FileChannel channel = FileChannel.open(this.status.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new ExecutionError(this.status + " is too large");
+			}
+			this.result = DpkgStatusPackages.parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		} catch (IOException e) {
+			throw new ExecutionError("Couldn't read " + this.status, e);
+		}
+	}
+
+	/**
+	 * @param buffer the content of a dpkg status file
+	 * @return the installed packages
+	 */
+	static List<PackageVersion> parse(ByteBuffer buffer) {
+		List<PackageVersion> packages = new ArrayList<>();
+		int limit = buffer.limit();
+		String name = null;
+		String version = null;
+		boolean installed = false;
+		int position = 0;
+		while (position < limit) {
+			int end = position;
+			while ((end < limit) && (buffer.get(end) != '\n')) {
+				end++;
+			}
+			int lineEnd = end;
+			if ((lineEnd > position) && (buffer.get(lineEnd - 1) == '\r')) {
+				lineEnd--;
+			}
+			if (lineEnd == position) {
+				// an empty line closes the stanza
+				if (installed && (name != null) && (version != null)) {
+					packages.add(new PackageVersion(name, version, null));
+				}
+				name = null;
+				version = null;
+				installed = false;
+			} else if (DpkgStatusPackages.startsWith(buffer, position, lineEnd, DpkgStatusPackages.PACKAGE)) {
+				name = DpkgStatusPackages.value(buffer, position + DpkgStatusPackages.PACKAGE.length, lineEnd);
+			} else if (DpkgStatusPackages.startsWith(buffer, position, lineEnd, DpkgStatusPackages.VERSION)) {
+				version = DpkgStatusPackages.value(buffer, position + DpkgStatusPackages.VERSION.length, lineEnd);
+			} else if (DpkgStatusPackages.startsWith(buffer, position, lineEnd, DpkgStatusPackages.STATUS)) {
+				// want flag status, only the status "installed" counts
+				installed = DpkgStatusPackages.endsWith(buffer, lineEnd, DpkgStatusPackages.INSTALLED);
+			}
+			position = end + 1;
+		}
+		if (installed && (name != null) && (version != null)) {
+			packages.add(new PackageVersion(name, version, null));
+		}
+		return packages;
+	}
+
+	private static boolean startsWith(ByteBuffer buffer, int start, int end, byte[] prefix) {
+		if ((end - start) < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer.get(start + i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean endsWith(ByteBuffer buffer, int end, byte[] suffix) {
+		int start = end - suffix.length;
+		if (start < 0) {
+			return false;
+		}
+		for (int i = 0; i < suffix.length; i++) {
+			if (buffer.get(start + i) != suffix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String value(ByteBuffer buffer, int start, int end) {
+		int from = start;
+		int to = end;
+		while ((from < to) && (buffer.get(from) == ' ')) {
+			from++;
+		}
+		while ((to > from) && (buffer.get(to - 1) == ' ')) {
+			to--;
+		}
+		byte[] bytes = new byte[to - from];
+		ByteBuffer slice = buffer.duplicate();
+		slice.position(from);
+		slice.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	protected void abort() {
+		// parsing the mapped file takes milliseconds
+	}
+
+	@Override
+	public List<PackageVersion> getResult() {
+		return this.result;
+	}
+
+	@Override
+	public boolean failed() {
+		return false;
+	}
+}
@@ -22,19 +22,26 @@ package de.cinovo.cloudconductor.agent.executors;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.hash.HashCode;
-import com.google.common.hash.Hashing;
-import com.google.common.io.Files;
 
 import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
-import de.cinovo.cloudconductor.agent.exceptions.TransformationErrorException;
+import de.cinovo.cloudconductor.agent.executors.helper.BaseExecutor;
+import de.cinovo.cloudconductor.agent.helper.AgentVars;
 import de.cinovo.cloudconductor.agent.helper.FileHelper;
-import de.cinovo.cloudconductor.agent.helper.ServerCom;
-import de.cinovo.cloudconductor.api.lib.exceptions.CloudConductorException;
+import de.cinovo.cloudconductor.agent.helper.FileManifest;
+import de.cinovo.cloudconductor.agent.helper.FileStateIndex;
+import de.cinovo.cloudconductor.agent.helper.FutureImpl;
+import de.cinovo.cloudconductor.agent.helper.TemplateCache;
 import de.cinovo.cloudconductor.api.model.ConfigFile;
 
 /**
@@ -44,7 +51,9 @@ import de.cinovo.cloudconductor.api.model.ConfigFile;
  * @author psigloch
  * 
  */
-public class FileExecutor implements IExecutor<Set<String>> {
+public class FileExecutor extends BaseExecutor<Set<String>> {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(FileExecutor.class);
 	
 	private Set<ConfigFile> files;
 	private StringBuilder errors;
@@ -65,69 +74,152 @@ public class FileExecutor implements IExecutor<Set<String>> {
 	}
 	
 	@Override
-	public IExecutor<Set<String>> execute() throws ExecutionError {
+	protected void doExecute() throws ExecutionError {
 		this.errors = new StringBuilder();
 		
-		for (ConfigFile file : this.files) {
-			File localFile = new File(file.getTargetPath());
-			HashCode localFileHash = this.getChecksum(localFile);
-			String serverFile;
-			try {
-				serverFile = ServerCom.getFileData(file);
-			} catch (TransformationErrorException | CloudConductorException e) {
-				continue;
-			}
-			HashCode serverFileHash = this.getChecksum(serverFile);
-			
-			boolean changeOccured = false;
-			
-			if (!serverFileHash.equals(localFileHash)) {
+		// the next files get fetched and rendered while the current one is applied, the files are applied in order
+		List<ConfigFile> list = new ArrayList<>(this.files);
+		int window = FileExecutor.getParallelism();
+		List<ConfigFileFetch> fetches = new ArrayList<>(list.size());
+		List<FutureImpl<File>> futures = new ArrayList<>(list.size());
+		try {
+			for (int i = 0; i < list.size(); i++) {
+				if (this.isAborted()) {
+					break;
+				}
+				while (futures.size() < Math.min(list.size(), i + window)) {
+					ConfigFile next = list.get(futures.size());
+					ConfigFileFetch fetch = this.createFetch(next, new File(next.getTargetPath()));
+					fetches.add(fetch);
+					futures.add(this.executeChild(fetch, null));
+				}
+				FutureImpl<File> future = futures.get(i);
 				try {
-					Files.createParentDirs(localFile);
-					Files.write(serverFile, localFile, Charset.forName("UTF-8"));
-					changeOccured = true;
-				} catch (IOException e) {
-					// add error to exception list
-					this.errors.append("Failed to write file: " + localFile.getAbsolutePath());
-					this.errors.append(System.lineSeparator());
-					// just skip this file
+					future.get();
+				} catch (ExecutionException | CancellationException e) {
+					// just skip files that can't be fetched
 					continue;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ExecutionError("Interrupted while fetching " + list.get(i).getName(), e);
+				} finally {
+					this.forgetChild(future);
 				}
+				this.apply(list.get(i), fetches.get(i));
 			}
-			
-			// set file owner and group
-			try {
-				if (!FileHelper.isFileOwner(localFile, file.getOwner(), file.getGroup())) {
-					FileHelper.chown(localFile, file.getOwner(), file.getGroup());
-					changeOccured = true;
-				}
-			} catch (IOException e) {
-				this.errors.append("Failed to set user and/or group for file: " + localFile.getAbsolutePath());
-				this.errors.append(System.lineSeparator());
+		} finally {
+			// fetches ahead of an abort leave their rendered content behind otherwise
+			for (ConfigFileFetch fetch : fetches) {
+				fetch.discard();
 			}
-			
-			// set file mode
-			try {
-				String fileMode = this.fileModeIntToString(file.getFileMode());
-				if (!FileHelper.isFileMode(localFile, fileMode)) {
-					FileHelper.chmod(localFile, fileMode);
+			FileStateIndex.get().flush();
+		}
+		
+		FileExecutor.LOGGER.debug("Template cache: " + TemplateCache.getStats());
+		if (!this.errors.toString().trim().isEmpty()) {
+			throw new ExecutionError(this.errors.toString().trim());
+		}
+	}
+	
+	/**
+	 * @param file the config file
+	 * @param localFile the local file
+	 * @return the fetch of the content of the config file
+	 */
+	ConfigFileFetch createFetch(ConfigFile file, File localFile) {
+		return new ConfigFileFetch(file, localFile);
+	}
+	
+	private void apply(ConfigFile file, ConfigFileFetch fetch) {
+		File localFile = new File(file.getTargetPath());
+		boolean changeOccured = false;
+		
+		if (fetch.isWriteFailed()) {
+			this.writeFailed(localFile);
+			// just skip this file
+			return;
+		}
+		File serverFile = fetch.getResult();
+		if (serverFile != null) {
+			HashCode localFileHash = this.getChecksum(localFile);
+			if (fetch.getHash().equals(localFileHash)) {
+				fetch.discard();
+			} else {
+				this.prepare(serverFile, file);
+				try {
+					fetch.replace();
 					changeOccured = true;
+				} catch (IOException e) {
+					this.writeFailed(localFile);
+					// just skip this file
+					return;
 				}
-			} catch (IOException e) {
-				this.errors.append("Failed to set chmod for file: " + localFile.getAbsolutePath());
-				this.errors.append(System.lineSeparator());
 			}
-			
-			// set services to restart
-			if (file.isReloadable() && changeOccured) {
-				this.restart.addAll(file.getDependentServices());
+			FileManifest.put(file.getName(), localFile, fetch.getETag(), file.getChecksum());
+		}
+		
+		// set file owner and group
+		try {
+			if (!FileHelper.isFileOwner(localFile, file.getOwner(), file.getGroup())) {
+				FileHelper.chown(localFile, file.getOwner(), file.getGroup());
+				changeOccured = true;
 			}
+		} catch (IOException e) {
+			this.errors.append("Failed to set user and/or group for file: " + localFile.getAbsolutePath());
+			this.errors.append(System.lineSeparator());
 		}
 		
-		if (!this.errors.toString().trim().isEmpty()) {
-			throw new ExecutionError(this.errors.toString().trim());
+		// set file mode
+		try {
+			String fileMode = this.fileModeIntToString(file.getFileMode());
+			if (!FileHelper.isFileMode(localFile, fileMode)) {
+				FileHelper.chmod(localFile, fileMode);
+				changeOccured = true;
+			}
+		} catch (IOException e) {
+			this.errors.append("Failed to set chmod for file: " + localFile.getAbsolutePath());
+			this.errors.append(System.lineSeparator());
+		}
+		
+		// set services to restart
+		if (file.isReloadable() && changeOccured) {
+			this.restart.addAll(file.getDependentServices());
+		}
+	}
+	
+	private void writeFailed(File localFile) {
+		// add error to exception list
+		this.errors.append("Failed to write file: " + localFile.getAbsolutePath());
+		this.errors.append(System.lineSeparator());
+		FileManifest.remove(localFile);
+	}
+	
+	private void prepare(File serverFile, ConfigFile file) {
+		// owner and mode are set before the new content replaces the local file, so it never shows up with the wrong ones
+		try {
+			FileHelper.chown(serverFile, file.getOwner(), file.getGroup());
+			FileHelper.chmod(serverFile, this.fileModeIntToString(file.getFileMode()));
+		} catch (IOException | RuntimeException e) {
+			// checked and reported again once the file is in place
+		}
+	}
+	
+	private static int getParallelism() {
+		try {
+			return Math.max(1, Integer.parseInt(System.getProperty(AgentVars.FILE_FETCH_PARALLELISM_PROP, String.valueOf(AgentVars.FILE_FETCH_PARALLELISM_DEFAULT))));
+		} catch (NumberFormatException e) {
+			return AgentVars.FILE_FETCH_PARALLELISM_DEFAULT;
 		}
-		return this;
+	}
+	
+	/**
+	 * Nothing to interrupt here: the base executor cancels the pending fetches, so the file loop stops waiting for the server right
+	 * away and checks isAborted() before the next file. A file that is being applied is finished, which only takes local file
+	 * operations and never leaves it half-written.
+	 */
+	@Override
+	protected void abort() {
+		// the pending fetches get cancelled by the base executor
 	}
 	
 	private String fileModeIntToString(String mod) {
@@ -169,17 +261,9 @@ public class FileExecutor implements IExecutor<Set<String>> {
 		return !this.errors.toString().trim().isEmpty();
 	}
 	
-	private HashCode getChecksum(String content) {
-		return Hashing.md5().hashBytes(content.getBytes());
-	}
-	
 	private HashCode getChecksum(File content) {
-		try {
-			return Files.hash(content, Hashing.md5());
-		} catch (IOException e) {
-			// should never happen, if it does-> leave checksum empty
-			return null;
-		}
+		// null if the file can't be read, it gets written then
+		return FileStateIndex.get().getChecksum(content);
 	}
 	
 }
@@ -20,8 +20,8 @@ package de.cinovo.cloudconductor.agent.executors;
  * #L%
  */
 
-
 import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.helper.FutureImpl;
 
 /**
  * Copyright 2013 Cinovo AG<br>
@@ -44,9 +44,26 @@ public interface IExecutor<T> {
 	 */
 	public abstract IExecutor<T> execute() throws ExecutionError;
 	
+	/**
+	 * Executes in the background. Cancelling the returned future aborts the execution.
+	 * 
+	 * @return the future holding the result of the execution
+	 */
+	public abstract FutureImpl<T> executeAsync();
+	
 	/**
 	 * @return true if exit value != 0
 	 */
 	public abstract boolean failed();
 	
+	/**
+	 * @return the time spent in the last execution in milliseconds, -1 if not executed yet
+	 */
+	public abstract long getDuration();
+	
+	/**
+	 * @return true if the last execution was aborted because it passed its deadline
+	 */
+	public abstract boolean timedOut();
+	
 }
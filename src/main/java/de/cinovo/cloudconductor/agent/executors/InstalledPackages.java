@@ -18,16 +18,24 @@ package de.cinovo.cloudconductor.agent.executors;
  */
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
 import de.cinovo.cloudconductor.agent.executors.helper.AbstractExecutor;
+import de.cinovo.cloudconductor.agent.executors.helper.LineHandler;
+import de.cinovo.cloudconductor.agent.executors.helper.OutputBuffer;
+import de.cinovo.cloudconductor.agent.executors.helper.PackageStreamAnalyzer;
+import de.cinovo.cloudconductor.agent.executors.helper.StreamAnalyzer;
 import de.cinovo.cloudconductor.api.model.PackageVersion;
 
 /**
  * Copyright 2013 Cinovo AG<br>
  * <br>
+ * Lists the installed packages through rpm, either all of them or the ones with the given names.
  * 
  * @author psigloch
  * 
@@ -35,23 +43,86 @@ import de.cinovo.cloudconductor.api.model.PackageVersion;
 public class InstalledPackages extends AbstractExecutor<List<PackageVersion>> {
 	
 	private static final String cmd = "rpm -qa --queryformat %{NAME};%{VERSION}-%{RELEASE}\\n";
-	private static final String delimiter = ";";
+	private static final String queryFormat = "%{NAME};%{VERSION}-%{RELEASE}\\n";
+	private static final String notInstalledSuffix = " is not installed";
+	
+	private final List<String> names;
 	private List<PackageVersion> result = new ArrayList<>();
 	
 	
+	/**
+	 * lists all installed packages
+	 */
+	public InstalledPackages() {
+		this.names = null;
+	}
+	
+	/**
+	 * lists the installed versions of the given packages
+	 * 
+	 * @param names the package names
+	 */
+	public InstalledPackages(Collection<String> names) {
+		this.names = new ArrayList<>(names);
+	}
+	
+	@Override
+	protected void doExecute() throws ExecutionError {
+		if ((this.names != null) && this.names.isEmpty()) {
+			this.result = Collections.emptyList();
+			return;
+		}
+		super.doExecute();
+	}
+	
 	@Override
 	protected Process genProcess() throws IOException {
-		return Runtime.getRuntime().exec(InstalledPackages.cmd);
+		if (this.names == null) {
+			return Runtime.getRuntime().exec(InstalledPackages.cmd);
+		}
+		List<String> query = new ArrayList<>();
+		query.add("rpm");
+		query.add("-q");
+		query.add("--queryformat");
+		query.add(InstalledPackages.queryFormat);
+		query.addAll(this.names);
+		return Runtime.getRuntime().exec(query.toArray(new String[query.size()]));
 	}
 	
 	@Override
-	protected void analyzeStream(String[] dev, String[] error) throws ExecutionError {
-		if (error.length > 0) {
+	protected StreamAnalyzer getAnalyzer(InputStream stream) {
+		// parse the packages from the raw bytes as they arrive
+		return new PackageStreamAnalyzer(stream, this.result);
+	}
+	
+	@Override
+	protected void analyzeStream(OutputBuffer dev, OutputBuffer error) throws ExecutionError {
+		if (!error.isEmpty()) {
 			throw new ExecutionError("Error while collecting installed packages");
 		}
-		for (String str : dev) {
-			String[] arr = str.split(InstalledPackages.delimiter);
-			this.result.add(new PackageVersion(arr[0], arr[1], null));
+		if (this.names != null) {
+			// rpm -q reports each name it doesn't know
+			final StringBuilder unexpected = new StringBuilder();
+			try {
+				dev.forEachLine(new LineHandler() {
+					
+					@Override
+					public void handleLine(String line) {
+						if (!line.endsWith(InstalledPackages.notInstalledSuffix)) {
+							unexpected.append(line).append("\n");
+						}
+					}
+				});
+			} catch (IOException e) {
+				throw new ExecutionError("Couldn't read the output of rpm", e);
+			}
+			if (unexpected.length() > 0) {
+				throw new ExecutionError("Unexpected output while collecting installed packages: " + unexpected);
+			}
+			return;
+		}
+		if (!dev.isEmpty()) {
+			throw new ExecutionError("Unexpected output while collecting installed packages: " + dev.toString());
 		}
 	}
 	
@@ -0,0 +1,155 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Resolves the service state from the system state files. On systemd hosts a service runs if the cgroup of its unit holds a live
+ * process. Otherwise the pid file of the service decides, like the status action of a LSB init script does: a live process means
+ * running, a stale pid file means not running. Services without pid file and stopped systemd units are left to the init script.
+ */
+public class NativeServiceStateProbe implements ServiceStateProbe {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(NativeServiceStateProbe.class);
+
+	private static final String UNIT_SUFFIX = ".service";
+
+	private final File proc;
+	private final File run;
+	private final File cgroup;
+
+
+	/**
+	 * uses the system folders
+	 */
+	public NativeServiceStateProbe() {
+		this(new File("/proc"), new File("/var/run"), new File("/sys/fs/cgroup"));
+	}
+
+	/**
+	 * @param proc the proc file system
+	 * @param run the folder holding the pid files and the systemd runtime folder
+	 * @param cgroup the cgroup file system
+	 */
+	public NativeServiceStateProbe(File proc, File run, File cgroup) {
+		this.proc = proc;
+		this.run = run;
+		this.cgroup = cgroup;
+	}
+
+	@Override
+	public Boolean isRunning(String initScript) {
+		if ((initScript == null) || initScript.isEmpty() || initScript.contains("/")) {
+			return null;
+		}
+		if (this.isSystemd() && this.isUnitRunning(initScript)) {
+			return Boolean.TRUE;
+		}
+		return this.checkPidFile(initScript);
+	}
+
+	private boolean isSystemd() {
+		return new File(this.run, "systemd/system").isDirectory();
+	}
+
+	private boolean isUnitRunning(String initScript) {
+		String unit = initScript.endsWith(NativeServiceStateProbe.UNIT_SUFFIX) ? initScript : initScript + NativeServiceStateProbe.UNIT_SUFFIX;
+		// unified hierarchy first, then the named systemd hierarchy of cgroup v1
+		String[] candidates = {"system.slice/" + unit, "systemd/system.slice/" + unit};
+		for (String candidate : candidates) {
+			File procs = new File(new File(this.cgroup, candidate), "cgroup.procs");
+			if (!procs.isFile()) {
+				continue;
+			}
+			for (String line : this.readLines(procs)) {
+				Integer pid = NativeServiceStateProbe.parsePid(line);
+				if ((pid != null) && this.isAlive(pid)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private Boolean checkPidFile(String initScript) {
+		File[] candidates = {new File(this.run, initScript + ".pid"), new File(new File(this.run, initScript), initScript + ".pid")};
+		for (File pidFile : candidates) {
+			if (!pidFile.isFile()) {
+				continue;
+			}
+			List<String> lines = this.readLines(pidFile);
+			if (lines.isEmpty()) {
+				return null;
+			}
+			Integer pid = NativeServiceStateProbe.parsePid(lines.get(0));
+			if (pid == null) {
+				return null;
+			}
+			return this.isAlive(pid);
+		}
+		return null;
+	}
+
+	private boolean isAlive(int pid) {
+		File stat = new File(new File(this.proc, String.valueOf(pid)), "stat");
+		List<String> lines = this.readLines(stat);
+		if (lines.isEmpty()) {
+			return false;
+		}
+		// the state follows the command name, which may contain blanks and brackets
+		String line = lines.get(0);
+		int end = line.lastIndexOf(')');
+		if ((end < 0) || ((end + 2) >= line.length())) {
+			return false;
+		}
+		char state = line.charAt(end + 2);
+		return (state != 'Z') && (state != 'X');
+	}
+
+	private List<String> readLines(File file) {
+		try {
+			return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			NativeServiceStateProbe.LOGGER.debug("Couldn't read " + file, e);
+			return Collections.emptyList();
+		}
+	}
+
+	private static Integer parsePid(String value) {
+		try {
+			int pid = Integer.parseInt(value.trim());
+			return pid > 0 ? pid : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.executors.helper.BaseExecutor;
+import de.cinovo.cloudconductor.agent.executors.rpmdb.RpmDatabase;
+import de.cinovo.cloudconductor.agent.helper.AgentVars;
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Reads the installed packages straight from the rpm database files. Falls back to {@link InstalledPackages} if the database
+ * format isn't supported or the database can't be read.
+ */
+public class RpmDbPackages extends BaseExecutor<List<PackageVersion>> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RpmDbPackages.class);
+
+	private final File database;
+	private List<PackageVersion> result;
+	private boolean failed = false;
+
+
+	/**
+	 * uses the configured rpm database
+	 */
+	public RpmDbPackages() {
+		this(new File(System.getProperty(AgentVars.RPM_DB_PROP, AgentVars.RPM_DB_DEFAULT)));
+	}
+
+	/**
+	 * @param database the rpm database folder
+	 */
+	public RpmDbPackages(File database) {
+		this.database = database;
+	}
+
+	@Override
+	protected void doExecute() throws ExecutionError {
+		try (RpmDatabase db = RpmDatabase.open(this.database)) {
+			if (db != null) {
+				this.result = db.readPackages();
+				return;
+			}
+			RpmDbPackages.LOGGER.debug("No supported rpm database in " + this.database + ", using rpm -qa");
+		} catch (IOException | RuntimeException e) {
+			RpmDbPackages.LOGGER.warn("Couldn't read the rpm database in " + this.database + ", using rpm -qa", e);
+		}
+		try {
+			this.result = this.executeDelegate(new InstalledPackages());
+		} catch (ExecutionError e) {
+			this.failed = true;
+			throw e;
+		}
+	}
+
+	@Override
+	protected void abort() {
+		// reading the database files takes milliseconds, rpm -qa gets cancelled by the base executor
+	}
+
+	@Override
+	public List<PackageVersion> getResult() {
+		return this.result;
+	}
+
+	@Override
+	public boolean failed() {
+		return this.failed;
+	}
+}
@@ -0,0 +1,140 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.executors.helper.BaseExecutor;
+import de.cinovo.cloudconductor.agent.helper.AgentVars;
+import de.cinovo.cloudconductor.agent.helper.FutureImpl;
+import de.cinovo.cloudconductor.api.model.Service;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Checks the state of the services. A {@link ServiceStateProbe} answers first, the services it can't resolve are checked
+ * concurrently by one state script call per service. The number of concurrent checks is limited by
+ * nodeagent.service.probe.parallelism, each check has its own timeout (nodeagent.timeout.serviceState.sh). If a check fails or
+ * times out the state of that service is unknown and the whole run fails, so no service gets started or stopped on a guess.
+ */
+public class RunningServices extends BaseExecutor<List<String>> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RunningServices.class);
+
+	private final List<Service> services;
+	private final ServiceStateProbe probe;
+	private List<String> result;
+
+
+	/**
+	 * @param services the services to check
+	 */
+	public RunningServices(Collection<Service> services) {
+		this(services, "false".equalsIgnoreCase(System.getProperty(AgentVars.SERVICE_PROBE_NATIVE_PROP)) ? null : new NativeServiceStateProbe());
+	}
+
+	/**
+	 * @param services the services to check
+	 * @param probe the probe asked before the state script, may be null
+	 */
+	public RunningServices(Collection<Service> services, ServiceStateProbe probe) {
+		this.services = services == null ? Collections.<Service> emptyList() : new ArrayList<>(services);
+		this.probe = probe;
+	}
+
+	@Override
+	protected void doExecute() throws ExecutionError {
+		// one entry per service, the init script output for running services
+		String[] outputs = new String[this.services.size()];
+		List<Integer> unresolved = new ArrayList<>();
+		List<ScriptExecutor> scripts = new ArrayList<>();
+		for (int i = 0; i < outputs.length; i++) {
+			Service service = this.services.get(i);
+			Boolean running = this.probe == null ? null : this.probe.isRunning(service.getInitScript());
+			if (running == null) {
+				unresolved.add(i);
+				scripts.add(ScriptExecutor.generateCheckServiceState(Collections.singleton(service)));
+			} else if (running.booleanValue()) {
+				outputs[i] = service.getInitScript();
+			}
+		}
+
+		List<FutureImpl<String>> futures = this.executeAll(scripts, RunningServices.getParallelism());
+		for (int i = 0; i < futures.size(); i++) {
+			int index = unresolved.get(i).intValue();
+			try {
+				outputs[index] = futures.get(i).get();
+			} catch (ExecutionException e) {
+				String msg = "Couldn't check the state of " + this.services.get(index).getName() + ": " + e.getCause().getMessage();
+				RunningServices.LOGGER.warn(msg);
+				throw new ExecutionError(msg, e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ExecutionError("Interrupted while checking the services.", e);
+			}
+		}
+
+		List<String> running = new ArrayList<>();
+		for (String output : outputs) {
+			if (output == null) {
+				continue;
+			}
+			try (Scanner s = new Scanner(output)) {
+				while (s.hasNext()) {
+					running.add(s.next().trim());
+				}
+			}
+		}
+		this.result = running;
+	}
+
+	private static int getParallelism() {
+		try {
+			return Integer.parseInt(System.getProperty(AgentVars.SERVICE_PROBE_PARALLELISM_PROP, String.valueOf(AgentVars.SERVICE_PROBE_PARALLELISM_DEFAULT)));
+		} catch (NumberFormatException e) {
+			return AgentVars.SERVICE_PROBE_PARALLELISM_DEFAULT;
+		}
+	}
+
+	@Override
+	protected void abort() {
+		// the probes get cancelled by the base executor
+	}
+
+	@Override
+	public List<String> getResult() {
+		return this.result;
+	}
+
+	@Override
+	public boolean failed() {
+		return false;
+	}
+}
@@ -18,11 +18,29 @@ package de.cinovo.cloudconductor.agent.executors;
  */
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
 import de.cinovo.cloudconductor.agent.executors.helper.AbstractExecutor;
+import de.cinovo.cloudconductor.agent.executors.helper.OutputBuffer;
+import de.cinovo.cloudconductor.agent.executors.helper.ResultStreamAnalyzer;
+import de.cinovo.cloudconductor.agent.executors.helper.ScriptResult;
+import de.cinovo.cloudconductor.agent.executors.helper.ShellWorker;
+import de.cinovo.cloudconductor.agent.executors.helper.StreamAnalyzer;
 import de.cinovo.cloudconductor.agent.helper.AgentVars;
 import de.cinovo.cloudconductor.api.model.PackageVersion;
 import de.cinovo.cloudconductor.api.model.Service;
@@ -30,48 +48,55 @@ import de.cinovo.cloudconductor.api.model.Service;
 /**
  * Copyright 2013 Cinovo AG<br>
  * <br>
+ * Runs one of the helper scripts. The scripts are run through a pooled {@link ShellWorker} if possible, so a call costs a fork of
+ * the worker instead of starting a new bash.
  *
  * @author psigloch
  *
  */
 public class ScriptExecutor extends AbstractExecutor<String> {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(ScriptExecutor.class);
+
 	/**
-	 * @param remove packages to remove, separated by semicolon
-	 * @param install packages to install, separated by semicolon
-	 * @param update packages to update, separated by semicolon
+	 * @param remove packages to remove
+	 * @param install packages to install
+	 * @param update packages to update
+	 * @param expireCache true to expire the metadata cache of the repo first
 	 * @return the executor
 	 */
-	public static ScriptExecutor generatePackageHandler(Collection<PackageVersion> remove, Collection<PackageVersion> install, Collection<PackageVersion> update) {
+	public static ScriptExecutor generatePackageHandler(Collection<PackageVersion> remove, Collection<PackageVersion> install, Collection<PackageVersion> update, boolean expireCache) {
+		return ScriptExecutor.packageHandler(expireCache ? "-c " : "", remove, install, update);
+	}
+
+	private static ScriptExecutor packageHandler(String flags, Collection<PackageVersion> remove, Collection<PackageVersion> install, Collection<PackageVersion> update) {
 		String scriptName = AgentVars.SCRIPT_PACKAGE_MANAGER_HANDLER;
-		String repoArg = "-y " + System.getProperty(AgentVars.REPO_NAME_PROP);
-		StringBuilder d = new StringBuilder();
-		StringBuilder i = new StringBuilder();
-		StringBuilder u = new StringBuilder();
-		if ((remove != null) && !remove.isEmpty()) {
-			d.append("-d ");
-			for (PackageVersion pck : remove) {
-				d.append(ScriptExecutor.packageVersionToString(pck));
-				d.append(";");
-			}
-		}
+		String repoArg = flags + "-y " + System.getProperty(AgentVars.REPO_NAME_PROP);
+		List<String> manifest = new ArrayList<>();
+		ScriptExecutor.addPackages(manifest, "delete", remove);
+		ScriptExecutor.addPackages(manifest, "install", install);
+		ScriptExecutor.addPackages(manifest, "update", update);
+		ScriptExecutor executor = new ScriptExecutor(scriptName, repoArg);
+		executor.manifest = manifest;
+		return executor;
+	}
 
-		if ((install != null) && !install.isEmpty()) {
-			i.append("-i ");
-			for (PackageVersion pck : install) {
-				i.append(ScriptExecutor.packageVersionToString(pck));
-				i.append(";");
+	private static void addPackages(List<String> manifest, String action, Collection<PackageVersion> packages) {
+		if (packages != null) {
+			for (PackageVersion pck : packages) {
+				manifest.add(action + "\t" + ScriptExecutor.packageVersionToString(pck));
 			}
 		}
+	}
 
-		if ((update != null) && !update.isEmpty()) {
-			u.append("-u ");
-			for (PackageVersion pck : update) {
-				u.append(ScriptExecutor.packageVersionToString(pck));
-				u.append(";");
-			}
-		}
-		return new ScriptExecutor(scriptName, repoArg, d.toString(), i.toString(), u.toString());
+	/**
+	 * @param install packages to install
+	 * @param update packages to update
+	 * @param expireCache true to expire the metadata cache of the repo first
+	 * @return the executor only downloading the packages into the package manager cache
+	 */
+	public static ScriptExecutor generatePackagePrefetch(Collection<PackageVersion> install, Collection<PackageVersion> update, boolean expireCache) {
+		return ScriptExecutor.packageHandler(expireCache ? "-p -c " : "-p ", null, install, update);
 	}
 
 	/**
@@ -82,33 +107,21 @@ public class ScriptExecutor extends AbstractExecutor<String> {
 	 */
 	public static ScriptExecutor generateServiceStateHandler(Collection<String> restart, Collection<String> start, Collection<String> stop) {
 		String scriptName = AgentVars.SCRIPT_SERVICE_HANDLER;
-		StringBuilder r = new StringBuilder();
-		StringBuilder s = new StringBuilder();
-		StringBuilder u = new StringBuilder();
-		if ((start != null) && !start.isEmpty()) {
-			r.append("-r ");
-			for (String service : start) {
-				r.append(service);
-				r.append(";");
-			}
-		}
-
-		if ((stop != null) && !stop.isEmpty()) {
-			s.append("-s ");
-			for (String service : stop) {
-				s.append(service);
-				s.append(";");
-			}
-		}
+		List<String> manifest = new ArrayList<>();
+		ScriptExecutor.addServices(manifest, "restart", restart);
+		ScriptExecutor.addServices(manifest, "stop", stop);
+		ScriptExecutor.addServices(manifest, "start", start);
+		ScriptExecutor executor = new ScriptExecutor(scriptName);
+		executor.manifest = manifest;
+		return executor;
+	}
 
-		if ((restart != null) && !restart.isEmpty()) {
-			u.append("-u ");
-			for (String service : restart) {
-				u.append(service);
-				u.append(";");
+	private static void addServices(List<String> manifest, String action, Collection<String> services) {
+		if (services != null) {
+			for (String service : services) {
+				manifest.add(action + "\t" + service);
 			}
 		}
-		return new ScriptExecutor(scriptName, r.toString(), s.toString(), u.toString());
 	}
 
 	/**
@@ -127,7 +140,11 @@ public class ScriptExecutor extends AbstractExecutor<String> {
 		return new ScriptExecutor(scriptName, cmd.toString().trim());
 	}
 
-	private static String packageVersionToString(PackageVersion packageVersion) {
+	/**
+	 * @param packageVersion the package
+	 * @return the package the way the scripts name it, e.g. in result records
+	 */
+	public static String packageVersionToString(PackageVersion packageVersion) {
 		StringBuffer buffer = new StringBuffer();
 		buffer.append(packageVersion.getName());
 		buffer.append("-");
@@ -138,7 +155,11 @@ public class ScriptExecutor extends AbstractExecutor<String> {
 
 	private String script;
 	private String[] args;
+	private List<String> manifest;
+	private File manifestFile;
 	private String result;
+	private final List<ScriptResult> records = Collections.synchronizedList(new ArrayList<ScriptResult>());
+	private ShellWorker worker;
 
 
 	/**
@@ -156,32 +177,218 @@ public class ScriptExecutor extends AbstractExecutor<String> {
 		if (!scriptPath.exists()) {
 			throw new IOException("The script " + this.script + " couldn't be found");
 		}
-		StringBuilder scriptBuilder = new StringBuilder();
-		scriptBuilder.append(scriptPath.getAbsolutePath());
+		List<String> cmd = new ArrayList<>();
+		cmd.add(scriptPath.getAbsolutePath());
+		cmd.addAll(this.getArguments());
+		return Runtime.getRuntime().exec(cmd.toArray(new String[cmd.size()]));
+	}
+
+	/**
+	 * @return the arguments split at white spaces, the way {@link Runtime#exec(String)} splits a command line
+	 */
+	private List<String> getArguments() {
+		List<String> arguments = new ArrayList<>();
 		for (String s : this.args) {
-			scriptBuilder.append(" ");
-			scriptBuilder.append(s.trim());
+			StringTokenizer tokenizer = new StringTokenizer(s);
+			while (tokenizer.hasMoreTokens()) {
+				arguments.add(tokenizer.nextToken());
+			}
 		}
-		return Runtime.getRuntime().exec(scriptBuilder.toString());
+		if (this.manifestFile != null) {
+			arguments.add("-f");
+			arguments.add(this.manifestFile.getAbsolutePath());
+		}
+		return arguments;
 	}
 
 	@Override
-	protected void analyzeStream(String[] dev, String[] error) throws ExecutionError {
-		StringBuilder devString = new StringBuilder();
-		for (String d : dev) {
-			devString.append(d);
-			devString.append(System.lineSeparator());
+	protected void doExecute() throws ExecutionError {
+		if (this.manifest == null) {
+			this.runScript();
+			return;
+		}
+		// the work list goes to a file instead of the command line, so its size isn't limited by ARG_MAX
+		try {
+			this.manifestFile = File.createTempFile("cc-manifest", ".txt");
+			Files.write(this.manifestFile.toPath(), this.manifest, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new ExecutionError("Couldn't write the work list of " + this.script, e);
 		}
-		this.result = devString.toString().trim();
+		try {
+			this.runScript();
+		} finally {
+			if (!this.manifestFile.delete()) {
+				ScriptExecutor.LOGGER.debug("Couldn't delete " + this.manifestFile);
+			}
+			this.manifestFile = null;
+		}
+	}
 
-		StringBuilder errorString = new StringBuilder();
-		for (String e : error) {
-			errorString.append(e);
-			errorString.append(System.lineSeparator());
+	private void runScript() throws ExecutionError {
+		if (!ShellWorker.isEnabled() || !new File(AgentVars.SCRIPTFOLDER + this.script).exists()) {
+			super.doExecute();
+			return;
+		}
+		ShellWorker w = null;
+		long id = -1;
+		// a worker may have died while idle, the call didn't reach it then and can go to a new one
+		for (int attempt = 0; (w == null) && (attempt < 2); attempt++) {
+			try {
+				w = ShellWorker.acquire();
+			} catch (IOException e) {
+				ScriptExecutor.LOGGER.warn("Couldn't start a worker, running " + this.script + " directly", e);
+				break;
+			}
+			this.setWorker(w);
+			try {
+				id = w.send(this.script, this.getArguments());
+			} catch (IOException e) {
+				ScriptExecutor.LOGGER.debug("Worker is gone, retrying with a new one", e);
+				w.kill();
+				w = null;
+			}
+		}
+		if (w == null) {
+			this.setWorker(null);
+			super.doExecute();
+			return;
+		}
+		try {
+			this.exitValue = w.await(id);
+			FileInputStream out = new FileInputStream(w.getOut());
+			FileInputStream err = new FileInputStream(w.getErr());
+			try {
+				this.analyzeOutput(out, err);
+			} finally {
+				ShellWorker.release(w);
+			}
+		} catch (IOException e) {
+			w.kill();
+			throw new ExecutionError("Error running " + this.script + " through the worker.", e);
+		} finally {
+			this.setWorker(null);
+		}
+	}
+
+	private synchronized void setWorker(ShellWorker w) {
+		this.worker = w;
+		if ((w != null) && this.isAborted()) {
+			// aborted while the worker got acquired
+			w.kill();
+		}
+	}
+
+	@Override
+	protected synchronized void abort() {
+		if (this.worker != null) {
+			this.worker.kill();
+		}
+		super.abort();
+	}
+
+	@Override
+	protected StreamAnalyzer getAnalyzer(InputStream stream) {
+		return new ResultStreamAnalyzer(stream, this.records);
+	}
+
+	@Override
+	protected void analyzeStream(OutputBuffer dev, OutputBuffer error) throws ExecutionError {
+		this.result = dev.toString();
+		if (this.records.isEmpty()) {
+			// no result records, any error output fails the whole run
+			if (!error.toString().isEmpty()) {
+				throw new ExecutionError(error.toString());
+			}
+			return;
+		}
+		if (!error.isEmpty()) {
+			ScriptExecutor.LOGGER.warn(this.script + " reported: " + error.toString());
+		}
+		List<ScriptResult> records = this.getRecords();
+		for (ScriptResult record : records) {
+			if (record.isFallback()) {
+				ScriptExecutor.LOGGER.warn(record.toString());
+			}
+		}
+		ScriptExecutor.checkRecords(this.script, this.manifest, records, this.exitValue);
+	}
+
+	/**
+	 * Fails on failed records, but also if the script exited with an error or stopped before reporting every item of the work
+	 * list, e.g. a script printing a few ok records and then dying.
+	 *
+	 * @param script the script name
+	 * @param manifest the work list, may be null
+	 * @param records the records the script reported
+	 * @param exitValue the exit value of the script
+	 * @throws ExecutionError if an item failed, went unreported or the script failed
+	 */
+	static void checkRecords(String script, List<String> manifest, List<ScriptResult> records, int exitValue) throws ExecutionError {
+		StringBuilder msg = new StringBuilder();
+		for (ScriptResult record : records) {
+			if (record.isFailed()) {
+				msg.append(record).append("\n");
+			}
+		}
+		if (msg.length() > 0) {
+			throw new ExecutionError(msg.toString().trim());
+		}
+		List<String> missing = new ArrayList<>();
+		if (manifest != null) {
+			Set<String> reported = new HashSet<>();
+			for (ScriptResult record : records) {
+				reported.add(record.getAction() + "\t" + record.getItem());
+			}
+			for (String item : manifest) {
+				if (!reported.contains(item)) {
+					missing.add(item.replace('\t', ' '));
+				}
+			}
+		}
+		if (exitValue != 0) {
+			throw new ExecutionError(script + " exited with " + exitValue + (missing.isEmpty() ? "" : " without reporting " + missing));
+		}
+		if (!missing.isEmpty()) {
+			throw new ExecutionError(script + " didn't report " + missing);
+		}
+	}
+
+	/**
+	 * @return the result records the script reported, one per package or service
+	 */
+	public List<ScriptResult> getRecords() {
+		synchronized (this.records) {
+			return new ArrayList<>(this.records);
+		}
+	}
+
+	/**
+	 * @return the result records of the failed items
+	 */
+	public List<ScriptResult> getFailedRecords() {
+		List<ScriptResult> failed = new ArrayList<>();
+		for (ScriptResult record : this.getRecords()) {
+			if (record.isFailed()) {
+				failed.add(record);
+			}
+		}
+		return failed;
+	}
+
+	@Override
+	protected String getName() {
+		return this.script;
+	}
+
+	@Override
+	protected long getDefaultTimeout() {
+		if (AgentVars.SCRIPT_PACKAGE_MANAGER_HANDLER.equals(this.script)) {
+			return AgentVars.EXECUTION_TIMEOUT_PACKAGE_MANAGER;
 		}
-		if (!errorString.toString().trim().isEmpty()) {
-			throw new ExecutionError(errorString.toString().trim());
+		if (AgentVars.SCRIPT_SERVICE_STATE.equals(this.script)) {
+			return AgentVars.EXECUTION_TIMEOUT_SERVICE_STATE;
 		}
+		return super.getDefaultTimeout();
 	}
 
 	@Override
@@ -0,0 +1,309 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.executors.helper.BaseExecutor;
+import de.cinovo.cloudconductor.agent.helper.AgentVars;
+import de.cinovo.cloudconductor.agent.helper.FutureImpl;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Restarts, stops and starts services as a dependency graph. Every action is a call of the service handler script for a single
+ * service. Starts and restarts wait for the services they depend on, stops wait for the services depending on them, and all stops
+ * finish before the first start. Independent actions run concurrently, at most nodeagent.service.action.parallelism at a time.
+ * The result holds the failed actions by service; a failed action doesn't hold back the others, as in the handler script.
+ */
+public class ServiceActions extends BaseExecutor<Map<String, ExecutionError>> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ServiceActions.class);
+
+
+	/** the actions on a service */
+	enum Action {
+		RESTART, STOP, START
+	}
+
+
+	private final List<String> services = new ArrayList<>();
+	private final List<Action> actions = new ArrayList<>();
+	private final ServiceDependencies dependencies;
+	private final Map<String, ExecutionError> failures = new LinkedHashMap<>();
+
+
+	/**
+	 * @param restart services to restart
+	 * @param start services to start
+	 * @param stop services to stop
+	 */
+	public ServiceActions(Collection<String> restart, Collection<String> start, Collection<String> stop) {
+		this(restart, start, stop, new ServiceDependencies());
+	}
+
+	/**
+	 * @param restart services to restart
+	 * @param start services to start
+	 * @param stop services to stop
+	 * @param dependencies the source of the service dependencies
+	 */
+	public ServiceActions(Collection<String> restart, Collection<String> start, Collection<String> stop, ServiceDependencies dependencies) {
+		this.dependencies = dependencies;
+		this.add(restart, Action.RESTART);
+		this.add(stop, Action.STOP);
+		this.add(start, Action.START);
+	}
+
+	private void add(Collection<String> names, Action action) {
+		if (names == null) {
+			return;
+		}
+		for (String name : names) {
+			if (!this.services.contains(name)) {
+				this.services.add(name);
+				this.actions.add(action);
+			}
+		}
+	}
+
+	@Override
+	protected void doExecute() throws ExecutionError {
+		int count = this.services.size();
+		List<Set<Integer>> successors = this.buildGraph();
+		int[] pending = new int[count];
+		for (Set<Integer> next : successors) {
+			for (Integer i : next) {
+				pending[i]++;
+			}
+		}
+		Deque<Integer> ready = new ArrayDeque<>();
+		for (int i = 0; i < count; i++) {
+			if (pending[i] == 0) {
+				ready.add(i);
+			}
+		}
+
+		int parallelism = ServiceActions.getParallelism();
+		final BlockingQueue<Integer> finished = new LinkedBlockingQueue<>();
+		List<FutureImpl<String>> futures = new ArrayList<>(Collections.<FutureImpl<String>> nCopies(count, null));
+		int running = 0;
+		int done = 0;
+		while (done < count) {
+			while (!ready.isEmpty() && (running < parallelism) && !this.isAborted()) {
+				final Integer i = ready.poll();
+				ServiceActions.LOGGER.debug(this.actions.get(i) + " of " + this.services.get(i));
+				futures.set(i, this.executeChild(this.createScript(this.actions.get(i), this.services.get(i)), new Runnable() {
+
+					@Override
+					public void run() {
+						finished.add(i);
+					}
+				}));
+				running++;
+			}
+			if (this.isAborted()) {
+				throw new ExecutionError("Service actions were aborted.");
+			}
+			if (running == 0) {
+				// every waiting service waits for a dependency cycle, break one edge of it
+				int blocked = this.breakCycle(successors, pending);
+				if (pending[blocked] == 0) {
+					ready.add(blocked);
+				}
+				continue;
+			}
+			int i;
+			try {
+				i = finished.take().intValue();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ExecutionError("Interrupted while waiting for the service actions.", e);
+			}
+			running--;
+			done++;
+			pending[i] = -1;
+			this.collect(i, futures.get(i));
+			for (Integer next : successors.get(i)) {
+				if (--pending[next] == 0) {
+					ready.add(next);
+				}
+			}
+		}
+		if (!this.failures.isEmpty()) {
+			StringBuilder message = new StringBuilder();
+			for (ExecutionError e : this.failures.values()) {
+				if (message.length() > 0) {
+					message.append("\n");
+				}
+				message.append(e.getMessage());
+			}
+			throw new ExecutionError(message.toString());
+		}
+	}
+
+	/**
+	 * Follows the services a waiting service waits for until one repeats, which gives a cycle. Its first service in the given
+	 * order stops waiting for its predecessor in the cycle; its other dependencies stay.
+	 *
+	 * @return the service that lost a dependency
+	 */
+	private int breakCycle(List<Set<Integer>> successors, int[] pending) {
+		List<Integer> path = new ArrayList<>();
+		int current = 0;
+		while (pending[current] <= 0) {
+			current++;
+		}
+		while (!path.contains(current)) {
+			path.add(current);
+			for (int j = 0; j < successors.size(); j++) {
+				if ((pending[j] > 0) && successors.get(j).contains(current)) {
+					current = j;
+					break;
+				}
+			}
+		}
+		List<Integer> cycle = path.subList(path.indexOf(current), path.size());
+		int first = cycle.indexOf(Collections.min(cycle));
+		int blocked = cycle.get(first);
+		int dependency = cycle.get((first + 1) % cycle.size());
+		StringBuilder names = new StringBuilder();
+		for (Integer i : cycle) {
+			if (names.length() > 0) {
+				names.append(", ");
+			}
+			names.append(this.services.get(i));
+		}
+		ServiceActions.LOGGER.warn("Dependency cycle between " + names + ", " + this.services.get(blocked) + " no longer waits for " + this.services.get(dependency));
+		successors.get(dependency).remove(blocked);
+		pending[blocked]--;
+		return blocked;
+	}
+
+	/**
+	 * @return the services that have to wait for each service
+	 */
+	private List<Set<Integer>> buildGraph() {
+		Map<String, Integer> index = new HashMap<>();
+		List<Set<Integer>> successors = new ArrayList<>();
+		for (int i = 0; i < this.services.size(); i++) {
+			index.put(this.services.get(i), i);
+			successors.add(new LinkedHashSet<Integer>());
+		}
+		for (int i = 0; i < this.services.size(); i++) {
+			Action action = this.actions.get(i);
+			for (String dependency : this.dependencies.getDependencies(this.services.get(i))) {
+				Integer j = index.get(dependency);
+				if ((j == null) || (j.intValue() == i)) {
+					continue;
+				}
+				boolean stopping = this.actions.get(j) == Action.STOP;
+				if ((action == Action.STOP) && stopping) {
+					// stop the dependent service first
+					successors.get(i).add(j);
+				} else if ((action != Action.STOP) && !stopping) {
+					successors.get(j).add(i);
+				}
+			}
+			if (action == Action.START) {
+				for (int j = 0; j < this.services.size(); j++) {
+					if (this.actions.get(j) == Action.STOP) {
+						successors.get(j).add(i);
+					}
+				}
+			}
+		}
+		return successors;
+	}
+
+	/**
+	 * @param action the action
+	 * @param name the service
+	 * @return the executor running the action on the service
+	 */
+	BaseExecutor<String> createScript(Action action, String name) {
+		Set<String> service = Collections.singleton(name);
+		switch (action) {
+		case STOP:
+			return ScriptExecutor.generateServiceStateHandler(null, null, service);
+		case START:
+			return ScriptExecutor.generateServiceStateHandler(null, service, null);
+		default:
+			return ScriptExecutor.generateServiceStateHandler(service, null, null);
+		}
+	}
+
+	private void collect(int i, FutureImpl<String> future) {
+		this.forgetChild(future);
+		String service = this.services.get(i);
+		try {
+			future.get();
+		} catch (ExecutionException e) {
+			ExecutionError error = e.getCause() instanceof ExecutionError ? (ExecutionError) e.getCause() : new ExecutionError(e.getCause());
+			this.failures.put(service, error);
+		} catch (CancellationException e) {
+			this.failures.put(service, new ExecutionError(this.actions.get(i) + " of " + service + " was cancelled."));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static int getParallelism() {
+		try {
+			return Math.max(1, Integer.parseInt(System.getProperty(AgentVars.SERVICE_ACTION_PARALLELISM_PROP, String.valueOf(AgentVars.SERVICE_ACTION_PARALLELISM_DEFAULT))));
+		} catch (NumberFormatException e) {
+			return AgentVars.SERVICE_ACTION_PARALLELISM_DEFAULT;
+		}
+	}
+
+	@Override
+	protected void abort() {
+		// the running actions get cancelled by the base executor
+	}
+
+	@Override
+	public Map<String, ExecutionError> getResult() {
+		return Collections.unmodifiableMap(this.failures);
+	}
+
+	@Override
+	public boolean failed() {
+		return !this.failures.isEmpty();
+	}
+}
@@ -0,0 +1,126 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Reads the start dependencies of a service from its systemd unit (After= and Requires=) or the LSB header of its init script
+ * (Required-Start and Should-Start). Facilities like $network are ignored.
+ */
+public class ServiceDependencies {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ServiceDependencies.class);
+
+	private static final String UNIT_SUFFIX = ".service";
+	private static final String[] UNIT_KEYS = {"After=", "Requires="};
+	private static final String[] LSB_KEYS = {"# Required-Start:", "# Should-Start:"};
+	private static final String LSB_BEGIN = "### BEGIN INIT INFO";
+	private static final String LSB_END = "### END INIT INFO";
+
+	private final File initScripts;
+	private final List<File> unitFolders;
+
+
+	/**
+	 * uses the system folders
+	 */
+	public ServiceDependencies() {
+		this(new File("/etc/init.d"), Arrays.asList(new File("/etc/systemd/system"), new File("/run/systemd/system"), new File("/usr/lib/systemd/system"), new File("/lib/systemd/system")));
+	}
+
+	/**
+	 * @param initScripts the folder of the init scripts
+	 * @param unitFolders the folders of the systemd units by precedence
+	 */
+	public ServiceDependencies(File initScripts, List<File> unitFolders) {
+		this.initScripts = initScripts;
+		this.unitFolders = unitFolders;
+	}
+
+	/**
+	 * @param service the init script name of the service
+	 * @return the names of the services the service depends on
+	 */
+	public Set<String> getDependencies(String service) {
+		Set<String> dependencies = new LinkedHashSet<>();
+		String unit = service.endsWith(ServiceDependencies.UNIT_SUFFIX) ? service : service + ServiceDependencies.UNIT_SUFFIX;
+		for (File folder : this.unitFolders) {
+			File file = new File(folder, unit);
+			if (file.isFile()) {
+				for (String line : this.readLines(file)) {
+					this.collect(line.trim(), ServiceDependencies.UNIT_KEYS, dependencies);
+				}
+				return dependencies;
+			}
+		}
+		File script = new File(this.initScripts, service);
+		if (script.isFile()) {
+			boolean header = false;
+			for (String line : this.readLines(script)) {
+				if (line.startsWith(ServiceDependencies.LSB_BEGIN)) {
+					header = true;
+				} else if (line.startsWith(ServiceDependencies.LSB_END)) {
+					break;
+				} else if (header) {
+					this.collect(line, ServiceDependencies.LSB_KEYS, dependencies);
+				}
+			}
+		}
+		return dependencies;
+	}
+
+	private void collect(String line, String[] keys, Set<String> dependencies) {
+		for (String key : keys) {
+			if (line.startsWith(key)) {
+				for (String name : line.substring(key.length()).trim().split("\\s+")) {
+					if (name.isEmpty() || name.startsWith("$")) {
+						continue;
+					}
+					dependencies.add(name.endsWith(ServiceDependencies.UNIT_SUFFIX) ? name.substring(0, name.length() - ServiceDependencies.UNIT_SUFFIX.length()) : name);
+				}
+			}
+		}
+	}
+
+	private List<String> readLines(File file) {
+		try {
+			// init scripts aren't necessarily valid UTF-8
+			return Files.readAllLines(file.toPath(), StandardCharsets.ISO_8859_1);
+		} catch (IOException e) {
+			ServiceDependencies.LOGGER.debug("Couldn't read " + file, e);
+			return Collections.emptyList();
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Checks whether a service is running without calling its init script.
+ */
+public interface ServiceStateProbe {
+
+	/**
+	 * @param initScript the init script of the service
+	 * @return true if the service is running, false if it isn't, null if the probe can't tell
+	 */
+	public abstract Boolean isRunning(String initScript);
+
+}
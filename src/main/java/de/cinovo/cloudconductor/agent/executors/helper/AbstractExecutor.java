@@ -21,11 +21,11 @@ package de.cinovo.cloudconductor.agent.executors.helper;
  */
 
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 
 import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
-import de.cinovo.cloudconductor.agent.executors.IExecutor;
 
 /**
  * Copyright 2013 Cinovo AG<br>
@@ -35,14 +35,19 @@ import de.cinovo.cloudconductor.agent.executors.IExecutor;
  * @param <T> the result type
  * 
  */
-public abstract class AbstractExecutor<T> implements IExecutor<T> {
+public abstract class AbstractExecutor<T> extends BaseExecutor<T> {
 	
 	protected int exitValue = -1;
 	
+	/** how long to wait for the analyzers in one go, so an abort is noticed even without deadline */
+	private static final long JOIN_SLICE = 100;
+	
+	private Process process;
+	
 	
 	protected abstract Process genProcess() throws IOException;
 	
-	protected abstract void analyzeStream(String[] dev, String[] error) throws ExecutionError;
+	protected abstract void analyzeStream(OutputBuffer dev, OutputBuffer error) throws ExecutionError;
 	
 	/**
 	 * @return the result of the execution
@@ -50,12 +55,8 @@ public abstract class AbstractExecutor<T> implements IExecutor<T> {
 	@Override
 	public abstract T getResult();
 	
-	/**
-	 * @return the executor
-	 * @throws ExecutionError if an error during execution occures
-	 */
 	@Override
-	public IExecutor<T> execute() throws ExecutionError {
+	protected void doExecute() throws ExecutionError {
 		Process p = null;
 		try {
 			p = this.genProcess();
@@ -65,31 +66,105 @@ public abstract class AbstractExecutor<T> implements IExecutor<T> {
 		if (p == null) {
 			throw new ExecutionError("Error generating a process.");
 		}
+		this.setProcess(p);
 		StreamAnalyzer devAnalyzer = this.getAnalyzer(p.getInputStream());
-		StreamAnalyzer errorAnalyzer = this.getAnalyzer(p.getErrorStream());
+		StreamAnalyzer errorAnalyzer = this.getErrorAnalyzer(p.getErrorStream());
 		devAnalyzer.start();
 		errorAnalyzer.start();
 		
-		while (this.exitValue < 0) {
-			try {
-				this.exitValue = p.exitValue();
-			} catch (IllegalThreadStateException e) {
-				// sleep while waiting for process to finish
-				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e1) {
-					// just ignore this one
-				}
+		try {
+			// block until the process exits, then until both pipes are drained. A daemon started by the script inherits the pipes and
+			// may keep them open, so the process stays registered for abort() and the output is only awaited until the deadline.
+			this.exitValue = p.waitFor();
+			if (!this.join(devAnalyzer) || !this.join(errorAnalyzer)) {
+				AbstractExecutor.kill(p);
+				throw new ExecutionError(this.getName() + " exited, but its output was still open when it got aborted.");
+			}
+		} catch (InterruptedException e) {
+			AbstractExecutor.kill(p);
+			Thread.currentThread().interrupt();
+			throw new ExecutionError("Interrupted while waiting for the process to finish.", e);
+		} finally {
+			this.setProcess(null);
+		}
+		try (OutputBuffer dev = devAnalyzer.getValues(); OutputBuffer error = errorAnalyzer.getValues()) {
+			this.analyzeStream(dev, error);
+		}
+	}
+	
+	/**
+	 * Analyzes output that has been captured elsewhere, e.g. by a {@link ShellWorker}. The streams get closed.
+	 * 
+	 * @param dev the stdout
+	 * @param error the stderr
+	 * @throws ExecutionError if the analysis fails
+	 */
+	protected void analyzeOutput(InputStream dev, InputStream error) throws ExecutionError {
+		StreamAnalyzer devAnalyzer = this.getAnalyzer(dev);
+		StreamAnalyzer errorAnalyzer = this.getErrorAnalyzer(error);
+		devAnalyzer.run();
+		errorAnalyzer.run();
+		try (OutputBuffer devValues = devAnalyzer.getValues(); OutputBuffer errorValues = errorAnalyzer.getValues()) {
+			this.analyzeStream(devValues, errorValues);
+		}
+	}
+	
+	/**
+	 * @return true if the analyzer finished, false if the deadline passed or the execution got aborted before
+	 */
+	private boolean join(StreamAnalyzer analyzer) throws InterruptedException {
+		while (analyzer.isAlive()) {
+			long remaining = this.getRemainingTime();
+			if (this.isAborted() || (remaining == 0)) {
+				return false;
 			}
+			analyzer.join(remaining < 0 ? AbstractExecutor.JOIN_SLICE : Math.min(remaining, AbstractExecutor.JOIN_SLICE));
+		}
+		return true;
+	}
+	
+	private synchronized void setProcess(Process p) {
+		this.process = p;
+		if ((p != null) && this.isAborted()) {
+			// aborted while the process got started
+			AbstractExecutor.kill(p);
+		}
+	}
+	
+	@Override
+	protected synchronized void abort() {
+		if (this.process != null) {
+			AbstractExecutor.kill(this.process);
+		}
+	}
+	
+	/**
+	 * Kills the process tree and closes the pipes, so the analyzers stop even if a process outside the tree still holds them. An
+	 * analyzer blocked in a read that the close can't wake is a daemon thread and gets left behind.
+	 */
+	private static void kill(Process p) {
+		ProcessTree.kill(p);
+		AbstractExecutor.closeQuietly(p.getInputStream());
+		AbstractExecutor.closeQuietly(p.getErrorStream());
+		AbstractExecutor.closeQuietly(p.getOutputStream());
+	}
+	
+	private static void closeQuietly(Closeable stream) {
+		try {
+			stream.close();
+		} catch (IOException e) {
+			// nothing left to read from it anyway
 		}
-		this.analyzeStream(devAnalyzer.getValues(), errorAnalyzer.getValues());
-		return this;
 	}
 	
 	protected StreamAnalyzer getAnalyzer(InputStream stream) {
 		return new DefaultStreamAnalyzer(stream);
 	}
 	
+	protected StreamAnalyzer getErrorAnalyzer(InputStream stream) {
+		return new DefaultStreamAnalyzer(stream);
+	}
+	
 	/**
 	 * @return true if exit value != 0
 	 */
@@ -0,0 +1,400 @@
+package de.cinovo.cloudconductor.agent.executors.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.executors.IExecutor;
+import de.cinovo.cloudconductor.agent.helper.AgentVars;
+import de.cinovo.cloudconductor.agent.helper.FutureImpl;
+import de.cinovo.cloudconductor.agent.helper.FutureImpl.CancelListener;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Base for all executors. Takes care of the execution deadline, asynchronous execution and cancellation.
+ *
+ * @param <T> the result type
+ *
+ */
+public abstract class BaseExecutor<T> implements IExecutor<T> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BaseExecutor.class);
+
+	private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(BaseExecutor.daemonThreads("executor-watchdog"));
+	private static final ExecutorService async = Executors.newCachedThreadPool(BaseExecutor.daemonThreads("executor-async"));
+
+	private long timeout = -1;
+	private long duration = -1;
+	private volatile long deadlineNanos = -1;
+	private volatile boolean timedOut = false;
+	private volatile boolean cancelled = false;
+	private final Object state = new Object();
+	private boolean running = false;
+	private final Set<FutureImpl<?>> delegates = new CopyOnWriteArraySet<>();
+
+
+	/**
+	 * runs the actual execution
+	 *
+	 * @throws ExecutionError if an error during execution occurs
+	 */
+	protected abstract void doExecute() throws ExecutionError;
+
+	/**
+	 * Called from a foreign thread if the deadline passed or the execution got cancelled. Has to stop the running execution as fast
+	 * as possible.
+	 */
+	protected abstract void abort();
+
+	/**
+	 * @return the name used to look up the configured timeout
+	 */
+	protected String getName() {
+		return this.getClass().getSimpleName();
+	}
+
+	/**
+	 * @return the timeout in seconds used if none is configured
+	 */
+	protected long getDefaultTimeout() {
+		return AgentVars.EXECUTION_TIMEOUT_DEFAULT;
+	}
+
+	/**
+	 * @return true if the execution passed its deadline or got cancelled
+	 */
+	protected boolean isAborted() {
+		return this.timedOut || this.cancelled;
+	}
+
+	/**
+	 * @return the milliseconds left until the deadline of the running execution, 0 if it passed, -1 if there is none
+	 */
+	protected long getRemainingTime() {
+		long deadline = this.deadlineNanos;
+		if (deadline < 0) {
+			return -1;
+		}
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+	}
+
+	@Override
+	public IExecutor<T> execute() throws ExecutionError {
+		synchronized (this.state) {
+			if (this.cancelled) {
+				throw new ExecutionError(this.getName() + " was cancelled.");
+			}
+			this.timedOut = false;
+			this.running = true;
+		}
+		final long deadline = this.getTimeout();
+		ScheduledFuture<?> watch = null;
+		this.deadlineNanos = deadline > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadline) : -1;
+		if (deadline > 0) {
+			watch = BaseExecutor.watchdog.schedule(new Runnable() {
+				
+				@Override
+				public void run() {
+					synchronized (BaseExecutor.this.state) {
+						// the run may have finished while the watchdog was waiting for the lock
+						if (!BaseExecutor.this.running) {
+							return;
+						}
+						BaseExecutor.this.timedOut = true;
+					}
+					BaseExecutor.this.stop();
+				}
+			}, deadline, TimeUnit.MILLISECONDS);
+		}
+		long start = System.nanoTime();
+		boolean aborted = false;
+		try {
+			try {
+				this.doExecute();
+			} finally {
+				aborted = this.finish();
+			}
+		} catch (ExecutionError e) {
+			if (aborted) {
+				throw this.abortError(deadline, e);
+			}
+			throw e;
+		} finally {
+			if (watch != null) {
+				watch.cancel(false);
+			}
+			this.duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			BaseExecutor.LOGGER.debug(this.getName() + " finished in " + this.duration + " ms" + (aborted && this.timedOut ? " (timed out)" : ""));
+		}
+		if (aborted) {
+			throw this.abortError(deadline, null);
+		}
+		return this;
+	}
+
+	/**
+	 * marks the run as done, a deadline or cancellation from now on doesn't affect it anymore
+	 *
+	 * @return true if the run was timed out or cancelled before it finished
+	 */
+	private boolean finish() {
+		synchronized (this.state) {
+			this.running = false;
+			return this.timedOut || this.cancelled;
+		}
+	}
+
+	private ExecutionError abortError(long deadline, ExecutionError cause) {
+		if (this.timedOut) {
+			return new ExecutionError(this.getName() + " timed out after " + deadline + " ms.", cause);
+		}
+		return new ExecutionError(this.getName() + " was cancelled.", cause);
+	}
+
+	@Override
+	public FutureImpl<T> executeAsync() {
+		return this.executeAsync(null);
+	}
+
+	private FutureImpl<T> executeAsync(final Runnable done) {
+		final FutureImpl<T> future = new FutureImpl<>();
+		future.addCancelListener(new CancelListener<T>() {
+
+			@Override
+			public void wasCancelled(UUID id) {
+				BaseExecutor.this.cancelled = true;
+				BaseExecutor.this.stop();
+			}
+		});
+		BaseExecutor.async.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					BaseExecutor.this.execute();
+					future.set(BaseExecutor.this.getResult());
+				} catch (ExecutionError | RuntimeException e) {
+					future.set(e);
+				} finally {
+					if (done != null) {
+						done.run();
+					}
+				}
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Executes another executor as part of this execution. The delegate gets cancelled if this execution is aborted.
+	 *
+	 * @param executor the executor to run
+	 * @param <R> the result type of the executor
+	 * @return the result of the executor
+	 * @throws ExecutionError if the executor fails or this execution is aborted
+	 */
+	protected <R> R executeDelegate(IExecutor<R> executor) throws ExecutionError {
+		FutureImpl<R> future = executor.executeAsync();
+		this.delegates.add(future);
+		if (this.isAborted()) {
+			future.cancel(true);
+		}
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ExecutionError) {
+				throw (ExecutionError) e.getCause();
+			}
+			throw new ExecutionError(e.getCause());
+		} catch (CancellationException e) {
+			throw new ExecutionError(executor.getClass().getSimpleName() + " was cancelled.", e);
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new ExecutionError("Interrupted while waiting for " + executor.getClass().getSimpleName() + ".", e);
+		} finally {
+			this.delegates.remove(future);
+		}
+	}
+
+	/**
+	 * Executes other executors concurrently as part of this execution, at most the given number at a time. The executors get
+	 * cancelled if this execution is aborted.
+	 *
+	 * @param executors the executors to run
+	 * @param parallelism the maximum number of executors running at the same time
+	 * @param <R> the result type of the executors
+	 * @return the finished futures in the order of the executors
+	 * @throws ExecutionError if this execution is aborted
+	 */
+	protected <R> List<FutureImpl<R>> executeAll(List<? extends BaseExecutor<R>> executors, int parallelism) throws ExecutionError {
+		final Semaphore permits = new Semaphore(Math.max(1, parallelism));
+		Runnable release = new Runnable() {
+
+			@Override
+			public void run() {
+				permits.release();
+			}
+		};
+		List<FutureImpl<R>> futures = new ArrayList<>(executors.size());
+		try {
+			for (BaseExecutor<R> executor : executors) {
+				permits.acquire();
+				if (this.isAborted()) {
+					permits.release();
+					break;
+				}
+				FutureImpl<R> future = executor.executeAsync(release);
+				this.delegates.add(future);
+				futures.add(future);
+			}
+			for (FutureImpl<R> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException | CancellationException e) {
+					// the caller looks at the single futures
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.cancelAll(futures);
+			throw new ExecutionError("Interrupted while waiting for " + this.getName() + ".", e);
+		} finally {
+			this.delegates.removeAll(futures);
+		}
+		if (this.isAborted()) {
+			this.cancelAll(futures);
+			throw new ExecutionError(this.getName() + " was aborted.");
+		}
+		return futures;
+	}
+
+	/**
+	 * Starts another executor in the background as part of this execution. The executor gets cancelled if this execution is aborted.
+	 *
+	 * @param executor the executor to run
+	 * @param done called in the background thread once the executor finished, may be null
+	 * @param <R> the result type of the executor
+	 * @return the future of the executor
+	 */
+	protected <R> FutureImpl<R> executeChild(BaseExecutor<R> executor, Runnable done) {
+		FutureImpl<R> future = executor.executeAsync(done);
+		this.delegates.add(future);
+		if (this.isAborted()) {
+			future.cancel(true);
+		}
+		return future;
+	}
+
+	/**
+	 * @param future a future returned by {@link #executeChild(BaseExecutor, Runnable)} that is done
+	 */
+	protected void forgetChild(FutureImpl<?> future) {
+		this.delegates.remove(future);
+	}
+
+	private void cancelAll(List<? extends FutureImpl<?>> futures) {
+		for (FutureImpl<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	private void stop() {
+		for (FutureImpl<?> running : this.delegates) {
+			running.cancel(true);
+		}
+		this.abort();
+	}
+
+	/**
+	 * @return the timeout of the execution in milliseconds, values <= 0 disable the deadline
+	 */
+	public long getTimeout() {
+		if (this.timeout >= 0) {
+			return this.timeout;
+		}
+		String configured = System.getProperty(AgentVars.EXECUTION_TIMEOUT_PROP + this.getName());
+		if ((configured == null) || configured.isEmpty()) {
+			configured = System.getProperty(AgentVars.EXECUTION_TIMEOUT_PROP + AgentVars.EXECUTION_TIMEOUT_DEFAULT_NAME);
+		}
+		long seconds = this.getDefaultTimeout();
+		if ((configured != null) && !configured.isEmpty()) {
+			try {
+				seconds = Long.parseLong(configured.trim());
+			} catch (NumberFormatException e) {
+				BaseExecutor.LOGGER.warn("Invalid timeout configured for " + this.getName() + ": " + configured);
+			}
+		}
+		return TimeUnit.SECONDS.toMillis(seconds);
+	}
+
+	/**
+	 * overrides the configured timeout for this executor
+	 *
+	 * @param time the timeout, values <= 0 disable the deadline
+	 * @param unit the unit of the timeout
+	 */
+	public void setTimeout(long time, TimeUnit unit) {
+		this.timeout = Math.max(0, unit.toMillis(time));
+	}
+
+	@Override
+	public long getDuration() {
+		return this.duration;
+	}
+
+	@Override
+	public boolean timedOut() {
+		return this.timedOut;
+	}
+
+	private static ThreadFactory daemonThreads(final String name) {
+		final AtomicInteger count = new AtomicInteger();
+		return new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+}
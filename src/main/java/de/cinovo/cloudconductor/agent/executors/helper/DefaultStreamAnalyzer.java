@@ -22,38 +22,51 @@ package de.cinovo.cloudconductor.agent.executors.helper;
 
 
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Copyright 2013 Cinovo AG<br>
  * <br>
+ * Collects all non-empty lines in a bounded {@link OutputBuffer}, or passes them to a {@link LineHandler} as they arrive.
  * 
  * @author psigloch
  * 
  */
 public class DefaultStreamAnalyzer extends StreamAnalyzer {
 	
-	private List<String> result = new ArrayList<>();
+	private final OutputBuffer result = new OutputBuffer();
+	private final LineHandler handler;
 	
 	
 	/**
 	 * @param stream the stream to analyze
 	 */
 	public DefaultStreamAnalyzer(InputStream stream) {
+		this(stream, null);
+	}
+	
+	/**
+	 * @param stream the stream to analyze
+	 * @param handler receives every non-empty line instead of the buffer, may be null
+	 */
+	public DefaultStreamAnalyzer(InputStream stream, LineHandler handler) {
 		super(stream);
+		this.handler = handler;
 	}
 	
 	@Override
 	protected void handleLine(String line) {
 		if ((line != null) && !line.isEmpty()) {
-			this.result.add(line);
+			if (this.handler != null) {
+				this.handler.handleLine(line);
+			} else {
+				this.result.add(line);
+			}
 		}
 	}
 	
 	@Override
-	protected String[] getValues() {
-		return this.result.toArray(new String[this.result.size()]);
+	protected OutputBuffer getValues() {
+		return this.result;
 	}
 	
 }
@@ -0,0 +1,35 @@
+package de.cinovo.cloudconductor.agent.executors.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Callback for consuming process output line by line.
+ */
+public interface LineHandler {
+
+	/**
+	 * @param line the line, without line separator
+	 */
+	public void handleLine(String line);
+
+}
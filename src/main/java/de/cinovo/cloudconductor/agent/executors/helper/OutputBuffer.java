@@ -0,0 +1,181 @@
+package de.cinovo.cloudconductor.agent.executors.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.cinovo.cloudconductor.agent.helper.AgentVars;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Size capped ring buffer for process output. Once the capacity is exceeded the oldest lines are dropped. If spilling is enabled
+ * every line is written to a temp file as well, so the complete output can still be read with {@link #forEachLine(LineHandler)}.
+ */
+public class OutputBuffer implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(OutputBuffer.class);
+
+	private final Deque<String> lines = new ArrayDeque<>();
+	private final long capacity;
+	private long size = 0;
+	private long total = 0;
+	private long dropped = 0;
+
+	private File spillFile;
+	private Writer spill;
+
+
+	/**
+	 * creates a buffer using the configured capacity and spill setting
+	 */
+	public OutputBuffer() {
+		this(Long.getLong(AgentVars.OUTPUT_BUFFER_PROP, AgentVars.OUTPUT_BUFFER_DEFAULT), Boolean.getBoolean(AgentVars.OUTPUT_SPILL_PROP));
+	}
+
+	/**
+	 * @param capacity the maximum number of chars to keep in memory
+	 * @param spill true to write the complete output to a temp file
+	 */
+	public OutputBuffer(long capacity, boolean spill) {
+		this.capacity = capacity;
+		if (spill) {
+			try {
+				this.spillFile = File.createTempFile("cc-output", ".log");
+				this.spill = Files.newBufferedWriter(this.spillFile.toPath(), StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				OutputBuffer.LOGGER.warn("Couldn't create spill file, keeping the output in memory only", e);
+				this.closeSpill();
+			}
+		}
+	}
+
+	/**
+	 * @param line the line to add
+	 */
+	public synchronized void add(String line) {
+		this.total++;
+		if (this.spill != null) {
+			try {
+				this.spill.write(line);
+				this.spill.write('\n');
+			} catch (IOException e) {
+				OutputBuffer.LOGGER.warn("Failed to write spill file, keeping the output in memory only", e);
+				this.closeSpill();
+			}
+		}
+		this.lines.addLast(line);
+		this.size += line.length();
+		while ((this.size > this.capacity) && (this.lines.size() > 1)) {
+			this.size -= this.lines.removeFirst().length();
+			this.dropped++;
+		}
+	}
+
+	/**
+	 * Passes all lines to the given handler. Reads the spill file if there is one, the retained lines otherwise.
+	 *
+	 * @param handler the handler
+	 * @throws IOException if the spill file can't be read
+	 */
+	public synchronized void forEachLine(LineHandler handler) throws IOException {
+		if (this.spill != null) {
+			this.spill.flush();
+			try (BufferedReader reader = Files.newBufferedReader(this.spillFile.toPath(), StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					handler.handleLine(line);
+				}
+			}
+			return;
+		}
+		for (String line : this.lines) {
+			handler.handleLine(line);
+		}
+	}
+
+	/**
+	 * @return true if no line was added
+	 */
+	public synchronized boolean isEmpty() {
+		return this.total == 0;
+	}
+
+	/**
+	 * @return true if lines were dropped from memory
+	 */
+	public synchronized boolean isTruncated() {
+		return this.dropped > 0;
+	}
+
+	/**
+	 * @return the retained lines separated by line separators
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder builder = new StringBuilder();
+		if (this.dropped > 0) {
+			builder.append("[... ");
+			builder.append(this.dropped);
+			builder.append(" lines dropped]");
+			builder.append(System.lineSeparator());
+		}
+		for (String line : this.lines) {
+			builder.append(line);
+			builder.append(System.lineSeparator());
+		}
+		return builder.toString().trim();
+	}
+
+	@Override
+	public synchronized void close() {
+		this.closeSpill();
+	}
+
+	private void closeSpill() {
+		if (this.spill != null) {
+			try {
+				this.spill.close();
+			} catch (IOException e) {
+				// we delete it anyway
+			}
+			this.spill = null;
+		}
+		if (this.spillFile != null) {
+			if (!this.spillFile.delete()) {
+				this.spillFile.deleteOnExit();
+			}
+			this.spillFile = null;
+		}
+	}
+}
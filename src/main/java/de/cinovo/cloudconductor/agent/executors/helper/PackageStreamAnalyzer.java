@@ -0,0 +1,79 @@
+package de.cinovo.cloudconductor.agent.executors.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Parses lines of the form <code>name;version</code> straight from the output bytes into {@link PackageVersion}s. Lines without
+ * delimiter are collected in the output buffer.
+ */
+public class PackageStreamAnalyzer extends StreamAnalyzer {
+
+	private static final byte DELIMITER = ';';
+
+	private final List<PackageVersion> result;
+	private final OutputBuffer unparsed = new OutputBuffer();
+
+
+	/**
+	 * @param stream the stream to analyze
+	 * @param result the list to add the packages to
+	 */
+	public PackageStreamAnalyzer(InputStream stream, List<PackageVersion> result) {
+		super(stream);
+		this.result = result;
+	}
+
+	@Override
+	protected void handleLine(byte[] buffer, int offset, int length) {
+		if (length == 0) {
+			return;
+		}
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			if (buffer[i] == PackageStreamAnalyzer.DELIMITER) {
+				String name = new String(buffer, offset, i - offset, StandardCharsets.UTF_8);
+				String version = new String(buffer, i + 1, end - i - 1, StandardCharsets.UTF_8);
+				this.result.add(new PackageVersion(name, version, null));
+				return;
+			}
+		}
+		super.handleLine(buffer, offset, length);
+	}
+
+	@Override
+	protected void handleLine(String line) {
+		this.unparsed.add(line);
+	}
+
+	@Override
+	protected OutputBuffer getValues() {
+		return this.unparsed;
+	}
+
+}
@@ -0,0 +1,168 @@
+package de.cinovo.cloudconductor.agent.executors.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Kills a process together with all of its descendants. The process tree is read from /proc, so the scripts started by the agent
+ * can't survive their bash parent.
+ */
+public final class ProcessTree {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ProcessTree.class);
+
+	private static final File PROC = new File("/proc");
+
+
+	private ProcessTree() {
+		// prevent instantiation
+	}
+
+	/**
+	 * Kills the given process and all of its descendants. Falls back to {@link Process#destroy()} if the pid can't be determined.
+	 *
+	 * @param process the process to kill
+	 */
+	public static void kill(Process process) {
+		Integer pid = ProcessTree.getPid(process);
+		if (pid == null) {
+			process.destroy();
+			return;
+		}
+		// freeze the tree first, so no member can fork while we collect it
+		Set<Integer> tree = ProcessTree.collectTree(pid);
+		ProcessTree.signal("STOP", tree);
+		tree.addAll(ProcessTree.collectTree(pid));
+		ProcessTree.signal("KILL", tree);
+		process.destroy();
+	}
+
+	/**
+	 * @param process the process
+	 * @return the pid of the process or null if it can't be determined
+	 */
+	public static Integer getPid(Process process) {
+		try {
+			// Java 9 and later
+			Method method = Process.class.getMethod("pid");
+			return ((Long) method.invoke(process)).intValue();
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// go on with the java 7 way
+		}
+		try {
+			Field field = process.getClass().getDeclaredField("pid");
+			field.setAccessible(true);
+			return field.getInt(process);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			ProcessTree.LOGGER.debug("Couldn't determine pid of process", e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param pid the root pid
+	 * @return the pid and the pids of all descendants, parents before children
+	 */
+	public static Set<Integer> collectTree(int pid) {
+		Map<Integer, List<Integer>> children = ProcessTree.readChildren();
+		Set<Integer> tree = new LinkedHashSet<>();
+		Deque<Integer> queue = new ArrayDeque<>();
+		queue.add(pid);
+		while (!queue.isEmpty()) {
+			Integer current = queue.poll();
+			if (tree.add(current) && children.containsKey(current)) {
+				queue.addAll(children.get(current));
+			}
+		}
+		return tree;
+	}
+
+	private static Map<Integer, List<Integer>> readChildren() {
+		Map<Integer, List<Integer>> children = new HashMap<>();
+		File[] entries = ProcessTree.PROC.listFiles();
+		if (entries == null) {
+			return children;
+		}
+		for (File entry : entries) {
+			if (!entry.getName().matches("[0-9]+")) {
+				continue;
+			}
+			Integer ppid = ProcessTree.readParent(new File(entry, "stat"));
+			if (ppid == null) {
+				continue;
+			}
+			if (!children.containsKey(ppid)) {
+				children.put(ppid, new ArrayList<Integer>());
+			}
+			children.get(ppid).add(Integer.valueOf(entry.getName()));
+		}
+		return children;
+	}
+
+	private static Integer readParent(File stat) {
+		try {
+			String content = new String(Files.readAllBytes(stat.toPath()), StandardCharsets.US_ASCII);
+			// the command name may contain spaces and brackets, the fields we need start after the last ')'
+			String[] fields = content.substring(content.lastIndexOf(')') + 2).split(" ");
+			return Integer.valueOf(fields[1]);
+		} catch (IOException | RuntimeException e) {
+			// the process vanished while we read it
+			return null;
+		}
+	}
+
+	private static void signal(String signal, Set<Integer> pids) {
+		List<String> cmd = new ArrayList<>();
+		cmd.add("kill");
+		cmd.add("-" + signal);
+		for (Integer pid : pids) {
+			cmd.add(String.valueOf(pid));
+		}
+		try {
+			Process kill = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+			kill.getInputStream().close();
+			kill.waitFor();
+		} catch (IOException e) {
+			ProcessTree.LOGGER.warn("Failed to send SIG" + signal + " to " + pids, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package de.cinovo.cloudconductor.agent.executors.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Parses the result records of a helper script as they arrive. Lines starting with <code>{</code> are read as
+ * {@link ScriptResult}, all other lines are collected in the output buffer.
+ */
+public class ResultStreamAnalyzer extends StreamAnalyzer {
+	
+	private static final ObjectMapper mapper = new ObjectMapper();
+	
+	private final List<ScriptResult> result;
+	private final OutputBuffer unparsed = new OutputBuffer();
+	
+	
+	/**
+	 * @param stream the stream to analyze
+	 * @param result the list to add the records to
+	 */
+	public ResultStreamAnalyzer(InputStream stream, List<ScriptResult> result) {
+		super(stream);
+		this.result = result;
+	}
+	
+	@Override
+	protected void handleLine(String line) {
+		if (line.startsWith("{")) {
+			try {
+				this.result.add(ResultStreamAnalyzer.mapper.readValue(line, ScriptResult.class));
+				return;
+			} catch (IOException e) {
+				// not a record, keep it as plain output
+			}
+		}
+		this.unparsed.add(line);
+	}
+	
+	@Override
+	protected OutputBuffer getValues() {
+		return this.unparsed;
+	}
+	
+}
@@ -0,0 +1,145 @@
+package de.cinovo.cloudconductor.agent.executors.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * The result of one item of a helper script run, reported by the script as one JSON object per line, e.g.
+ * <code>{"action":"install","item":"foo-1.0-1","status":"ok","duration":1200,"message":""}</code>.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ScriptResult {
+	
+	/** status of a successful item */
+	public static final String STATUS_OK = "ok";
+	/** status of an item that succeeded only through a fallback, e.g. a failed restart done as stop and start */
+	public static final String STATUS_OK_FALLBACK = "ok-fallback";
+	/** status of a failed item */
+	public static final String STATUS_FAILED = "failed";
+	
+	private String action;
+	private String item;
+	private String status;
+	private long duration;
+	private String message;
+	
+	
+	/**
+	 * @return the action, e.g. install or restart
+	 */
+	public String getAction() {
+		return this.action;
+	}
+	
+	/**
+	 * @param action the action, e.g. install or restart
+	 */
+	public void setAction(String action) {
+		this.action = action;
+	}
+	
+	/**
+	 * @return the package or service
+	 */
+	public String getItem() {
+		return this.item;
+	}
+	
+	/**
+	 * @param item the package or service
+	 */
+	public void setItem(String item) {
+		this.item = item;
+	}
+	
+	/**
+	 * @return the status
+	 */
+	public String getStatus() {
+		return this.status;
+	}
+	
+	/**
+	 * @param status the status
+	 */
+	public void setStatus(String status) {
+		this.status = status;
+	}
+	
+	/**
+	 * @return the duration in milliseconds
+	 */
+	public long getDuration() {
+		return this.duration;
+	}
+	
+	/**
+	 * @param duration the duration in milliseconds
+	 */
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+	
+	/**
+	 * @return the message, may be empty
+	 */
+	public String getMessage() {
+		return this.message;
+	}
+	
+	/**
+	 * @param message the message
+	 */
+	public void setMessage(String message) {
+		this.message = message;
+	}
+	
+	/**
+	 * @return true if the item failed
+	 */
+	@JsonIgnore
+	public boolean isFailed() {
+		return !ScriptResult.STATUS_OK.equals(this.status) && !this.isFallback();
+	}
+	
+	/**
+	 * @return true if the item succeeded only through a fallback, the message tells why the action itself failed
+	 */
+	@JsonIgnore
+	public boolean isFallback() {
+		return ScriptResult.STATUS_OK_FALLBACK.equals(this.status);
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder();
+		b.append(this.action).append(" of ").append(this.item).append(this.isFailed() ? " failed" : this.isFallback() ? " succeeded through the fallback" : " succeeded");
+		if ((this.message != null) && !this.message.isEmpty()) {
+			b.append(": ").append(this.message);
+		}
+		return b.toString();
+	}
+}
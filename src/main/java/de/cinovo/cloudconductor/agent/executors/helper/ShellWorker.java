@@ -0,0 +1,270 @@
+package de.cinovo.cloudconductor.agent.executors.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.cinovo.cloudconductor.agent.helper.AgentVars;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * A long running bash holding the helper scripts as functions (see worker.sh). A script call is written to its stdin as NUL
+ * terminated fields, the worker runs it in a subshell with stdout and stderr redirected to files in its work directory and
+ * answers with a line holding the exit code. Idle workers are pooled, a dead worker gets replaced on the next call. The pool keeps at
+ * least as many workers as services are probed in parallel; a surplus worker is retired by closing its stdin, so bash exits on its
+ * own and no process has to be forked to kill it.
+ */
+public final class ShellWorker {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShellWorker.class);
+
+	private static final String RESPONSE = "@@CCW ";
+
+	private static final Deque<ShellWorker> idle = new ArrayDeque<>();
+	private static final AtomicLong ids = new AtomicLong();
+
+	private final Process process;
+	private final File workdir;
+	private final OutputStream requests;
+	private final BufferedReader responses;
+	private boolean killed = false;
+
+
+	/**
+	 * @param script the worker script, the helper scripts are loaded from its folder
+	 * @throws IOException if the worker couldn't be started
+	 */
+	ShellWorker(File script) throws IOException {
+		this.workdir = Files.createTempDirectory("ccworker").toFile();
+		ProcessBuilder builder = new ProcessBuilder("bash", script.getAbsolutePath(), this.workdir.getAbsolutePath());
+		builder.redirectError(Redirect.INHERIT);
+		try {
+			this.process = builder.start();
+		} catch (IOException e) {
+			ShellWorker.delete(this.workdir);
+			throw e;
+		}
+		this.requests = this.process.getOutputStream();
+		this.responses = new BufferedReader(new InputStreamReader(this.process.getInputStream(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return true if scripts should be run through workers
+	 */
+	public static boolean isEnabled() {
+		return !"false".equalsIgnoreCase(System.getProperty(AgentVars.WORKER_ENABLED_PROP)) && ShellWorker.getScript().isFile();
+	}
+
+	private static File getScript() {
+		return new File(AgentVars.SCRIPTFOLDER + AgentVars.SCRIPT_WORKER);
+	}
+
+	/**
+	 * @return an idle worker or a new one
+	 * @throws IOException if no worker could be started
+	 */
+	public static ShellWorker acquire() throws IOException {
+		return ShellWorker.acquire(ShellWorker.getScript());
+	}
+	
+	/**
+	 * @param script the worker script used if a new worker has to be started
+	 * @return an idle worker or a new one
+	 * @throws IOException if no worker could be started
+	 */
+	static ShellWorker acquire(File script) throws IOException {
+		synchronized (ShellWorker.idle) {
+			while (!ShellWorker.idle.isEmpty()) {
+				ShellWorker worker = ShellWorker.idle.pop();
+				if (worker.isAlive()) {
+					return worker;
+				}
+				worker.kill();
+			}
+		}
+		return new ShellWorker(script);
+	}
+
+	/**
+	 * returns the worker to the pool, dead workers are killed and workers exceeding the pool size retired
+	 *
+	 * @param worker the worker
+	 */
+	public static void release(ShellWorker worker) {
+		synchronized (ShellWorker.idle) {
+			if (worker.isAlive() && (ShellWorker.idle.size() < ShellWorker.getPoolSize())) {
+				ShellWorker.idle.push(worker);
+				return;
+			}
+		}
+		if (worker.isAlive()) {
+			worker.retire();
+		} else {
+			worker.kill();
+		}
+	}
+
+	/**
+	 * @return the number of idle workers to keep, at least the number of parallel service probes
+	 */
+	static int getPoolSize() {
+		int pool = ShellWorker.getInt(AgentVars.WORKER_POOL_PROP, AgentVars.WORKER_POOL_DEFAULT);
+		return Math.max(pool, ShellWorker.getInt(AgentVars.SERVICE_PROBE_PARALLELISM_PROP, AgentVars.SERVICE_PROBE_PARALLELISM_DEFAULT));
+	}
+
+	private static int getInt(String property, int defaultValue) {
+		try {
+			return Integer.parseInt(System.getProperty(property, String.valueOf(defaultValue)));
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Sends a script call. If this fails the call didn't reach the worker and can be sent to another one.
+	 *
+	 * @param script the script name
+	 * @param args the arguments
+	 * @return the id of the call
+	 * @throws IOException if the worker is gone
+	 */
+	public long send(String script, List<String> args) throws IOException {
+		long id = ShellWorker.ids.incrementAndGet();
+		StringBuilder request = new StringBuilder();
+		request.append(id).append('\0');
+		request.append(script).append('\0');
+		request.append(args.size()).append('\0');
+		for (String arg : args) {
+			request.append(arg).append('\0');
+		}
+		this.requests.write(request.toString().getBytes(StandardCharsets.UTF_8));
+		this.requests.flush();
+		return id;
+	}
+
+	/**
+	 * Waits for the call to finish. Its output is in {@link #getOut()} and {@link #getErr()} afterwards.
+	 *
+	 * @param id the id of the call
+	 * @return the exit code of the script
+	 * @throws IOException if the worker died or answered garbage
+	 */
+	public int await(long id) throws IOException {
+		String line = this.responses.readLine();
+		if (line == null) {
+			throw new IOException("The worker died while running call " + id);
+		}
+		String expected = ShellWorker.RESPONSE + id + " ";
+		if (!line.startsWith(expected)) {
+			throw new IOException("Unexpected answer of the worker: " + line);
+		}
+		try {
+			return Integer.parseInt(line.substring(expected.length()).trim());
+		} catch (NumberFormatException e) {
+			throw new IOException("Unexpected answer of the worker: " + line, e);
+		}
+	}
+
+	/**
+	 * @return the stdout of the last call
+	 */
+	public File getOut() {
+		return new File(this.workdir, "out");
+	}
+
+	/**
+	 * @return the stderr of the last call
+	 */
+	public File getErr() {
+		return new File(this.workdir, "err");
+	}
+
+	/**
+	 * @return true if the worker process is running
+	 */
+	public boolean isAlive() {
+		try {
+			this.process.exitValue();
+			return false;
+		} catch (IllegalThreadStateException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Closes the stdin of an idle worker, bash leaves its read loop then and removes its work directory.
+	 */
+	synchronized void retire() {
+		if (this.killed) {
+			return;
+		}
+		this.killed = true;
+		try {
+			this.requests.close();
+			this.responses.close();
+		} catch (IOException e) {
+			ShellWorker.LOGGER.debug("Couldn't close the worker streams", e);
+		}
+	}
+
+	/**
+	 * kills the worker together with the script it is running, used for workers that are busy, dead or timed out
+	 */
+	public synchronized void kill() {
+		if (this.killed) {
+			return;
+		}
+		this.killed = true;
+		if (this.isAlive()) {
+			ProcessTree.kill(this.process);
+		}
+		ShellWorker.delete(this.workdir);
+	}
+
+	private static void delete(File folder) {
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (!file.delete()) {
+					ShellWorker.LOGGER.debug("Couldn't delete " + file);
+				}
+			}
+		}
+		if (!folder.delete()) {
+			ShellWorker.LOGGER.debug("Couldn't delete " + folder);
+		}
+	}
+}
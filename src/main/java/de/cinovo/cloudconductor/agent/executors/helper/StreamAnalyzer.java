@@ -21,8 +21,13 @@ package de.cinovo.cloudconductor.agent.executors.helper;
  */
 
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
  * Copyright 2013 Cinovo AG<br>
@@ -33,12 +38,19 @@ import java.util.Scanner;
  */
 public abstract class StreamAnalyzer extends Thread {
 	
+	private static final int READ_BUFFER = 8192;
+	/** longer lines get split */
+	private static final int MAX_LINE = 65536;
+	
 	private InputStream inputStream;
 	
+	private byte[] line = new byte[256];
+	private int lineLength = 0;
+	
 	
 	protected abstract void handleLine(String line);
 	
-	protected abstract String[] getValues();
+	protected abstract OutputBuffer getValues();
 	
 	/**
 	 * @param stream the stream to read
@@ -48,12 +60,60 @@ public abstract class StreamAnalyzer extends Thread {
 		this.inputStream = stream;
 	}
 	
+	/**
+	 * Handles a raw line. Override to parse the bytes without creating a string per line.
+	 * 
+	 * @param buffer the buffer holding the line
+	 * @param offset the start of the line
+	 * @param length the length of the line without line separator
+	 */
+	protected void handleLine(byte[] buffer, int offset, int length) {
+		this.handleLine(new String(buffer, offset, length, Charset.defaultCharset()));
+	}
+	
 	@Override
 	public void run() {
-		try (Scanner sc = new Scanner(this.inputStream)) {
-			while (sc.hasNextLine()) {
-				this.handleLine(sc.nextLine());
+		ByteBuffer buffer = ByteBuffer.allocate(StreamAnalyzer.READ_BUFFER);
+		try (ReadableByteChannel channel = Channels.newChannel(this.inputStream)) {
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				this.consume(buffer);
+				buffer.clear();
 			}
+		} catch (IOException e) {
+			// the process is gone, handle what we got so far
+		}
+		if (this.lineLength > 0) {
+			this.flushLine();
+		}
+	}
+	
+	private void consume(ByteBuffer buffer) {
+		byte[] array = buffer.array();
+		int limit = buffer.limit();
+		for (int i = buffer.position(); i < limit; i++) {
+			byte b = array[i];
+			if (b == '\n') {
+				this.flushLine();
+				continue;
+			}
+			if (this.lineLength == this.line.length) {
+				if (this.lineLength >= StreamAnalyzer.MAX_LINE) {
+					this.flushLine();
+				} else {
+					this.line = Arrays.copyOf(this.line, Math.min(this.line.length * 2, StreamAnalyzer.MAX_LINE));
+				}
+			}
+			this.line[this.lineLength++] = b;
+		}
+	}
+	
+	private void flushLine() {
+		int length = this.lineLength;
+		if ((length > 0) && (this.line[length - 1] == '\r')) {
+			length--;
 		}
+		this.lineLength = 0;
+		this.handleLine(this.line, 0, length);
 	}
 }
@@ -0,0 +1,114 @@
+package de.cinovo.cloudconductor.agent.executors.rpmdb;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * A header blob that is loaded lazily, so only the bytes up to the last needed tag have to be read from disk.
+ */
+abstract class HeaderBlob {
+
+	private static final int CHUNK = 256;
+
+	private final int length;
+	private byte[] data = new byte[HeaderBlob.CHUNK];
+	private int available = 0;
+
+
+	/**
+	 * @param length the length of the blob
+	 */
+	HeaderBlob(int length) {
+		this.length = length;
+	}
+
+	/**
+	 * Reads more bytes of the blob.
+	 *
+	 * @param buffer the buffer to read into
+	 * @param offset the blob position to continue at, equals the number of bytes read so far
+	 * @param max the maximum number of bytes to read
+	 * @return the number of bytes read, at least one
+	 * @throws IOException on read errors
+	 */
+	protected abstract int read(byte[] buffer, int offset, int max) throws IOException;
+
+	/**
+	 * @return the length of the blob
+	 */
+	int length() {
+		return this.length;
+	}
+
+	/**
+	 * makes sure the first n bytes are loaded
+	 *
+	 * @param n the number of bytes
+	 * @throws IOException on read errors or if the blob is shorter
+	 */
+	void load(int n) throws IOException {
+		if ((n < 0) || (n > this.length)) {
+			throw new IOException("Header blob of " + this.length + " bytes has no position " + n);
+		}
+		if (n > this.data.length) {
+			this.data = Arrays.copyOf(this.data, Math.min(this.length, Math.max(n, this.data.length * 2)));
+		}
+		while (this.available < n) {
+			this.available += this.read(this.data, this.available, Math.min(this.length, this.data.length) - this.available);
+		}
+	}
+
+	/**
+	 * @param position the position of the big endian integer
+	 * @return the integer
+	 * @throws IOException on read errors
+	 */
+	int getInt(int position) throws IOException {
+		this.load(position + 4);
+		return ((this.data[position] & 0xff) << 24) | ((this.data[position + 1] & 0xff) << 16) | ((this.data[position + 2] & 0xff) << 8) | (this.data[position + 3] & 0xff);
+	}
+
+	/**
+	 * @param position the position of the NUL terminated string
+	 * @return the string
+	 * @throws IOException on read errors or if the string isn't terminated
+	 */
+	String getString(int position) throws IOException {
+		int end = position;
+		while (true) {
+			if (end >= this.length) {
+				throw new IOException("Unterminated string at position " + position);
+			}
+			if (end >= this.available) {
+				this.load(Math.min(this.length, end + HeaderBlob.CHUNK));
+			}
+			if (this.data[end] == 0) {
+				return new String(this.data, position, end - position, StandardCharsets.UTF_8);
+			}
+			end++;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package de.cinovo.cloudconductor.agent.executors.rpmdb;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Reads the Packages.db of the rpm ndb backend. The file starts with a slot table mapping the package index to the block of its
+ * header blob, all numbers are little endian.
+ */
+class NdbRpmDatabase extends RpmDatabase {
+
+	private static final byte[] MAGIC = {'R', 'p', 'm', 'P'};
+	private static final byte[] SLOT_MAGIC = {'S', 'l', 'o', 't'};
+	private static final byte[] BLOB_MAGIC = {'B', 'l', 'b', 'S'};
+
+	private static final int HEADER_SIZE = 32;
+	private static final int OFFSET_SLOTNPAGES = 12;
+	private static final int PAGE_SIZE = 4096;
+	private static final int SLOT_SIZE = 16;
+	private static final int BLOCK_SIZE = 16;
+	private static final int BLOB_HEADER_SIZE = 16;
+	private static final int MAX_SLOT_PAGES = 4096;
+
+
+	/**
+	 * @param file the Packages.db file
+	 * @throws IOException if the file can't be opened
+	 */
+	NdbRpmDatabase(File file) throws IOException {
+		super(file);
+	}
+
+	@Override
+	public List<PackageVersion> readPackages() throws IOException {
+		byte[] header = new byte[NdbRpmDatabase.HEADER_SIZE];
+		this.read(0, header, 0, header.length);
+		if (!NdbRpmDatabase.hasMagic(header, 0, NdbRpmDatabase.MAGIC)) {
+			throw new IOException(this + " is no ndb package database");
+		}
+		int slotPages = NdbRpmDatabase.getInt(header, NdbRpmDatabase.OFFSET_SLOTNPAGES);
+		if ((slotPages <= 0) || (slotPages > NdbRpmDatabase.MAX_SLOT_PAGES)) {
+			throw new IOException("Invalid number of slot pages " + slotPages + " in " + this);
+		}
+		byte[] slots = new byte[slotPages * NdbRpmDatabase.PAGE_SIZE];
+		this.read(0, slots, 0, slots.length);
+
+		// ordered by package index, the order rpm -qa uses
+		Map<Integer, long[]> blobs = new TreeMap<>();
+		for (int slot = NdbRpmDatabase.HEADER_SIZE; slot < slots.length; slot += NdbRpmDatabase.SLOT_SIZE) {
+			if (!NdbRpmDatabase.hasMagic(slots, slot, NdbRpmDatabase.SLOT_MAGIC)) {
+				throw new IOException("Invalid slot at " + slot + " in " + this);
+			}
+			int index = NdbRpmDatabase.getInt(slots, slot + 4);
+			if (index == 0) {
+				continue;
+			}
+			long offset = (NdbRpmDatabase.getInt(slots, slot + 8) & 0xffffffffL) * NdbRpmDatabase.BLOCK_SIZE;
+			long length = (NdbRpmDatabase.getInt(slots, slot + 12) & 0xffffffffL) * NdbRpmDatabase.BLOCK_SIZE;
+			blobs.put(index, new long[] {offset, length});
+		}
+
+		List<PackageVersion> packages = new ArrayList<>(blobs.size());
+		long size = this.size();
+		byte[] blobHeader = new byte[NdbRpmDatabase.BLOB_HEADER_SIZE];
+		for (Map.Entry<Integer, long[]> entry : blobs.entrySet()) {
+			long offset = entry.getValue()[0];
+			long blocks = entry.getValue()[1];
+			if ((offset + blocks) > size) {
+				throw new IOException("Blob of package " + entry.getKey() + " exceeds " + this);
+			}
+			this.read(offset, blobHeader, 0, blobHeader.length);
+			if (!NdbRpmDatabase.hasMagic(blobHeader, 0, NdbRpmDatabase.BLOB_MAGIC) || (NdbRpmDatabase.getInt(blobHeader, 4) != entry.getKey().intValue())) {
+				throw new IOException("Invalid blob of package " + entry.getKey() + " in " + this);
+			}
+			int length = NdbRpmDatabase.getInt(blobHeader, 12);
+			if ((length <= 0) || ((length + NdbRpmDatabase.BLOB_HEADER_SIZE) > blocks)) {
+				throw new IOException("Invalid blob length " + length + " of package " + entry.getKey() + " in " + this);
+			}
+			final long data = offset + NdbRpmDatabase.BLOB_HEADER_SIZE;
+			packages.add(RpmHeader.read(new HeaderBlob(length) {
+
+				@Override
+				protected int read(byte[] buffer, int position, int max) throws IOException {
+					NdbRpmDatabase.this.read(data + position, buffer, position, max);
+					return max;
+				}
+			}));
+		}
+		return packages;
+	}
+
+	private static boolean hasMagic(byte[] buffer, int offset, byte[] magic) {
+		for (int i = 0; i < magic.length; i++) {
+			if (buffer[offset + i] != magic[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int getInt(byte[] buffer, int offset) {
+		return (buffer[offset] & 0xff) | ((buffer[offset + 1] & 0xff) << 8) | ((buffer[offset + 2] & 0xff) << 16) | ((buffer[offset + 3] & 0xff) << 24);
+	}
+}
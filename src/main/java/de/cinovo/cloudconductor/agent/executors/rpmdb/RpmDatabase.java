@@ -0,0 +1,123 @@
+package de.cinovo.cloudconductor.agent.executors.rpmdb;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Read only access to the package headers of a rpm database without calling rpm. Supports the sqlite and ndb backends, the
+ * Berkeley DB backend is left to rpm itself.
+ */
+public abstract class RpmDatabase implements Closeable {
+
+	private static final String SQLITE_FILE = "rpmdb.sqlite";
+	private static final String SQLITE_WAL_FILE = "rpmdb.sqlite-wal";
+	private static final String NDB_FILE = "Packages.db";
+
+	private final File file;
+	private final FileChannel channel;
+
+
+	/**
+	 * @param file the database file
+	 * @throws IOException if the file can't be opened
+	 */
+	RpmDatabase(File file) throws IOException {
+		this.file = file;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+	}
+
+	/**
+	 * @param folder the rpm database folder
+	 * @return the database or null if the folder holds no database in a supported format
+	 * @throws IOException if the database can't be opened
+	 */
+	public static RpmDatabase open(File folder) throws IOException {
+		File sqlite = new File(folder, RpmDatabase.SQLITE_FILE);
+		if (sqlite.isFile()) {
+			// committed transactions not yet checkpointed into the database file are only visible through sqlite itself
+			if (new File(folder, RpmDatabase.SQLITE_WAL_FILE).length() > 0) {
+				return null;
+			}
+			return new SqliteRpmDatabase(sqlite);
+		}
+		File ndb = new File(folder, RpmDatabase.NDB_FILE);
+		if (ndb.isFile()) {
+			return new NdbRpmDatabase(ndb);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the installed packages
+	 * @throws IOException if the database can't be read or is malformed
+	 */
+	public abstract List<PackageVersion> readPackages() throws IOException;
+
+	/**
+	 * @return the size of the database file
+	 * @throws IOException on read errors
+	 */
+	protected long size() throws IOException {
+		return this.channel.size();
+	}
+
+	/**
+	 * reads exactly the given number of bytes
+	 *
+	 * @param position the byte offset in the file
+	 * @param buffer the buffer
+	 * @param offset the offset in the buffer
+	 * @param length the number of bytes to read
+	 * @throws IOException on read errors or if the file ends early
+	 */
+	protected void read(long position, byte[] buffer, int offset, int length) throws IOException {
+		ByteBuffer target = ByteBuffer.wrap(buffer, offset, length);
+		long current = position;
+		while (target.hasRemaining()) {
+			int read = this.channel.read(target, current);
+			if (read < 0) {
+				throw new IOException("Unexpected end of " + this.file + " at " + current);
+			}
+			current += read;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	@Override
+	public String toString() {
+		return this.file.getPath();
+	}
+}
@@ -0,0 +1,99 @@
+package de.cinovo.cloudconductor.agent.executors.rpmdb;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Reads NAME, VERSION and RELEASE from a rpm header blob as stored in the rpm database. The blob starts with the number of index
+ * entries and the size of the data store, followed by the index entries (tag, type, offset, count; all big endian) and the data
+ * store.
+ */
+final class RpmHeader {
+
+	private static final int TAG_NAME = 1000;
+	private static final int TAG_VERSION = 1001;
+	private static final int TAG_RELEASE = 1002;
+
+	private static final int TYPE_STRING = 6;
+	private static final int TYPE_I18NSTRING = 9;
+
+	private static final int ENTRY_SIZE = 16;
+	private static final int MAX_ENTRIES = 0xffff;
+
+
+	private RpmHeader() {
+		// prevent instantiation
+	}
+
+	/**
+	 * @param blob the header blob
+	 * @return the package in the same format as <code>rpm -qa --queryformat %{NAME};%{VERSION}-%{RELEASE}</code>
+	 * @throws IOException if the blob is not a valid header
+	 */
+	static PackageVersion read(HeaderBlob blob) throws IOException {
+		int entries = blob.getInt(0);
+		int dataLength = blob.getInt(4);
+		int dataStart = 8 + (entries * RpmHeader.ENTRY_SIZE);
+		if ((entries <= 0) || (entries > RpmHeader.MAX_ENTRIES) || (dataLength < 0) || ((long) dataStart + dataLength > blob.length())) {
+			throw new IOException("Invalid rpm header with " + entries + " entries and " + dataLength + " bytes of data");
+		}
+		blob.load(dataStart);
+
+		int name = -1;
+		int version = -1;
+		int release = -1;
+		for (int i = 0; i < entries; i++) {
+			int entry = 8 + (i * RpmHeader.ENTRY_SIZE);
+			int tag = blob.getInt(entry);
+			if ((tag != RpmHeader.TAG_NAME) && (tag != RpmHeader.TAG_VERSION) && (tag != RpmHeader.TAG_RELEASE)) {
+				continue;
+			}
+			int type = blob.getInt(entry + 4);
+			if ((type != RpmHeader.TYPE_STRING) && (type != RpmHeader.TYPE_I18NSTRING)) {
+				throw new IOException("Unexpected type " + type + " of tag " + tag);
+			}
+			int offset = blob.getInt(entry + 8);
+			if ((offset < 0) || (offset >= dataLength)) {
+				throw new IOException("Invalid offset " + offset + " of tag " + tag);
+			}
+			switch (tag) {
+			case TAG_NAME:
+				name = dataStart + offset;
+				break;
+			case TAG_VERSION:
+				version = dataStart + offset;
+				break;
+			default:
+				release = dataStart + offset;
+				break;
+			}
+		}
+		if ((name < 0) || (version < 0) || (release < 0)) {
+			throw new IOException("Rpm header without name, version or release");
+		}
+		return new PackageVersion(blob.getString(name), blob.getString(version) + "-" + blob.getString(release), null);
+	}
+}
@@ -0,0 +1,353 @@
+package de.cinovo.cloudconductor.agent.executors.rpmdb;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Reads the rpmdb.sqlite of the rpm sqlite backend. Walks the table b-tree of the Packages table, whose second column holds the
+ * header blob, straight from the database file. Only the bytes of a header up to its release tag are read.
+ */
+class SqliteRpmDatabase extends RpmDatabase {
+
+	private static final byte[] MAGIC = "SQLite format 3\0".getBytes(StandardCharsets.US_ASCII);
+	private static final int FILE_HEADER_SIZE = 100;
+	private static final int SCHEMA_PAGE = 1;
+	private static final int MAX_DEPTH = 64;
+
+	private static final int PAGE_INTERIOR_TABLE = 5;
+	private static final int PAGE_LEAF_TABLE = 13;
+
+	private static final String PACKAGES_TABLE = "Packages";
+	private static final int BLOB_COLUMN = 1;
+
+	private int pageSize;
+	private int usableSize;
+	private long pageCount;
+
+
+	/**
+	 * @param file the rpmdb.sqlite file
+	 * @throws IOException if the file can't be opened
+	 */
+	SqliteRpmDatabase(File file) throws IOException {
+		super(file);
+	}
+
+	@Override
+	public List<PackageVersion> readPackages() throws IOException {
+		this.readFileHeader();
+		final int[] packagesRoot = {0};
+		this.walk(SqliteRpmDatabase.SCHEMA_PAGE, 0, new CellVisitor() {
+
+			@Override
+			public void visit(Payload payload) throws IOException {
+				// sqlite_master(type, name, tbl_name, rootpage, sql)
+				long[] types = payload.readRecordHeader();
+				if (types.length < 4) {
+					return;
+				}
+				Object type = payload.readValue(types[0]);
+				Object name = payload.readValue(types[1]);
+				payload.skip(SqliteRpmDatabase.contentSize(types[2]));
+				Object root = payload.readValue(types[3]);
+				if ("table".equals(type) && SqliteRpmDatabase.PACKAGES_TABLE.equals(name) && (root instanceof Long)) {
+					packagesRoot[0] = ((Long) root).intValue();
+				}
+			}
+		});
+		if (packagesRoot[0] <= 0) {
+			throw new IOException("No " + SqliteRpmDatabase.PACKAGES_TABLE + " table in " + this);
+		}
+
+		final List<PackageVersion> packages = new ArrayList<>();
+		this.walk(packagesRoot[0], 0, new CellVisitor() {
+
+			@Override
+			public void visit(final Payload payload) throws IOException {
+				// Packages(hnum INTEGER PRIMARY KEY, blob BLOB)
+				long[] types = payload.readRecordHeader();
+				if (types.length <= SqliteRpmDatabase.BLOB_COLUMN) {
+					throw new IOException("Packages record without blob in " + SqliteRpmDatabase.this);
+				}
+				for (int i = 0; i < SqliteRpmDatabase.BLOB_COLUMN; i++) {
+					payload.skip(SqliteRpmDatabase.contentSize(types[i]));
+				}
+				long type = types[SqliteRpmDatabase.BLOB_COLUMN];
+				if ((type < 12) || ((type % 2) != 0)) {
+					throw new IOException("Unexpected serial type " + type + " of the header blob in " + SqliteRpmDatabase.this);
+				}
+				packages.add(RpmHeader.read(new HeaderBlob((int) SqliteRpmDatabase.contentSize(type)) {
+
+					@Override
+					protected int read(byte[] buffer, int offset, int max) throws IOException {
+						return payload.read(buffer, offset, max);
+					}
+				}));
+			}
+		});
+		return packages;
+	}
+
+	private void readFileHeader() throws IOException {
+		byte[] header = new byte[SqliteRpmDatabase.FILE_HEADER_SIZE];
+		this.read(0, header, 0, header.length);
+		for (int i = 0; i < SqliteRpmDatabase.MAGIC.length; i++) {
+			if (header[i] != SqliteRpmDatabase.MAGIC[i]) {
+				throw new IOException(this + " is no sqlite database");
+			}
+		}
+		int size = SqliteRpmDatabase.getShort(header, 16);
+		this.pageSize = size == 1 ? 65536 : size;
+		if ((this.pageSize < 512) || (Integer.bitCount(this.pageSize) != 1)) {
+			throw new IOException("Invalid page size " + this.pageSize + " in " + this);
+		}
+		this.usableSize = this.pageSize - (header[20] & 0xff);
+		this.pageCount = this.size() / this.pageSize;
+	}
+
+	private byte[] readPage(long page) throws IOException {
+		if ((page < 1) || (page > this.pageCount)) {
+			throw new IOException("Invalid page " + page + " in " + this);
+		}
+		byte[] data = new byte[this.pageSize];
+		this.read((page - 1) * this.pageSize, data, 0, this.pageSize);
+		return data;
+	}
+
+	private void walk(long page, int depth, CellVisitor visitor) throws IOException {
+		if (depth > SqliteRpmDatabase.MAX_DEPTH) {
+			throw new IOException("B-tree too deep in " + this);
+		}
+		byte[] data = this.readPage(page);
+		int header = page == SqliteRpmDatabase.SCHEMA_PAGE ? SqliteRpmDatabase.FILE_HEADER_SIZE : 0;
+		int type = data[header];
+		int cells = SqliteRpmDatabase.getShort(data, header + 3);
+		if (type == SqliteRpmDatabase.PAGE_INTERIOR_TABLE) {
+			for (int i = 0; i < cells; i++) {
+				int cell = SqliteRpmDatabase.getShort(data, header + 12 + (i * 2));
+				this.walk(SqliteRpmDatabase.getInt(data, cell) & 0xffffffffL, depth + 1, visitor);
+			}
+			this.walk(SqliteRpmDatabase.getInt(data, header + 8) & 0xffffffffL, depth + 1, visitor);
+		} else if (type == SqliteRpmDatabase.PAGE_LEAF_TABLE) {
+			for (int i = 0; i < cells; i++) {
+				int cell = SqliteRpmDatabase.getShort(data, header + 8 + (i * 2));
+				long[] varint = new long[2];
+				int position = cell + SqliteRpmDatabase.readVarint(data, cell, varint);
+				long payloadSize = varint[0];
+				// skip the rowid
+				position += SqliteRpmDatabase.readVarint(data, position, varint);
+				int local = this.localSize(payloadSize);
+				long overflow = local < payloadSize ? SqliteRpmDatabase.getInt(data, position + local) & 0xffffffffL : 0;
+				visitor.visit(new Payload(data, position, local, payloadSize, overflow));
+			}
+		} else {
+			throw new IOException("Unexpected page type " + type + " of page " + page + " in " + this);
+		}
+	}
+
+	private int localSize(long payloadSize) {
+		int max = this.usableSize - 35;
+		if (payloadSize <= max) {
+			return (int) payloadSize;
+		}
+		int min = (((this.usableSize - 12) * 32) / 255) - 23;
+		int local = (int) (min + ((payloadSize - min) % (this.usableSize - 4)));
+		return local <= max ? local : min;
+	}
+
+	/**
+	 * @param serialType the serial type of a column
+	 * @return the number of bytes the column takes in the record
+	 */
+	static long contentSize(long serialType) {
+		if (serialType >= 12) {
+			return (serialType - 12) / 2;
+		}
+		switch ((int) serialType) {
+		case 1:
+			return 1;
+		case 2:
+			return 2;
+		case 3:
+			return 3;
+		case 4:
+			return 4;
+		case 5:
+			return 6;
+		case 6:
+		case 7:
+			return 8;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * @param data the buffer
+	 * @param offset the start of the varint
+	 * @param value holds the value at index 0 after the call
+	 * @return the number of bytes of the varint
+	 */
+	static int readVarint(byte[] data, int offset, long[] value) {
+		long result = 0;
+		for (int i = 0; i < 8; i++) {
+			int b = data[offset + i] & 0xff;
+			result = (result << 7) | (b & 0x7f);
+			if ((b & 0x80) == 0) {
+				value[0] = result;
+				return i + 1;
+			}
+		}
+		value[0] = (result << 8) | (data[offset + 8] & 0xff);
+		return 9;
+	}
+
+	private static int getShort(byte[] data, int offset) {
+		return ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+	}
+
+	private static int getInt(byte[] data, int offset) {
+		return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16) | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+	}
+
+
+	private interface CellVisitor {
+
+		void visit(Payload payload) throws IOException;
+	}
+
+	/**
+	 * Sequential reader of a cell payload, following the overflow page chain on demand.
+	 */
+	private final class Payload {
+
+		private byte[] page;
+		private int position;
+		private int end;
+		private long remaining;
+		private long nextOverflow;
+
+
+		Payload(byte[] page, int position, int local, long size, long overflow) {
+			this.page = page;
+			this.position = position;
+			this.end = position + local;
+			this.remaining = size;
+			this.nextOverflow = overflow;
+		}
+
+		int read(byte[] buffer, int offset, int max) throws IOException {
+			if (this.remaining <= 0) {
+				throw new IOException("Read beyond the payload in " + SqliteRpmDatabase.this);
+			}
+			if (this.position == this.end) {
+				this.page = SqliteRpmDatabase.this.readPage(this.nextOverflow);
+				this.nextOverflow = SqliteRpmDatabase.getInt(this.page, 0) & 0xffffffffL;
+				this.position = 4;
+				this.end = (int) Math.min(SqliteRpmDatabase.this.usableSize, 4 + this.remaining);
+			}
+			int count = (int) Math.min(Math.min(max, this.end - this.position), this.remaining);
+			System.arraycopy(this.page, this.position, buffer, offset, count);
+			this.position += count;
+			this.remaining -= count;
+			return count;
+		}
+
+		void readFully(byte[] buffer, int length) throws IOException {
+			int read = 0;
+			while (read < length) {
+				read += this.read(buffer, read, length - read);
+			}
+		}
+
+		void skip(long length) throws IOException {
+			byte[] scratch = new byte[(int) Math.min(length, 4096)];
+			long left = length;
+			while (left > 0) {
+				left -= this.read(scratch, 0, (int) Math.min(left, scratch.length));
+			}
+		}
+
+		long[] readRecordHeader() throws IOException {
+			byte[] first = new byte[9];
+			int read = 0;
+			long[] varint = new long[1];
+			// the header size is a varint of at most 9 bytes, read byte wise to not consume the header itself
+			do {
+				this.readFully(first, 1);
+				int b = first[0] & 0xff;
+				varint[0] = (varint[0] << 7) | (b & 0x7f);
+				read++;
+				if ((b & 0x80) == 0) {
+					break;
+				}
+			} while (read < 9);
+			long headerSize = varint[0];
+			if ((headerSize < read) || (headerSize > this.remaining + read)) {
+				throw new IOException("Invalid record header in " + SqliteRpmDatabase.this);
+			}
+			byte[] header = new byte[(int) headerSize - read + 9];
+			this.readFully(header, (int) headerSize - read);
+			List<Long> types = new ArrayList<>();
+			int position = 0;
+			while (position < (headerSize - read)) {
+				position += SqliteRpmDatabase.readVarint(header, position, varint);
+				types.add(varint[0]);
+			}
+			long[] result = new long[types.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = types.get(i);
+			}
+			return result;
+		}
+
+		Object readValue(long serialType) throws IOException {
+			if (serialType >= 12) {
+				byte[] value = new byte[(int) SqliteRpmDatabase.contentSize(serialType)];
+				this.readFully(value, value.length);
+				return (serialType % 2) == 1 ? new String(value, StandardCharsets.UTF_8) : value;
+			}
+			if ((serialType >= 1) && (serialType <= 6)) {
+				byte[] value = new byte[(int) SqliteRpmDatabase.contentSize(serialType)];
+				this.readFully(value, value.length);
+				long result = value[0];
+				for (int i = 1; i < value.length; i++) {
+					result = (result << 8) | (value[i] & 0xff);
+				}
+				return result;
+			}
+			if ((serialType == 8) || (serialType == 9)) {
+				return Long.valueOf(serialType - 8);
+			}
+			this.skip(SqliteRpmDatabase.contentSize(serialType));
+			return null;
+		}
+	}
+}
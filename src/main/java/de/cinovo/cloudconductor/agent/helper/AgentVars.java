@@ -87,10 +87,163 @@ public interface AgentVars {
 	 * package manager handler script
 	 */
 	public static final String SCRIPT_PACKAGE_MANAGER_HANDLER = "packageManagerHandler.sh";
+	/**
+	 * worker script running the other scripts
+	 */
+	public static final String SCRIPT_WORKER = "worker.sh";
 	/**
 	 * relative path to the script folder
 	 */
 	public static final String SCRIPTFOLDER = "scripts/";
+	/**
+	 * property for the folder the agent keeps its state in
+	 */
+	public static final String STATE_FOLDER_PROP = "nodeagent.state.folder";
+	/**
+	 * default relative path to the state folder
+	 */
+	public static final String STATE_FOLDER_DEFAULT = "state/";
+	
+	/**
+	 * property prefix for execution timeouts in seconds, followed by the executor name, e.g. nodeagent.timeout.serviceState.sh
+	 */
+	public static final String EXECUTION_TIMEOUT_PROP = "nodeagent.timeout.";
+	/**
+	 * executor name used for the timeout of all executors without an own timeout
+	 */
+	public static final String EXECUTION_TIMEOUT_DEFAULT_NAME = "default";
+	/**
+	 * default execution timeout in seconds
+	 */
+	public static final long EXECUTION_TIMEOUT_DEFAULT = 600;
+	/**
+	 * default execution timeout in seconds for the package manager
+	 */
+	public static final long EXECUTION_TIMEOUT_PACKAGE_MANAGER = 3600;
+	/**
+	 * default timeout in seconds for the state check of a single service
+	 */
+	public static final long EXECUTION_TIMEOUT_SERVICE_STATE = 30;
+	
+	/**
+	 * property for the number of services checked at the same time
+	 */
+	public static final String SERVICE_PROBE_PARALLELISM_PROP = "nodeagent.service.probe.parallelism";
+	/**
+	 * default number of services checked at the same time
+	 */
+	public static final int SERVICE_PROBE_PARALLELISM_DEFAULT = 8;
+	/**
+	 * property to disable checking the service states from pid files and /proc
+	 */
+	public static final String SERVICE_PROBE_NATIVE_PROP = "nodeagent.service.probe.native";
+	/**
+	 * property for the number of service actions run at the same time
+	 */
+	public static final String SERVICE_ACTION_PARALLELISM_PROP = "nodeagent.service.action.parallelism";
+	/**
+	 * default number of service actions run at the same time
+	 */
+	public static final int SERVICE_ACTION_PARALLELISM_DEFAULT = 4;
+	
+	/**
+	 * property for the number of chars of process output kept in memory per stream
+	 */
+	public static final String OUTPUT_BUFFER_PROP = "nodeagent.output.buffer";
+	/**
+	 * default number of chars of process output kept in memory per stream
+	 */
+	public static final long OUTPUT_BUFFER_DEFAULT = 262144;
+	/**
+	 * property to enable writing the complete process output to temp files
+	 */
+	public static final String OUTPUT_SPILL_PROP = "nodeagent.output.spill";
+	
+	/**
+	 * property for the rpm database folder
+	 */
+	public static final String RPM_DB_PROP = "nodeagent.rpm.db";
+	/**
+	 * default rpm database folder
+	 */
+	public static final String RPM_DB_DEFAULT = "/var/lib/rpm";
+	
+	/**
+	 * property for the dpkg status file
+	 */
+	public static final String DPKG_STATUS_PROP = "nodeagent.dpkg.status";
+	/**
+	 * default dpkg status file
+	 */
+	public static final String DPKG_STATUS_DEFAULT = "/var/lib/dpkg/status";
+	
+	/**
+	 * property to disable running the scripts through the worker
+	 */
+	public static final String WORKER_ENABLED_PROP = "nodeagent.worker.enabled";
+	/**
+	 * property for the number of idle workers kept running, at least as many as services are probed in parallel
+	 */
+	public static final String WORKER_POOL_PROP = "nodeagent.worker.pool";
+	/**
+	 * default number of idle workers kept running
+	 */
+	public static final int WORKER_POOL_DEFAULT = 4;
+	
+	/**
+	 * property for the seconds a package list derived from a transaction is used before the package database is read completely
+	 */
+	public static final String PACKAGE_RESCAN_INTERVAL_PROP = "nodeagent.package.rescan.interval";
+	/**
+	 * default seconds a package list derived from a transaction is used before the package database is read completely
+	 */
+	public static final long PACKAGE_RESCAN_INTERVAL_DEFAULT = 3600;
+	/**
+	 * property to disable downloading packages before the execution lock is taken
+	 */
+	public static final String PACKAGE_PREFETCH_PROP = "nodeagent.package.prefetch";
+	/**
+	 * property to disable reporting the installed packages as delta to the last acknowledged inventory
+	 */
+	public static final String PACKAGE_DELTA_PROP = "nodeagent.package.delta";
+	
+	/**
+	 * property for the seconds the package and file runs of a template are spread over
+	 */
+	public static final String ROLLOUT_WINDOW_PROP = "nodeagent.rollout.window";
+	/**
+	 * property for the shared folder holding the rollout slot token files
+	 */
+	public static final String ROLLOUT_SLOTS_FOLDER_PROP = "nodeagent.rollout.slots.folder";
+	/**
+	 * property for the number of agents applying changes at the same time
+	 */
+	public static final String ROLLOUT_SLOTS_PROP = "nodeagent.rollout.slots";
+	/**
+	 * default number of agents applying changes at the same time
+	 */
+	public static final int ROLLOUT_SLOTS_DEFAULT = 1;
+	
+	/**
+	 * property for the number of config files fetched at the same time
+	 */
+	public static final String FILE_FETCH_PARALLELISM_PROP = "nodeagent.file.fetch.parallelism";
+	/**
+	 * default number of config files fetched at the same time
+	 */
+	public static final int FILE_FETCH_PARALLELISM_DEFAULT = 8;
+	/**
+	 * property to disable the index reusing the checksums of unchanged local config files
+	 */
+	public static final String FILE_INDEX_PROP = "nodeagent.file.index";
+	/**
+	 * property for the number of parsed config file templates kept in memory
+	 */
+	public static final String TEMPLATE_CACHE_PROP = "nodeagent.template.cache";
+	/**
+	 * default number of parsed config file templates kept in memory
+	 */
+	public static final int TEMPLATE_CACHE_DEFAULT = 256;
 
 	public static final String REPO_TYPE_PROP = "REPO_TYPE";
 }
@@ -0,0 +1,100 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+
+import de.cinovo.cloudconductor.api.lib.exceptions.CloudConductorException;
+import de.cinovo.cloudconductor.api.lib.helper.AbstractApiHandler;
+import de.taimos.httputils.HTTPRequest;
+import de.taimos.httputils.WS;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Fetches the content of config files conditionally. The entity tag of the last fetch is sent as If-None-Match, so an unchanged
+ * file costs a 304 without body.
+ */
+public class ConfigFileDataHandler extends AbstractApiHandler {
+	
+	/**
+	 * The content of a config file and its entity tag.
+	 */
+	public static final class FileData {
+		
+		private final String content;
+		private final String etag;
+		
+		
+		FileData(String content, String etag) {
+			this.content = content;
+			this.etag = etag;
+		}
+		
+		/**
+		 * @return the content
+		 */
+		public String getContent() {
+			return this.content;
+		}
+		
+		/**
+		 * @return the entity tag or null if the server didn't send one
+		 */
+		public String getETag() {
+			return this.etag;
+		}
+	}
+	
+	
+	/**
+	 * @param cloudconductorUrl the cloudconductor url
+	 */
+	public ConfigFileDataHandler(String cloudconductorUrl) {
+		super(cloudconductorUrl);
+	}
+	
+	/**
+	 * @param name the name of the config file
+	 * @param etag the entity tag of the content known locally, null to fetch unconditionally
+	 * @return the content or null if it still matches the entity tag
+	 * @throws CloudConductorException with the http status if the fetch fails
+	 */
+	public FileData getConfigFileData(String name, String etag) throws CloudConductorException {
+		String path = this.pathGenerator("/file/{name}/data", name);
+		HTTPRequest request = this.request(path);
+		if (etag != null) {
+			request.header("If-None-Match", etag);
+		}
+		HttpResponse response = request.get();
+		int status = WS.getStatus(response);
+		if ((etag != null) && (status == HttpStatus.SC_NOT_MODIFIED)) {
+			return null;
+		}
+		if (WS.isStatusClientError(response) || WS.isStatusServerError(response)) {
+			throw new CloudConductorException(status, "Fetching " + name + " failed (status: " + status + ", request path: " + path + ").");
+		}
+		Header header = response.getFirstHeader("ETag");
+		return new FileData(this.objectFromResponse(response, String.class), header == null ? null : header.getValue());
+	}
+}
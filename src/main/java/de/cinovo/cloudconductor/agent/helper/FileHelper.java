@@ -23,9 +23,11 @@ package de.cinovo.cloudconductor.agent.helper;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.GroupPrincipal;
 import java.nio.file.attribute.PosixFileAttributeView;
 import java.nio.file.attribute.PosixFilePermission;
@@ -75,7 +77,8 @@ public class FileHelper {
 				writer.append(System.lineSeparator());
 				writer.append("enabled=0");
 				writer.append(System.lineSeparator());
-				writer.append("metadata_expire=1h");
+				// the agent expires the cache whenever the repo revision changes
+				writer.append("metadata_expire=never");
 				writer.append(System.lineSeparator());
 				writer.append("gpgcheck=0");
 				writer.append(System.lineSeparator());
@@ -166,6 +169,22 @@ public class FileHelper {
 		view.setPermissions(fileModeSet);
 	}
 	
+	/**
+	 * Replaces the target file by the source file in one rename, so readers either see the old or the new content. Both files
+	 * have to be on the same file system.
+	 *
+	 * @param source the file to move
+	 * @param target the file to replace
+	 * @throws IOException if the file couldn't be moved
+	 */
+	public static void replace(File source, File target) throws IOException {
+		try {
+			java.nio.file.Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			java.nio.file.Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
 	
 	private static final String akFolder = "/root/.ssh/";
 	private static final String akFile = "authorized_keys";
@@ -0,0 +1,114 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Remembers the entity tag and checksum of the server content each config file was last written from, together with size and
+ * modification time of the written file. As long as the local file is untouched, an unchanged checksum in the file list saves the
+ * fetch and the entity tag allows a conditional one.
+ */
+public final class FileManifest {
+	
+	private static final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+	
+	
+	private static final class Entry {
+		
+		private final String name;
+		private final String etag;
+		private final String checksum;
+		private final long size;
+		private final long modified;
+		
+		
+		Entry(String name, String etag, String checksum, long size, long modified) {
+			this.name = name;
+			this.etag = etag;
+			this.checksum = checksum;
+			this.size = size;
+			this.modified = modified;
+		}
+	}
+	
+	
+	private FileManifest() {
+		// prevent instantiation
+	}
+	
+	/**
+	 * @param name the name of the config file
+	 * @param target the local file
+	 * @return the entity tag the local file was written from or null if unknown or the file changed since
+	 */
+	public static String getETag(String name, File target) {
+		Entry entry = FileManifest.getEntry(name, target);
+		return entry == null ? null : entry.etag;
+	}
+	
+	/**
+	 * @param name the name of the config file
+	 * @param target the local file
+	 * @param checksum the checksum of the server content as listed by the server, may be null
+	 * @return true if the local file was written from server content with this checksum and is untouched since
+	 */
+	public static boolean isCurrent(String name, File target, String checksum) {
+		Entry entry = FileManifest.getEntry(name, target);
+		return (entry != null) && (checksum != null) && checksum.equals(entry.checksum);
+	}
+	
+	private static Entry getEntry(String name, File target) {
+		Entry entry = FileManifest.entries.get(target.getAbsolutePath());
+		if ((entry == null) || !entry.name.equals(name)) {
+			return null;
+		}
+		if ((target.length() != entry.size) || (target.lastModified() != entry.modified) || !target.isFile()) {
+			return null;
+		}
+		return entry;
+	}
+	
+	/**
+	 * @param name the name of the config file
+	 * @param target the local file, as written from the server content
+	 * @param etag the entity tag of the server content, may be null
+	 * @param checksum the checksum of the server content as listed by the server, may be null
+	 */
+	public static void put(String name, File target, String etag, String checksum) {
+		if ((etag == null) && (checksum == null)) {
+			FileManifest.remove(target);
+			return;
+		}
+		FileManifest.entries.put(target.getAbsolutePath(), new Entry(name, etag, checksum, target.length(), target.lastModified()));
+	}
+	
+	/**
+	 * @param target the local file to forget
+	 */
+	public static void remove(File target) {
+		FileManifest.entries.remove(target.getAbsolutePath());
+	}
+}
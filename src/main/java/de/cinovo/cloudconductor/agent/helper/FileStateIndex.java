@@ -0,0 +1,416 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Keeps the md5 checksums of local files in a memory mapped index in the state folder, so a file only has to be hashed again if
+ * its size, modification time, change time or inode changed. The index is a hash table of fixed size records keyed by the path,
+ * each record carries a CRC. A record torn by a crash fails its CRC and counts as missing, an index with a broken header is
+ * rebuilt empty. Records are written to the mapping and forced to disk by {@link #flush()}, once per run instead of once per
+ * file.
+ */
+public final class FileStateIndex {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(FileStateIndex.class);
+	
+	private static final String INDEX_FILE = "file.index";
+	private static final int MAGIC = 0x43434649;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	// path hash (16), size, mtime, ctime, device, inode (8 each), md5 (16), reserved (4), crc (4)
+	private static final int RECORD_SIZE = 80;
+	private static final int CRC_OFFSET = FileStateIndex.RECORD_SIZE - 4;
+	private static final int INITIAL_CAPACITY = 256;
+	private static final int MAX_CAPACITY = 1 << 16;
+	// files changed this recently may still change within the same timestamp, they are hashed every time
+	private static final long RACY_MILLIS = 2000;
+	
+	private static FileStateIndex instance;
+	
+	private final File indexFile;
+	private final long racyMillis;
+	private MappedByteBuffer buffer;
+	private int capacity;
+	private int used;
+	private boolean dirty = false;
+	private boolean disabled = false;
+	
+	
+	/**
+	 * @param indexFile the file holding the index
+	 */
+	public FileStateIndex(File indexFile) {
+		this(indexFile, FileStateIndex.RACY_MILLIS);
+	}
+	
+	/**
+	 * @param indexFile the file holding the index
+	 * @param racyMillis files changed less than this ago aren't stored
+	 */
+	FileStateIndex(File indexFile, long racyMillis) {
+		this.indexFile = indexFile;
+		this.racyMillis = racyMillis;
+	}
+	
+	/**
+	 * @return the index in the configured state folder, disabled if configured so
+	 */
+	public static synchronized FileStateIndex get() {
+		if (FileStateIndex.instance == null) {
+			File folder = new File(System.getProperty(AgentVars.STATE_FOLDER_PROP, AgentVars.STATE_FOLDER_DEFAULT));
+			FileStateIndex.instance = new FileStateIndex(new File(folder, FileStateIndex.INDEX_FILE));
+			FileStateIndex.instance.disabled = "false".equalsIgnoreCase(System.getProperty(AgentVars.FILE_INDEX_PROP));
+		}
+		return FileStateIndex.instance;
+	}
+	
+	/**
+	 * @param file the file to hash
+	 * @return the md5 checksum of the file or null if it can't be read
+	 */
+	public synchronized HashCode getChecksum(File file) {
+		Path path = file.toPath();
+		long[] before;
+		try {
+			before = FileStateIndex.stat(path);
+		} catch (IOException e) {
+			return null;
+		}
+		byte[] key = Hashing.murmur3_128().hashString(file.getAbsolutePath(), StandardCharsets.UTF_8).asBytes();
+		int slot = this.find(key);
+		if ((slot >= 0) && this.matches(slot, before)) {
+			byte[] md5 = new byte[16];
+			this.read(slot, 56, md5);
+			return HashCode.fromBytes(md5);
+		}
+		
+		HashCode checksum;
+		try {
+			checksum = Files.hash(file, Hashing.md5());
+			if ((slot >= 0) && !this.isRacy(before) && Arrays.equals(before, FileStateIndex.stat(path))) {
+				this.store(slot, key, before, checksum.asBytes());
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		return checksum;
+	}
+	
+	/**
+	 * Forces the records written since the last call to disk. A record lost in a crash only costs hashing its file again.
+	 */
+	public synchronized void flush() {
+		if (this.dirty && (this.buffer != null)) {
+			this.buffer.force();
+		}
+		this.dirty = false;
+	}
+	
+	/**
+	 * @return the slot holding the key or the free slot to store it in, -1 if the index can't be used
+	 */
+	private int find(byte[] key) {
+		if (!this.open()) {
+			return -1;
+		}
+		ByteBuffer k = ByteBuffer.wrap(key);
+		long hi = k.getLong();
+		long lo = k.getLong();
+		int start = (int) ((hi ^ (hi >>> 32)) & (this.capacity - 1));
+		for (int i = 0; i < this.capacity; i++) {
+			int slot = (start + i) & (this.capacity - 1);
+			if (!this.isValid(slot)) {
+				return slot;
+			}
+			int offset = this.offset(slot);
+			if ((this.buffer.getLong(offset) == hi) && (this.buffer.getLong(offset + 8) == lo)) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+	
+	private boolean matches(int slot, long[] stat) {
+		if (!this.isValid(slot)) {
+			return false;
+		}
+		int offset = this.offset(slot) + 16;
+		for (int i = 0; i < stat.length; i++) {
+			if (this.buffer.getLong(offset + (i * 8)) != stat[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private void store(int slot, byte[] key, long[] stat, byte[] md5) {
+		boolean added = !this.isValid(slot);
+		ByteBuffer record = ByteBuffer.allocate(FileStateIndex.RECORD_SIZE);
+		record.put(key);
+		for (long value : stat) {
+			record.putLong(value);
+		}
+		record.put(md5);
+		record.putInt(0);
+		record.putInt(FileStateIndex.crc(record.array(), FileStateIndex.CRC_OFFSET));
+		this.buffer.position(this.offset(slot));
+		this.buffer.put(record.array());
+		this.dirty = true;
+		if (added) {
+			this.used++;
+			if ((this.used * 4) > (this.capacity * 3)) {
+				this.resize();
+			}
+		}
+	}
+	
+	private boolean isValid(int slot) {
+		byte[] record = new byte[FileStateIndex.RECORD_SIZE];
+		this.read(slot, 0, record);
+		return ByteBuffer.wrap(record).getInt(FileStateIndex.CRC_OFFSET) == FileStateIndex.crc(record, FileStateIndex.CRC_OFFSET);
+	}
+	
+	private void read(int slot, int offset, byte[] target) {
+		this.buffer.position(this.offset(slot) + offset);
+		this.buffer.get(target);
+	}
+	
+	private int offset(int slot) {
+		return FileStateIndex.HEADER_SIZE + (slot * FileStateIndex.RECORD_SIZE);
+	}
+	
+	private boolean open() {
+		if (this.disabled) {
+			return false;
+		}
+		if (this.buffer != null) {
+			return true;
+		}
+		try {
+			if (!this.map()) {
+				FileStateIndex.LOGGER.info("Rebuilding file index " + this.indexFile.getAbsolutePath());
+				this.create(FileStateIndex.INITIAL_CAPACITY, null);
+			}
+			return true;
+		} catch (IOException e) {
+			FileStateIndex.LOGGER.warn("File index " + this.indexFile.getAbsolutePath() + " not available, hashing all files", e);
+			this.buffer = null;
+			this.disabled = true;
+			return false;
+		}
+	}
+	
+	/**
+	 * @return false if the index doesn't exist or its header is broken
+	 */
+	private boolean map() throws IOException {
+		if (!this.indexFile.isFile()) {
+			return false;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(this.indexFile, "rw")) {
+			long length = raf.length();
+			if (length < FileStateIndex.HEADER_SIZE) {
+				return false;
+			}
+			MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+			byte[] header = new byte[FileStateIndex.HEADER_SIZE];
+			mapped.get(header);
+			ByteBuffer h = ByteBuffer.wrap(header);
+			int capacity = h.getInt(8);
+			boolean valid = (h.getInt(0) == FileStateIndex.MAGIC) && (h.getInt(4) == FileStateIndex.VERSION) && (h.getInt(12) == FileStateIndex.crc(header, 12));
+			if (!valid || (capacity <= 0) || (capacity > FileStateIndex.MAX_CAPACITY) || (Integer.bitCount(capacity) != 1) || (length != this.length(capacity))) {
+				FileStateIndex.unmap(mapped);
+				return false;
+			}
+			this.buffer = mapped;
+			this.capacity = capacity;
+			this.used = 0;
+			for (int slot = 0; slot < capacity; slot++) {
+				if (this.isValid(slot)) {
+					this.used++;
+				}
+			}
+			return true;
+		}
+	}
+	
+	private void resize() {
+		if (this.capacity >= FileStateIndex.MAX_CAPACITY) {
+			// entries of files no longer managed pile up, start over
+			this.rebuild(FileStateIndex.INITIAL_CAPACITY, false);
+		} else {
+			this.rebuild(this.capacity * 2, true);
+		}
+	}
+	
+	private void rebuild(int newCapacity, boolean keep) {
+		MappedByteBuffer old = this.buffer;
+		try {
+			this.create(newCapacity, keep ? old : null);
+		} catch (IOException e) {
+			FileStateIndex.LOGGER.warn("Failed to resize file index " + this.indexFile.getAbsolutePath() + ", hashing all files", e);
+			this.buffer = null;
+			this.disabled = true;
+		} finally {
+			// the old file is renamed over or given up, its mapping would keep it allocated until the buffer gets collected
+			FileStateIndex.unmap(old);
+		}
+	}
+	
+	/**
+	 * Writes a new index next to the old one and renames it over, so a crash leaves either of both.
+	 */
+	private void create(int newCapacity, MappedByteBuffer old) throws IOException {
+		int oldCapacity = this.capacity;
+		Files.createParentDirs(this.indexFile);
+		File temp = new File(this.indexFile.getParentFile(), this.indexFile.getName() + ".tmp");
+		try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+			raf.setLength(0);
+			raf.setLength(this.length(newCapacity));
+			MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.length(newCapacity));
+			ByteBuffer header = ByteBuffer.allocate(FileStateIndex.HEADER_SIZE);
+			header.putInt(FileStateIndex.MAGIC);
+			header.putInt(FileStateIndex.VERSION);
+			header.putInt(newCapacity);
+			header.putInt(FileStateIndex.crc(header.array(), 12));
+			mapped.put(header.array());
+			this.buffer = mapped;
+			this.capacity = newCapacity;
+			this.used = 0;
+			if (old != null) {
+				this.copy(old, oldCapacity);
+			}
+			mapped.force();
+			this.dirty = false;
+		} catch (IOException | RuntimeException e) {
+			this.buffer = null;
+			temp.delete();
+			throw e;
+		}
+		FileHelper.replace(temp, this.indexFile);
+	}
+	
+	private void copy(MappedByteBuffer old, int oldCapacity) {
+		byte[] record = new byte[FileStateIndex.RECORD_SIZE];
+		for (int slot = 0; slot < oldCapacity; slot++) {
+			old.position(FileStateIndex.HEADER_SIZE + (slot * FileStateIndex.RECORD_SIZE));
+			old.get(record);
+			if (ByteBuffer.wrap(record).getInt(FileStateIndex.CRC_OFFSET) != FileStateIndex.crc(record, FileStateIndex.CRC_OFFSET)) {
+				continue;
+			}
+			byte[] key = Arrays.copyOf(record, 16);
+			int target = this.find(key);
+			if (target >= 0) {
+				this.buffer.position(this.offset(target));
+				this.buffer.put(record);
+				this.used++;
+			}
+		}
+	}
+	
+	private long length(int capacity) {
+		return FileStateIndex.HEADER_SIZE + ((long) capacity * FileStateIndex.RECORD_SIZE);
+	}
+	
+	private static int crc(byte[] data, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+		return (int) crc.getValue();
+	}
+	
+	private boolean isRacy(long[] stat) {
+		long now = System.currentTimeMillis();
+		return ((now - stat[1]) < this.racyMillis) || ((now - TimeUnit.NANOSECONDS.toMillis(stat[2])) < this.racyMillis);
+	}
+	
+	/**
+	 * Releases a mapping right away instead of when the buffer gets collected. There is no public API for that before Java 9,
+	 * so this is best effort: the cleaner of the buffer on Java 7 and 8, Unsafe.invokeCleaner later. The buffer must not be used
+	 * afterwards.
+	 */
+	private static void unmap(MappedByteBuffer mapped) {
+		if (mapped == null) {
+			return;
+		}
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner;
+			try {
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			} catch (NoSuchMethodException e) {
+				Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(mapped);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+				return;
+			}
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), mapped);
+		} catch (Exception e) {
+			FileStateIndex.LOGGER.debug("Couldn't unmap the file index, it is released when the buffer gets collected", e);
+		}
+	}
+	
+	/**
+	 * @return size, modification time in milliseconds, change time in nanoseconds, device and inode of the file
+	 */
+	private static long[] stat(Path path) throws IOException {
+		try {
+			Map<String, Object> unix = java.nio.file.Files.readAttributes(path, "unix:size,lastModifiedTime,ctime,dev,ino");
+			long ctime = ((FileTime) unix.get("ctime")).to(TimeUnit.NANOSECONDS);
+			return new long[] {(Long) unix.get("size"), ((FileTime) unix.get("lastModifiedTime")).toMillis(), ctime, (Long) unix.get("dev"), (Long) unix.get("ino")};
+		} catch (UnsupportedOperationException | IllegalArgumentException e) {
+			// no unix attribute view, the file key stands in for device and inode
+			BasicFileAttributes basic = java.nio.file.Files.readAttributes(path, BasicFileAttributes.class);
+			long key = basic.fileKey() == null ? 0 : basic.fileKey().hashCode();
+			return new long[] {basic.size(), basic.lastModifiedTime().toMillis(), 0, 0, key};
+		}
+	}
+}
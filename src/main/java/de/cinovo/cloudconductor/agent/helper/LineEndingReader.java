@@ -0,0 +1,109 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Converts CR LF and single CR line endings to LF while reading.
+ */
+class LineEndingReader extends FilterReader {
+	
+	private boolean skipLineFeed = false;
+	
+	
+	/**
+	 * @param in the reader to convert
+	 */
+	LineEndingReader(Reader in) {
+		super(in);
+	}
+	
+	@Override
+	public int read() throws IOException {
+		char[] c = new char[1];
+		return this.read(c, 0, 1) < 0 ? -1 : c[0];
+	}
+	
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		int end;
+		do {
+			int n = this.in.read(cbuf, off, len);
+			if (n < 0) {
+				return -1;
+			}
+			end = off;
+			for (int i = off; i < (off + n); i++) {
+				char c = cbuf[i];
+				if (this.skipLineFeed) {
+					this.skipLineFeed = false;
+					if (c == '\n') {
+						continue;
+					}
+				}
+				if (c == '\r') {
+					this.skipLineFeed = true;
+					c = '\n';
+				}
+				cbuf[end++] = c;
+			}
+			// a buffer holding only the LF of a CR LF pair reads as nothing, read on
+		} while (end == off);
+		return end - off;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException {
+		char[] buffer = new char[(int) Math.min(n, 512)];
+		long skipped = 0;
+		while (skipped < n) {
+			int read = this.read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+			if (read < 0) {
+				break;
+			}
+			skipped += read;
+		}
+		return skipped;
+	}
+	
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+	
+	@Override
+	public void mark(int readAheadLimit) throws IOException {
+		throw new IOException("mark() not supported");
+	}
+	
+	@Override
+	public void reset() throws IOException {
+		throw new IOException("reset() not supported");
+	}
+}
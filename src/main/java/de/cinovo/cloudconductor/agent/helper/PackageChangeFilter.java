@@ -0,0 +1,132 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.cinovo.cloudconductor.api.model.PackageStateChanges;
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Drops the package changes the installed packages already satisfy: installs and updates if the package is installed in the same
+ * or a newer version, erases if the version isn't installed at all.
+ */
+public class PackageChangeFilter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PackageChangeFilter.class);
+
+	private final Map<String, List<String>> installed = new HashMap<>();
+	private final VersionComparator comparator;
+
+
+	/**
+	 * @param installed the installed packages
+	 * @param comparator the comparator for the package versions
+	 */
+	public PackageChangeFilter(List<PackageVersion> installed, VersionComparator comparator) {
+		this.comparator = comparator;
+		for (PackageVersion pkg : installed) {
+			List<String> versions = this.installed.get(pkg.getName());
+			if (versions == null) {
+				versions = new ArrayList<>(1);
+				this.installed.put(pkg.getName(), versions);
+			}
+			versions.add(pkg.getVersion());
+		}
+	}
+
+	/**
+	 * @param changes the changes requested by the server
+	 * @return the changes that still have to be applied
+	 */
+	public PackageStateChanges filter(PackageStateChanges changes) {
+		return new PackageStateChanges(this.filterInstall(changes.getToInstall()), this.filterInstall(changes.getToUpdate()), this.filterErase(changes.getToErase()));
+	}
+
+	/**
+	 * @param changes the changes
+	 * @return true if there is nothing to apply
+	 */
+	public static boolean isEmpty(PackageStateChanges changes) {
+		return PackageChangeFilter.isEmpty(changes.getToInstall()) && PackageChangeFilter.isEmpty(changes.getToUpdate()) && PackageChangeFilter.isEmpty(changes.getToErase());
+	}
+
+	private static boolean isEmpty(List<PackageVersion> packages) {
+		return (packages == null) || packages.isEmpty();
+	}
+
+	private List<PackageVersion> filterInstall(List<PackageVersion> packages) {
+		List<PackageVersion> result = new ArrayList<>();
+		if (packages == null) {
+			return result;
+		}
+		for (PackageVersion pkg : packages) {
+			String satisfying = this.findInstalled(pkg, false);
+			if (satisfying == null) {
+				result.add(pkg);
+			} else {
+				PackageChangeFilter.LOGGER.debug("Skipping " + pkg.getName() + "-" + pkg.getVersion() + ", " + satisfying + " is installed");
+			}
+		}
+		return result;
+	}
+
+	private List<PackageVersion> filterErase(List<PackageVersion> packages) {
+		List<PackageVersion> result = new ArrayList<>();
+		if (packages == null) {
+			return result;
+		}
+		for (PackageVersion pkg : packages) {
+			if (this.findInstalled(pkg, true) != null) {
+				result.add(pkg);
+			} else {
+				PackageChangeFilter.LOGGER.debug("Skipping erase of " + pkg.getName() + "-" + pkg.getVersion() + ", it isn't installed");
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param exact true to only accept the same version, false to accept newer ones as well
+	 * @return the installed version or null if none
+	 */
+	private String findInstalled(PackageVersion pkg, boolean exact) {
+		List<String> versions = this.installed.get(pkg.getName());
+		if ((versions == null) || (pkg.getVersion() == null)) {
+			return null;
+		}
+		for (String version : versions) {
+			int result = this.comparator.compare(version, pkg.getVersion());
+			if ((result == 0) || (!exact && (result > 0))) {
+				return version;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,61 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.http.HttpResponse;
+
+import de.cinovo.cloudconductor.api.lib.exceptions.CloudConductorException;
+import de.cinovo.cloudconductor.api.lib.helper.AbstractApiHandler;
+import de.cinovo.cloudconductor.api.model.PackageStateChanges;
+import de.taimos.httputils.WS;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Reports inventory deltas to the server. Errors are thrown with their http status, so the caller can tell a rejected baseline
+ * from a server that doesn't know deltas.
+ */
+public class PackageDeltaHandler extends AbstractApiHandler {
+	
+	/**
+	 * @param cloudconductorUrl the cloudconductor url
+	 */
+	public PackageDeltaHandler(String cloudconductorUrl) {
+		super(cloudconductorUrl);
+	}
+	
+	/**
+	 * @param template the template name
+	 * @param host the host name
+	 * @param delta the inventory delta
+	 * @return the package changes to apply
+	 * @throws CloudConductorException with the http status if the server rejects the delta
+	 */
+	public PackageStateChanges notifyPackageDelta(String template, String host, PackageStateDelta delta) throws CloudConductorException {
+		String path = this.pathGenerator("/agent/{template}/{host}/package/delta", template, host);
+		HttpResponse response = this.request(path, delta).put();
+		if (WS.isStatusClientError(response) || WS.isStatusServerError(response)) {
+			int status = WS.getStatus(response);
+			throw new CloudConductorException(status, "Package delta rejected (status: " + status + ", request path: " + path + ").");
+		}
+		return this.objectFromResponse(response, PackageStateChanges.class);
+	}
+}
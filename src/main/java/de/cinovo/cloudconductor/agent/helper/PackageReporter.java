@@ -0,0 +1,175 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.cinovo.cloudconductor.api.lib.exceptions.CloudConductorException;
+import de.cinovo.cloudconductor.api.model.PackageState;
+import de.cinovo.cloudconductor.api.model.PackageStateChanges;
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Reports the installed packages as delta to the inventory the server acknowledged last. The first report, and every report after
+ * the server rejected the baseline, sends the full inventory. Servers without delta support get the full inventory through the
+ * plain package state call.
+ */
+public final class PackageReporter {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(PackageReporter.class);
+	
+	private static boolean deltaSupported = PackageReporter.isDeltaEnabled();
+	private static List<PackageVersion> acknowledged;
+	private static long acknowledgedVersion;
+	// versions keep increasing across restarts of the agent
+	private static long lastVersion = System.currentTimeMillis();
+	
+	
+	private PackageReporter() {
+		// prevent instantiation
+	}
+	
+	private static boolean isDeltaEnabled() {
+		return !"false".equalsIgnoreCase(System.getProperty(AgentVars.PACKAGE_DELTA_PROP));
+	}
+	
+	/**
+	 * forgets the acknowledged inventory and what the server supports, the next report sends the full inventory
+	 */
+	static synchronized void reset() {
+		PackageReporter.deltaSupported = PackageReporter.isDeltaEnabled();
+		PackageReporter.acknowledged = null;
+	}
+	
+	/**
+	 * @param installed the installed packages
+	 * @return the package changes to apply
+	 * @throws CloudConductorException thrown if communication with cloudconductor failed
+	 */
+	public static synchronized PackageStateChanges report(List<PackageVersion> installed) throws CloudConductorException {
+		if (!PackageReporter.deltaSupported) {
+			return ServerCom.notifyInstalledPackages(new PackageState(installed));
+		}
+		
+		PackageStateDelta delta;
+		if (PackageReporter.acknowledged == null) {
+			delta = new PackageStateDelta();
+			delta.setAdded(new ArrayList<>(installed));
+		} else {
+			delta = PackageReporter.diff(PackageReporter.acknowledged, installed);
+			delta.setBaseline(PackageReporter.acknowledgedVersion);
+		}
+		delta.setVersion(++PackageReporter.lastVersion);
+		
+		PackageStateChanges changes;
+		try {
+			changes = ServerCom.notifyPackageDelta(delta);
+		} catch (CloudConductorException e) {
+			Integer status = e.getStatusCode();
+			if ((status != null) && (status == HttpStatus.SC_CONFLICT) && (delta.getBaseline() != null)) {
+				PackageReporter.LOGGER.info("The server rejected the inventory baseline " + delta.getBaseline() + ", sending the full inventory");
+				PackageReporter.acknowledged = null;
+				return PackageReporter.report(installed);
+			}
+			if ((status != null) && ((status == HttpStatus.SC_NOT_FOUND) || (status == HttpStatus.SC_METHOD_NOT_ALLOWED))) {
+				PackageReporter.LOGGER.info("The server doesn't support inventory deltas, sending full inventories from now on");
+				PackageReporter.deltaSupported = false;
+				PackageReporter.acknowledged = null;
+				return ServerCom.notifyInstalledPackages(new PackageState(installed));
+			}
+			// the server may or may not have applied the delta, the next delta gets rejected in the latter case
+			throw e;
+		}
+		PackageReporter.acknowledged = Collections.unmodifiableList(new ArrayList<>(installed));
+		PackageReporter.acknowledgedVersion = delta.getVersion();
+		return changes;
+	}
+	
+	/**
+	 * @param before the acknowledged packages
+	 * @param after the installed packages
+	 * @return the delta without baseline and version
+	 */
+	static PackageStateDelta diff(List<PackageVersion> before, List<PackageVersion> after) {
+		Map<String, List<PackageVersion>> old = PackageReporter.byName(before);
+		Map<String, List<PackageVersion>> current = PackageReporter.byName(after);
+		PackageStateDelta delta = new PackageStateDelta();
+		for (Entry<String, List<PackageVersion>> entry : current.entrySet()) {
+			List<PackageVersion> previous = old.get(entry.getKey());
+			List<PackageVersion> now = entry.getValue();
+			if (previous == null) {
+				delta.getAdded().addAll(now);
+			} else if ((previous.size() == 1) && (now.size() == 1)) {
+				if (!previous.get(0).getVersion().equals(now.get(0).getVersion())) {
+					delta.getChanged().add(now.get(0));
+				}
+			} else {
+				// several versions installed side by side, e.g. kernels
+				delta.getRemoved().addAll(PackageReporter.missing(previous, now));
+				delta.getAdded().addAll(PackageReporter.missing(now, previous));
+			}
+		}
+		for (Entry<String, List<PackageVersion>> entry : old.entrySet()) {
+			if (!current.containsKey(entry.getKey())) {
+				delta.getRemoved().addAll(entry.getValue());
+			}
+		}
+		return delta;
+	}
+	
+	private static Map<String, List<PackageVersion>> byName(List<PackageVersion> packages) {
+		Map<String, List<PackageVersion>> map = new LinkedHashMap<>();
+		for (PackageVersion pkg : packages) {
+			List<PackageVersion> versions = map.get(pkg.getName());
+			if (versions == null) {
+				versions = new ArrayList<>(1);
+				map.put(pkg.getName(), versions);
+			}
+			versions.add(pkg);
+		}
+		return map;
+	}
+	
+	private static List<PackageVersion> missing(List<PackageVersion> packages, List<PackageVersion> others) {
+		List<String> versions = new ArrayList<>(others.size());
+		for (PackageVersion other : others) {
+			versions.add(other.getVersion());
+		}
+		List<PackageVersion> missing = new ArrayList<>();
+		for (PackageVersion pkg : packages) {
+			if (!versions.contains(pkg.getVersion())) {
+				missing.add(pkg);
+			}
+		}
+		return missing;
+	}
+}
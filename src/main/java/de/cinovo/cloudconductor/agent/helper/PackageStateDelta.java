@@ -0,0 +1,123 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * The difference between the inventory the server acknowledged as version <code>baseline</code> and the current one. The server
+ * removes the <code>removed</code> entries, replaces all versions of the <code>changed</code> packages and adds the
+ * <code>added</code> entries. Without baseline the delta is a full inventory replacing whatever the server knows.
+ */
+public class PackageStateDelta {
+	
+	private Long baseline;
+	private long version;
+	private List<PackageVersion> added = new ArrayList<>();
+	private List<PackageVersion> removed = new ArrayList<>();
+	private List<PackageVersion> changed = new ArrayList<>();
+	
+	
+	/**
+	 * @return the acknowledged version the delta is based on, null for a full inventory
+	 */
+	public Long getBaseline() {
+		return this.baseline;
+	}
+	
+	/**
+	 * @param baseline the acknowledged version the delta is based on, null for a full inventory
+	 */
+	public void setBaseline(Long baseline) {
+		this.baseline = baseline;
+	}
+	
+	/**
+	 * @return the version of the inventory after applying the delta
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+	
+	/**
+	 * @param version the version of the inventory after applying the delta
+	 */
+	public void setVersion(long version) {
+		this.version = version;
+	}
+	
+	/**
+	 * @return the packages installed since the baseline
+	 */
+	public List<PackageVersion> getAdded() {
+		return this.added;
+	}
+	
+	/**
+	 * @param added the packages installed since the baseline
+	 */
+	public void setAdded(List<PackageVersion> added) {
+		this.added = added;
+	}
+	
+	/**
+	 * @return the packages removed since the baseline
+	 */
+	public List<PackageVersion> getRemoved() {
+		return this.removed;
+	}
+	
+	/**
+	 * @param removed the packages removed since the baseline
+	 */
+	public void setRemoved(List<PackageVersion> removed) {
+		this.removed = removed;
+	}
+	
+	/**
+	 * @return the packages installed in another version than at the baseline
+	 */
+	public List<PackageVersion> getChanged() {
+		return this.changed;
+	}
+	
+	/**
+	 * @param changed the packages installed in another version than at the baseline
+	 */
+	public void setChanged(List<PackageVersion> changed) {
+		this.changed = changed;
+	}
+	
+	/**
+	 * @return true if nothing changed since the baseline
+	 */
+	@JsonIgnore
+	public boolean isEmpty() {
+		return this.added.isEmpty() && this.removed.isEmpty() && this.changed.isEmpty();
+	}
+}
@@ -0,0 +1,148 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+
+import de.cinovo.cloudconductor.api.lib.exceptions.CloudConductorException;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Tracks the revision of the package repository by the checksum of its repomd.xml, so the package manager cache only has to be
+ * expired if the repository changed. A revision that can't be fetched counts as changed.
+ */
+public class RepoRevision {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RepoRevision.class);
+
+	private static final String REPOMD = "repodata/repomd.xml";
+	private static final String STATE_FILE = "repo.revision";
+	private static final int CONNECT_TIMEOUT = 10000;
+	private static final int READ_TIMEOUT = 30000;
+
+	private final File stateFile;
+	private String current;
+
+
+	/**
+	 * uses the configured state folder
+	 */
+	public RepoRevision() {
+		this(new File(System.getProperty(AgentVars.STATE_FOLDER_PROP, AgentVars.STATE_FOLDER_DEFAULT), RepoRevision.STATE_FILE));
+	}
+
+	/**
+	 * @param stateFile the file holding the last applied revision
+	 */
+	public RepoRevision(File stateFile) {
+		this.stateFile = stateFile;
+	}
+
+	/**
+	 * fetches the current revision and compares it to the last applied one
+	 *
+	 * @return true if the repository changed since the last {@link #commit()} or the revision is unknown
+	 */
+	public boolean hasChanged() {
+		try {
+			if (RepoTypeHelper.getRepoType() != RepoType.YUM) {
+				return true;
+			}
+			String repoPath = ServerCom.getRepoPath();
+			this.current = RepoRevision.fetch(repoPath + (repoPath.endsWith("/") ? "" : "/") + RepoRevision.REPOMD);
+		} catch (CloudConductorException | IOException e) {
+			RepoRevision.LOGGER.warn("Couldn't determine the repository revision: " + e.getMessage());
+			this.current = null;
+			return true;
+		}
+		String applied = this.readApplied();
+		RepoRevision.LOGGER.debug("Repository revision " + this.current + ", applied " + applied);
+		return !this.current.equals(applied);
+	}
+
+	/**
+	 * remembers the revision fetched by {@link #hasChanged()} as applied
+	 */
+	public void commit() {
+		if (this.current == null) {
+			return;
+		}
+		try {
+			File folder = this.stateFile.getAbsoluteFile().getParentFile();
+			if (!folder.isDirectory() && !folder.mkdirs()) {
+				throw new IOException("Couldn't create " + folder);
+			}
+			File tmp = new File(folder, this.stateFile.getName() + ".tmp");
+			Files.write(tmp.toPath(), this.current.getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp.toPath(), this.stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			RepoRevision.LOGGER.warn("Couldn't store the repository revision: " + e.getMessage());
+		}
+	}
+
+	private String readApplied() {
+		if (!this.stateFile.isFile()) {
+			return null;
+		}
+		try {
+			List<String> lines = Files.readAllLines(this.stateFile.toPath(), StandardCharsets.UTF_8);
+			return lines.isEmpty() ? null : lines.get(0).trim();
+		} catch (IOException e) {
+			RepoRevision.LOGGER.debug("Couldn't read " + this.stateFile, e);
+			return null;
+		}
+	}
+
+	private static String fetch(String url) throws IOException {
+		MessageDigest md5;
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		URLConnection connection = new URL(url).openConnection();
+		connection.setConnectTimeout(RepoRevision.CONNECT_TIMEOUT);
+		connection.setReadTimeout(RepoRevision.READ_TIMEOUT);
+		connection.setUseCaches(false);
+		try (InputStream in = new DigestInputStream(connection.getInputStream(), md5)) {
+			ByteStreams.copy(in, ByteStreams.nullOutputStream());
+		}
+		return BaseEncoding.base16().lowerCase().encode(md5.digest());
+	}
+}
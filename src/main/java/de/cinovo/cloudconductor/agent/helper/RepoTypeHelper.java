@@ -1,6 +1,15 @@
 package de.cinovo.cloudconductor.agent.helper;
 
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+import de.cinovo.cloudconductor.agent.executors.DpkgStatusPackages;
+import de.cinovo.cloudconductor.agent.executors.IExecutor;
+import de.cinovo.cloudconductor.agent.executors.InstalledPackages;
+import de.cinovo.cloudconductor.agent.executors.RpmDbPackages;
 import de.cinovo.cloudconductor.api.lib.exceptions.CloudConductorException;
+import de.cinovo.cloudconductor.api.model.PackageVersion;
 
 public class RepoTypeHelper {
 
@@ -10,6 +19,9 @@ public class RepoTypeHelper {
 	
 	public static RepoType getRepoType() throws CloudConductorException {
 		String repoType = System.getProperty(AgentVars.REPO_TYPE_PROP);
+		if (repoType == null) {
+			throw new CloudConductorException("No repo type configured");
+		}
 		switch (repoType) {
 		case "yum":
 			return RepoType.YUM;
@@ -19,4 +31,45 @@ public class RepoTypeHelper {
 			throw new CloudConductorException("CloudConductor cannot handle this repo type");
 		}
 	}
+	
+	/**
+	 * @param repoType the repo type
+	 * @return the file or folder holding the package database of the repo type
+	 */
+	public static File getPackageDatabase(RepoType repoType) {
+		switch (repoType) {
+		case DEB:
+			return new File(System.getProperty(AgentVars.DPKG_STATUS_PROP, AgentVars.DPKG_STATUS_DEFAULT));
+		default:
+			return new File(System.getProperty(AgentVars.RPM_DB_PROP, AgentVars.RPM_DB_DEFAULT));
+		}
+	}
+	
+	/**
+	 * @param repoType the repo type
+	 * @return the executor reading the installed packages from the package database of the repo type
+	 */
+	public static IExecutor<List<PackageVersion>> getInstalledPackages(RepoType repoType) {
+		switch (repoType) {
+		case DEB:
+			return new DpkgStatusPackages(RepoTypeHelper.getPackageDatabase(repoType));
+		default:
+			return new RpmDbPackages(RepoTypeHelper.getPackageDatabase(repoType));
+		}
+	}
+	
+	/**
+	 * @param repoType the repo type
+	 * @param names the package names
+	 * @return the executor reading the installed packages of the given names, may also return others if that is as cheap
+	 */
+	public static IExecutor<List<PackageVersion>> getInstalledPackages(RepoType repoType, Collection<String> names) {
+		switch (repoType) {
+		case DEB:
+			// the status file is parsed in a few milliseconds, no need for a query
+			return new DpkgStatusPackages(RepoTypeHelper.getPackageDatabase(repoType));
+		default:
+			return new InstalledPackages(names);
+		}
+	}
 }
@@ -0,0 +1,100 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+
+import de.cinovo.cloudconductor.agent.AgentState;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Spreads the runs of the agents over the rollout window. Every host gets a fixed offset inside the window derived from a hash of
+ * its name, so the agents of a template don't all hit the repository and restart their services at the same moment, and a host
+ * always runs at the same point of the period no matter when the agent was started.
+ */
+public final class RolloutSchedule {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(RolloutSchedule.class);
+	
+	
+	private RolloutSchedule() {
+		// prevent instantiation
+	}
+	
+	/**
+	 * @return the rollout window in milliseconds, 0 if disabled
+	 */
+	public static long getWindow() {
+		String configured = System.getProperty(AgentVars.ROLLOUT_WINDOW_PROP);
+		if ((configured == null) || configured.isEmpty()) {
+			return 0;
+		}
+		try {
+			return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(configured.trim())));
+		} catch (NumberFormatException e) {
+			RolloutSchedule.LOGGER.warn("Invalid rollout window configured: " + configured);
+			return 0;
+		}
+	}
+	
+	/**
+	 * @param window the window in milliseconds
+	 * @return the offset of this host inside the window in milliseconds
+	 */
+	public static long getOffset(long window) {
+		return RolloutSchedule.getOffset(AgentState.info().getHost(), window);
+	}
+	
+	/**
+	 * @param host the host name
+	 * @param window the window in milliseconds
+	 * @return the offset of the host inside the window in milliseconds
+	 */
+	static long getOffset(String host, long window) {
+		if ((window <= 0) || (host == null)) {
+			return 0;
+		}
+		long hash = Hashing.murmur3_128().hashString(host, StandardCharsets.UTF_8).asLong();
+		return (hash & Long.MAX_VALUE) % window;
+	}
+	
+	/**
+	 * @param period the period of the job
+	 * @param unit the unit of the period
+	 * @return the milliseconds to wait until the next run of this host, for a job starting at the beginning of the period
+	 */
+	public static long getStartDelay(long period, TimeUnit unit) {
+		long periodMillis = unit.toMillis(period);
+		if (periodMillis <= 0) {
+			return 0;
+		}
+		long offset = RolloutSchedule.getOffset(Math.min(RolloutSchedule.getWindow(), periodMillis));
+		long delay = (offset - (System.currentTimeMillis() % periodMillis)) % periodMillis;
+		return delay < 0 ? delay + periodMillis : delay;
+	}
+}
@@ -0,0 +1,131 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * One of a limited number of rollout slots, so only that many agents apply changes at the same time. A slot is a lock on a token
+ * file in a folder all participating agents share. Without configured folder every agent gets an empty slot.
+ */
+public final class RolloutSlot implements Closeable {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(RolloutSlot.class);
+	
+	private static final long POLL_INTERVAL = 1000;
+	
+	private final FileChannel channel;
+	private final FileLock lock;
+	
+	
+	private RolloutSlot(FileChannel channel, FileLock lock) {
+		this.channel = channel;
+		this.lock = lock;
+	}
+	
+	/**
+	 * Waits up to the rollout window for a free slot.
+	 * 
+	 * @return the slot or null if none got free in time
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public static RolloutSlot acquire() throws InterruptedException {
+		String folder = System.getProperty(AgentVars.ROLLOUT_SLOTS_FOLDER_PROP);
+		if ((folder == null) || folder.isEmpty()) {
+			return new RolloutSlot(null, null);
+		}
+		int slots = RolloutSlot.getSlots();
+		long deadline = System.currentTimeMillis() + RolloutSchedule.getWindow();
+		while (true) {
+			for (int i = 0; i < slots; i++) {
+				RolloutSlot slot = RolloutSlot.tryAcquire(new File(folder, "slot-" + i + ".lock"));
+				if (slot != null) {
+					return slot;
+				}
+			}
+			long left = deadline - System.currentTimeMillis();
+			if (left <= 0) {
+				return null;
+			}
+			Thread.sleep(Math.min(left, RolloutSlot.POLL_INTERVAL));
+		}
+	}
+	
+	private static RolloutSlot tryAcquire(File token) {
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open(token.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			FileLock lock = channel.tryLock();
+			if (lock != null) {
+				return new RolloutSlot(channel, lock);
+			}
+		} catch (IOException | OverlappingFileLockException e) {
+			RolloutSlot.LOGGER.debug("Couldn't lock " + token, e);
+		}
+		RolloutSlot.closeQuietly(channel);
+		return null;
+	}
+	
+	private static int getSlots() {
+		String configured = System.getProperty(AgentVars.ROLLOUT_SLOTS_PROP);
+		if ((configured != null) && !configured.isEmpty()) {
+			try {
+				return Math.max(1, Integer.parseInt(configured.trim()));
+			} catch (NumberFormatException e) {
+				RolloutSlot.LOGGER.warn("Invalid number of rollout slots configured: " + configured);
+			}
+		}
+		return AgentVars.ROLLOUT_SLOTS_DEFAULT;
+	}
+	
+	private static void closeQuietly(FileChannel channel) {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				RolloutSlot.LOGGER.debug("Couldn't close token file", e);
+			}
+		}
+	}
+	
+	@Override
+	public void close() {
+		if (this.lock != null) {
+			try {
+				this.lock.release();
+			} catch (IOException e) {
+				RolloutSlot.LOGGER.debug("Couldn't release rollout slot", e);
+			}
+		}
+		RolloutSlot.closeQuietly(this.channel);
+	}
+}
@@ -18,17 +18,22 @@ package de.cinovo.cloudconductor.agent.helper;
  */
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Map;
 import java.util.Set;
 
-import org.apache.velocity.app.Velocity;
+import org.apache.velocity.VelocityContext;
 import org.apache.velocity.exception.MethodInvocationException;
 import org.apache.velocity.exception.ParseErrorException;
 import org.apache.velocity.exception.ResourceNotFoundException;
 
+import com.google.common.io.CharStreams;
+
 import de.cinovo.cloudconductor.agent.AgentState;
 import de.cinovo.cloudconductor.agent.exceptions.TransformationErrorException;
+import de.cinovo.cloudconductor.agent.helper.ConfigFileDataHandler.FileData;
 import de.cinovo.cloudconductor.api.lib.exceptions.CloudConductorException;
 import de.cinovo.cloudconductor.api.lib.manager.AgentHandler;
 import de.cinovo.cloudconductor.api.lib.manager.ConfigFileHandler;
@@ -55,6 +60,8 @@ public class ServerCom {
 	private static final AgentHandler agent = new AgentHandler(AgentState.info().getServer());
 	private static final ConfigValueHandler config = new ConfigValueHandler(AgentState.info().getServer());
 	private static final ConfigFileHandler file = new ConfigFileHandler(AgentState.info().getServer());
+	private static final ConfigFileDataHandler fileData = new ConfigFileDataHandler(AgentState.info().getServer());
+	private static final PackageDeltaHandler packageDelta = new PackageDeltaHandler(AgentState.info().getServer());
 	
 	
 	private ServerCom() {
@@ -120,24 +127,66 @@ public class ServerCom {
 	 */
 	public static String getFileData(ConfigFile cf) throws CloudConductorException, TransformationErrorException {
 		try {
-			String content = ServerCom.agent.getConfigFileData(cf.getName());
-			content = content.replaceAll("\\r\\n", "\n");
-			content = content.replaceAll("\\r", "\n");
-			if (!cf.isTemplate()) {
-				return content;
-			}
-			StringWriter w = new StringWriter();
-			try {
-				Velocity.evaluate(AgentState.vContext(), w, "configfileGen", content);
-			} catch (ParseErrorException | MethodInvocationException | ResourceNotFoundException | IOException e) {
-				throw new TransformationErrorException("Failed to generate template", e);
-			}
-			return w.toString();
+			return ServerCom.render(cf, ServerCom.agent.getConfigFileData(cf.getName()));
+		} catch (RuntimeException e) {
+			throw new CloudConductorException(e.getMessage());
+		}
+	}
+	
+	/**
+	 * @param cf the file
+	 * @param etag the entity tag of the content the local file was written from, null to fetch unconditionally
+	 * @return the raw data and its entity tag or null if the content still matches the entity tag
+	 * @throws CloudConductorException thrown if communication with cloudconductor failed
+	 */
+	public static FileData fetchFileData(ConfigFile cf, String etag) throws CloudConductorException {
+		try {
+			return ServerCom.fileData.getConfigFileData(cf.getName(), etag);
 		} catch (RuntimeException e) {
 			throw new CloudConductorException(e.getMessage());
 		}
 	}
 	
+	/**
+	 * Normalizes the line endings and renders templates. Templates get a context of their own on top of the global one, so
+	 * files can be rendered concurrently, and are parsed only once per content (see {@link TemplateCache}).
+	 * 
+	 * @param cf the file
+	 * @param data the raw data
+	 * @return the data to write
+	 * @throws TransformationErrorException error on generating the localized config file
+	 */
+	public static String render(ConfigFile cf, String data) throws TransformationErrorException {
+		StringWriter w = new StringWriter();
+		try {
+			ServerCom.render(cf, data, w);
+		} catch (IOException e) {
+			throw new TransformationErrorException("Failed to generate template", e);
+		}
+		return w.toString();
+	}
+	
+	/**
+	 * Same as {@link #render(ConfigFile, String)}, but streams the result to the given writer instead of building it in memory.
+	 * 
+	 * @param cf the file
+	 * @param data the raw data
+	 * @param out the writer to render to
+	 * @throws TransformationErrorException error on generating the localized config file
+	 * @throws IOException if writing to the writer fails
+	 */
+	public static void render(ConfigFile cf, String data, Writer out) throws TransformationErrorException, IOException {
+		if (!cf.isTemplate()) {
+			CharStreams.copy(new LineEndingReader(new StringReader(data)), out);
+			return;
+		}
+		try {
+			TemplateCache.get(data).merge(new VelocityContext(AgentState.vContext()), out);
+		} catch (ParseErrorException | MethodInvocationException | ResourceNotFoundException e) {
+			throw new TransformationErrorException("Failed to generate template", e);
+		}
+	}
+	
 	/**
 	 * @return the ssh keys
 	 * @throws CloudConductorException thrown if communication with cloudconductor failed
@@ -181,6 +230,22 @@ public class ServerCom {
 		}
 	}
 	
+	/**
+	 * @param delta the changes of the installed packages since the acknowledged baseline
+	 * @return the response
+	 * @throws CloudConductorException thrown if communication with cloudconductor failed, carries the http status if the server
+	 *             rejected the delta
+	 */
+	public static PackageStateChanges notifyPackageDelta(PackageStateDelta delta) throws CloudConductorException {
+		try {
+			String template = AgentState.info().getTemplate();
+			String host = AgentState.info().getHost();
+			return ServerCom.packageDelta.notifyPackageDelta(template, host, delta);
+		} catch (RuntimeException e) {
+			throw new CloudConductorException(e.getMessage());
+		}
+	}
+	
 	/**
 	 * @return the response
 	 * @throws CloudConductorException thrown if communication with cloudconductor failed
@@ -0,0 +1,111 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.exception.ParseErrorException;
+import org.apache.velocity.exception.TemplateInitException;
+import org.apache.velocity.exception.VelocityException;
+import org.apache.velocity.runtime.RuntimeSingleton;
+import org.apache.velocity.runtime.parser.ParseException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Keeps parsed config file templates keyed by the md5 of their raw content, so an unchanged template is only merged with the
+ * context instead of being parsed again. The least recently used templates are evicted beyond the configured size.
+ */
+public final class TemplateCache {
+	
+	private static final String NAME = "configfileGen";
+	
+	private static final Cache<HashCode, Template> templates = CacheBuilder.newBuilder().maximumSize(TemplateCache.getSize()).recordStats().build();
+	
+	
+	private TemplateCache() {
+		// prevent instantiation
+	}
+	
+	/**
+	 * @param data the raw content of the template
+	 * @return the parsed template, line endings normalized
+	 * @throws ParseErrorException if the template can't be parsed
+	 */
+	static Template get(final String data) throws ParseErrorException {
+		HashCode key = Hashing.md5().hashString(data, StandardCharsets.UTF_8);
+		try {
+			return TemplateCache.templates.get(key, new Callable<Template>() {
+				
+				@Override
+				public Template call() throws ParseException {
+					return TemplateCache.parse(data);
+				}
+			});
+		} catch (ExecutionException e) {
+			throw new ParseErrorException((ParseException) e.getCause());
+		} catch (UncheckedExecutionException e) {
+			if (e.getCause() instanceof VelocityException) {
+				throw (VelocityException) e.getCause();
+			}
+			throw e;
+		}
+	}
+	
+	private static Template parse(String data) throws ParseException {
+		Template template = new Template();
+		template.setRuntimeServices(RuntimeSingleton.getRuntimeServices());
+		template.setName(TemplateCache.NAME);
+		template.setData(RuntimeSingleton.parse(new LineEndingReader(new StringReader(data)), TemplateCache.NAME));
+		try {
+			template.initDocument();
+		} catch (TemplateInitException e) {
+			throw new ParseErrorException(e);
+		}
+		return template;
+	}
+	
+	/**
+	 * @return hit, miss and eviction counts since the agent started
+	 */
+	public static CacheStats getStats() {
+		return TemplateCache.templates.stats();
+	}
+	
+	private static long getSize() {
+		try {
+			return Math.max(0, Long.parseLong(System.getProperty(AgentVars.TEMPLATE_CACHE_PROP, String.valueOf(AgentVars.TEMPLATE_CACHE_DEFAULT))));
+		} catch (NumberFormatException e) {
+			return AgentVars.TEMPLATE_CACHE_DEFAULT;
+		}
+	}
+}
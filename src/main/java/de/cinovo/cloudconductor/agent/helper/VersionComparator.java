@@ -0,0 +1,286 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Comparator;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Compares package versions of the form [epoch:]version[-release] the way the package managers do. {@link #RPM} follows
+ * rpmvercmp, {@link #DEB} follows the version comparison of dpkg. A missing release compares as an empty one, so it sorts
+ * before any release for rpm and like release 0 for dpkg.
+ */
+public abstract class VersionComparator implements Comparator<String> {
+
+	/**
+	 * compares rpm versions
+	 */
+	public static final VersionComparator RPM = new VersionComparator() {
+
+		@Override
+		protected int compareSegment(String a, String b) {
+			return VersionComparator.rpmvercmp(a, b);
+		}
+	};
+
+	/**
+	 * compares debian versions
+	 */
+	public static final VersionComparator DEB = new VersionComparator() {
+
+		@Override
+		protected int compareSegment(String a, String b) {
+			return VersionComparator.verrevcmp(a, b);
+		}
+	};
+
+
+	/**
+	 * @param repoType the repo type
+	 * @return the comparator for the package versions of the repo type
+	 */
+	public static VersionComparator forRepoType(RepoType repoType) {
+		return repoType == RepoType.DEB ? VersionComparator.DEB : VersionComparator.RPM;
+	}
+
+	/**
+	 * @param a a version or release
+	 * @param b another version or release
+	 * @return the comparison
+	 */
+	protected abstract int compareSegment(String a, String b);
+
+	@Override
+	public int compare(String a, String b) {
+		if (a.equals(b)) {
+			return 0;
+		}
+		String[] evrA = VersionComparator.split(a);
+		String[] evrB = VersionComparator.split(b);
+		int result = this.compareSegment(evrA[0], evrB[0]);
+		if (result != 0) {
+			return result;
+		}
+		result = this.compareSegment(evrA[1], evrB[1]);
+		if (result != 0) {
+			return result;
+		}
+		return this.compareSegment(evrA[2], evrB[2]);
+	}
+
+	/**
+	 * @return epoch, version and release, the release is empty if there is none
+	 */
+	private static String[] split(String evr) {
+		int colon = evr.indexOf(':');
+		String epoch = "0";
+		String rest = evr;
+		if ((colon > 0) && VersionComparator.isDigits(evr, 0, colon)) {
+			epoch = evr.substring(0, colon);
+			rest = evr.substring(colon + 1);
+		}
+		int dash = rest.lastIndexOf('-');
+		if (dash < 0) {
+			return new String[] {epoch, rest, ""};
+		}
+		return new String[] {epoch, rest.substring(0, dash), rest.substring(dash + 1)};
+	}
+
+	private static boolean isDigits(String s, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (!VersionComparator.isDigit(s.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isDigit(char c) {
+		return (c >= '0') && (c <= '9');
+	}
+
+	private static boolean isAlpha(char c) {
+		return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'));
+	}
+
+	private static char charAt(String s, int i) {
+		return i < s.length() ? s.charAt(i) : 0;
+	}
+
+	/**
+	 * rpmvercmp of rpm: alternating numeric and alphabetic segments, numeric beats alphabetic, ~ sorts before everything and ^
+	 * after the end of the version
+	 */
+	static int rpmvercmp(String a, String b) {
+		if (a.equals(b)) {
+			return 0;
+		}
+		int i = 0;
+		int j = 0;
+		while ((i < a.length()) || (j < b.length())) {
+			while ((i < a.length()) && !VersionComparator.isAlnum(a.charAt(i)) && (a.charAt(i) != '~') && (a.charAt(i) != '^')) {
+				i++;
+			}
+			while ((j < b.length()) && !VersionComparator.isAlnum(b.charAt(j)) && (b.charAt(j) != '~') && (b.charAt(j) != '^')) {
+				j++;
+			}
+			char ca = VersionComparator.charAt(a, i);
+			char cb = VersionComparator.charAt(b, j);
+			if ((ca == '~') || (cb == '~')) {
+				if (ca != '~') {
+					return 1;
+				}
+				if (cb != '~') {
+					return -1;
+				}
+				i++;
+				j++;
+				continue;
+			}
+			if ((ca == '^') || (cb == '^')) {
+				if (i >= a.length()) {
+					return -1;
+				}
+				if (j >= b.length()) {
+					return 1;
+				}
+				if (ca != '^') {
+					return 1;
+				}
+				if (cb != '^') {
+					return -1;
+				}
+				i++;
+				j++;
+				continue;
+			}
+			if ((i >= a.length()) || (j >= b.length())) {
+				break;
+			}
+			int startA = i;
+			int startB = j;
+			boolean numeric = VersionComparator.isDigit(ca);
+			if (numeric) {
+				while ((i < a.length()) && VersionComparator.isDigit(a.charAt(i))) {
+					i++;
+				}
+				while ((j < b.length()) && VersionComparator.isDigit(b.charAt(j))) {
+					j++;
+				}
+			} else {
+				while ((i < a.length()) && VersionComparator.isAlpha(a.charAt(i))) {
+					i++;
+				}
+				while ((j < b.length()) && VersionComparator.isAlpha(b.charAt(j))) {
+					j++;
+				}
+			}
+			if (startB == j) {
+				// different segment types, numeric is newer
+				return numeric ? 1 : -1;
+			}
+			int result;
+			if (numeric) {
+				while ((startA < i) && (a.charAt(startA) == '0')) {
+					startA++;
+				}
+				while ((startB < j) && (b.charAt(startB) == '0')) {
+					startB++;
+				}
+				result = Integer.compare(i - startA, j - startB);
+				if (result == 0) {
+					result = a.substring(startA, i).compareTo(b.substring(startB, j));
+				}
+			} else {
+				result = a.substring(startA, i).compareTo(b.substring(startB, j));
+			}
+			if (result != 0) {
+				return result < 0 ? -1 : 1;
+			}
+		}
+		if ((i >= a.length()) && (j >= b.length())) {
+			return 0;
+		}
+		return i >= a.length() ? -1 : 1;
+	}
+
+	private static boolean isAlnum(char c) {
+		return VersionComparator.isDigit(c) || VersionComparator.isAlpha(c);
+	}
+
+	/**
+	 * verrevcmp of dpkg: non-digit parts compare by character with letters before other characters and ~ before the end, digit
+	 * parts compare numerically
+	 */
+	static int verrevcmp(String a, String b) {
+		int i = 0;
+		int j = 0;
+		while ((i < a.length()) || (j < b.length())) {
+			int firstDiff = 0;
+			while (((i < a.length()) && !VersionComparator.isDigit(a.charAt(i))) || ((j < b.length()) && !VersionComparator.isDigit(b.charAt(j)))) {
+				int ac = VersionComparator.order(VersionComparator.charAt(a, i));
+				int bc = VersionComparator.order(VersionComparator.charAt(b, j));
+				if (ac != bc) {
+					return ac < bc ? -1 : 1;
+				}
+				i++;
+				j++;
+			}
+			while ((i < a.length()) && (a.charAt(i) == '0')) {
+				i++;
+			}
+			while ((j < b.length()) && (b.charAt(j) == '0')) {
+				j++;
+			}
+			while ((i < a.length()) && (j < b.length()) && VersionComparator.isDigit(a.charAt(i)) && VersionComparator.isDigit(b.charAt(j))) {
+				if (firstDiff == 0) {
+					firstDiff = a.charAt(i) - b.charAt(j);
+				}
+				i++;
+				j++;
+			}
+			if ((i < a.length()) && VersionComparator.isDigit(a.charAt(i))) {
+				return 1;
+			}
+			if ((j < b.length()) && VersionComparator.isDigit(b.charAt(j))) {
+				return -1;
+			}
+			if (firstDiff != 0) {
+				return firstDiff < 0 ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	private static int order(char c) {
+		if (VersionComparator.isDigit(c) || (c == 0)) {
+			return 0;
+		}
+		if (VersionComparator.isAlpha(c)) {
+			return c;
+		}
+		if (c == '~') {
+			return -1;
+		}
+		return c + 256;
+	}
+}
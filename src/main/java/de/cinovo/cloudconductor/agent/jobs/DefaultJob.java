@@ -27,6 +27,7 @@ import org.slf4j.LoggerFactory;
 
 import de.cinovo.cloudconductor.agent.AgentState;
 import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.helper.RolloutSlot;
 import de.cinovo.cloudconductor.agent.jobs.handler.PackageHandler;
 import de.cinovo.cloudconductor.agent.jobs.handler.ServiceHandler;
 import de.cinovo.cloudconductor.api.lib.exceptions.CloudConductorException;
@@ -48,20 +49,61 @@ public class DefaultJob implements AgentJob {
 
 	@Override
 	public void run() {
+		// only one run handles packages at a time, the downloads don't block other jobs
+		if (!AgentState.packageLock.tryLock()) {
+			return;
+		}
+		try {
+			PackageHandler packageHandler = new PackageHandler();
+			boolean packageChanges = false;
+			try {
+				packageChanges = packageHandler.prepare();
+			} catch (ExecutionError e) {
+				this.logPackageError(e);
+			}
+			// the service changes are fetched again once the packages changed
+			ServiceHandler serviceHandler = new ServiceHandler();
+			boolean serviceChanges = false;
+			if (!packageChanges) {
+				try {
+					serviceChanges = serviceHandler.prepare();
+				} catch (ExecutionError e) {
+					DefaultJob.LOGGER.error(e.getMessage(), e);
+				}
+			}
+			if (!packageChanges && !serviceChanges) {
+				// nothing to change, so no rollout slot is taken
+				return;
+			}
+			// limit the number of agents changing packages and services at the same time
+			try (RolloutSlot slot = RolloutSlot.acquire()) {
+				if (slot == null) {
+					DefaultJob.LOGGER.info("No rollout slot available, skipping this run");
+					return;
+				}
+				this.runLocked(packageHandler, serviceHandler, packageChanges);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		} finally {
+			AgentState.packageLock.unlock();
+		}
+	}
+	
+	private void runLocked(PackageHandler packageHandler, ServiceHandler serviceHandler, boolean packageChanges) {
 		// only run if no other blocking job is currently running
 		if (AgentState.executionLock.tryLock()) {
 			try {
 				try {
-					new PackageHandler().run();
+					packageHandler.apply();
 				} catch (ExecutionError e) {
-					if (e.getCause() instanceof CloudConductorException) {
-						DefaultJob.LOGGER.error(e.getMessage(), e);
-					} else {
-						DefaultJob.LOGGER.error(e.getMessage());
-					}
+					this.logPackageError(e);
 				}
 				try {
-					new ServiceHandler().run();
+					if (packageChanges) {
+						serviceHandler.prepare();
+					}
+					serviceHandler.apply();
 				} catch (ExecutionError e) {
 					DefaultJob.LOGGER.error(e.getMessage(), e);
 				}
@@ -71,6 +113,14 @@ public class DefaultJob implements AgentJob {
 		}
 	}
 	
+	private void logPackageError(ExecutionError e) {
+		if (e.getCause() instanceof CloudConductorException) {
+			DefaultJob.LOGGER.error(e.getMessage(), e);
+		} else {
+			DefaultJob.LOGGER.error(e.getMessage());
+		}
+	}
+	
 	@Override
 	public String getJobIdentifier() {
 		return DefaultJob.JOB_NAME;
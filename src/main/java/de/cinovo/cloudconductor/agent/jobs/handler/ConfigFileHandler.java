@@ -8,7 +8,7 @@ import org.slf4j.LoggerFactory;
 import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
 import de.cinovo.cloudconductor.agent.executors.FileExecutor;
 import de.cinovo.cloudconductor.agent.executors.IExecutor;
-import de.cinovo.cloudconductor.agent.executors.ScriptExecutor;
+import de.cinovo.cloudconductor.agent.executors.ServiceActions;
 import de.cinovo.cloudconductor.agent.helper.ServerCom;
 import de.cinovo.cloudconductor.api.lib.exceptions.CloudConductorException;
 import de.cinovo.cloudconductor.api.model.ConfigFile;
@@ -48,7 +48,7 @@ public class ConfigFileHandler {
 		Set<String> servicesToRestart = files.getResult();
 		if ((servicesToRestart != null) && !servicesToRestart.isEmpty()) {
 			// handle restart of services
-			ScriptExecutor serviceHandler = ScriptExecutor.generateServiceStateHandler(servicesToRestart, null, null);
+			ServiceActions serviceHandler = new ServiceActions(servicesToRestart, null, null);
 			try {
 				serviceHandler.execute();
 			} catch (ExecutionError e) {
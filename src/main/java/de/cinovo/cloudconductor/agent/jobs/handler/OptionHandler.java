@@ -1,6 +1,12 @@
 package de.cinovo.cloudconductor.agent.jobs.handler;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 import de.cinovo.cloudconductor.agent.AgentState;
+import de.cinovo.cloudconductor.agent.helper.RolloutSchedule;
 import de.cinovo.cloudconductor.agent.jobs.AgentJob;
 import de.cinovo.cloudconductor.agent.jobs.AuhtorizedKeysJob;
 import de.cinovo.cloudconductor.agent.jobs.DefaultJob;
@@ -22,6 +28,8 @@ public class OptionHandler {
 	@SuppressWarnings("unchecked")
 	public static final Class<AgentJob>[] jobRegistry = new Class[] {DefaultJob.class, AuhtorizedKeysJob.class, FilesJob.class, HeartBeatJob.class};
 
+	private static final Map<String, ScheduledFuture<?>> pendingStarts = new HashMap<>();
+	
 	private AgentOptions newOptions;
 	
 	
@@ -62,15 +70,15 @@ public class OptionHandler {
 		// FILE MANAGEMENT
 		switch (this.newOptions.getDoFileManagement()) {
 		case OFF:
-			SchedulerService.instance.stop(FilesJob.JOB_NAME);
+			OptionHandler.stopStaggered(FilesJob.JOB_NAME);
 			break;
 		case ONCE:
-			SchedulerService.instance.stop(FilesJob.JOB_NAME);
-			SchedulerService.instance.executeOnce(FilesJob.JOB_NAME);
+			OptionHandler.stopStaggered(FilesJob.JOB_NAME);
+			OptionHandler.executeOnceStaggered(FilesJob.JOB_NAME);
 			break;
 		case REPEAT:
 			if ((oldOptions == null) || (this.newOptions.getFileManagementTimer() != oldOptions.getFileManagementTimer()) || (this.newOptions.getFileManagementTimerUnit() != oldOptions.getFileManagementTimerUnit())) {
-				SchedulerService.instance.resetTask(FilesJob.JOB_NAME, this.newOptions.getFileManagementTimer(), this.newOptions.getFileManagementTimerUnit());
+				OptionHandler.resetTaskStaggered(FilesJob.JOB_NAME, this.newOptions.getFileManagementTimer(), this.newOptions.getFileManagementTimerUnit());
 			}
 			break;
 		}
@@ -78,17 +86,74 @@ public class OptionHandler {
 		// PACKAGE MANAGEMENT
 		switch (this.newOptions.getDoPackageManagement()) {
 		case OFF:
-			SchedulerService.instance.stop(DefaultJob.JOB_NAME);
+			OptionHandler.stopStaggered(DefaultJob.JOB_NAME);
 			break;
 		case ONCE:
-			SchedulerService.instance.stop(DefaultJob.JOB_NAME);
-			SchedulerService.instance.executeOnce(DefaultJob.JOB_NAME);
+			OptionHandler.stopStaggered(DefaultJob.JOB_NAME);
+			OptionHandler.executeOnceStaggered(DefaultJob.JOB_NAME);
 			break;
 		case REPEAT:
 			if ((oldOptions == null) || (this.newOptions.getPackageManagementTimer() != oldOptions.getPackageManagementTimer()) || (this.newOptions.getPackageManagementTimerUnit() != oldOptions.getPackageManagementTimerUnit())) {
-				SchedulerService.instance.resetTask(DefaultJob.JOB_NAME, this.newOptions.getPackageManagementTimer(), this.newOptions.getPackageManagementTimerUnit());
+				OptionHandler.resetTaskStaggered(DefaultJob.JOB_NAME, this.newOptions.getPackageManagementTimer(), this.newOptions.getPackageManagementTimerUnit());
 			}
 			break;
 		}
 	}
+	
+	/**
+	 * Schedules the job to run at the offset of this host inside the rollout window of every period. The scheduler starts repeating
+	 * tasks right away, so the task gets reset once the offset is reached.
+	 */
+	private static synchronized void resetTaskStaggered(final String job, final long timer, final TimeUnit unit) {
+		long delay = RolloutSchedule.getWindow() > 0 ? RolloutSchedule.getStartDelay(timer, unit) : 0;
+		if (delay <= 0) {
+			OptionHandler.cancelPendingStart(job);
+			SchedulerService.instance.resetTask(job, timer, unit);
+			return;
+		}
+		OptionHandler.stopStaggered(job);
+		OptionHandler.pendingStarts.put(job, SchedulerService.instance.executeOnce(new Runnable() {
+			
+			@Override
+			public void run() {
+				synchronized (OptionHandler.class) {
+					if (OptionHandler.pendingStarts.remove(job) != null) {
+						SchedulerService.instance.resetTask(job, timer, unit);
+					}
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS));
+	}
+	
+	private static synchronized void executeOnceStaggered(final String job) {
+		long delay = RolloutSchedule.getOffset(RolloutSchedule.getWindow());
+		if (delay <= 0) {
+			SchedulerService.instance.executeOnce(job);
+			return;
+		}
+		OptionHandler.cancelPendingStart(job);
+		OptionHandler.pendingStarts.put(job, SchedulerService.instance.executeOnce(new Runnable() {
+			
+			@Override
+			public void run() {
+				synchronized (OptionHandler.class) {
+					if (OptionHandler.pendingStarts.remove(job) != null) {
+						SchedulerService.instance.executeOnce(job);
+					}
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS));
+	}
+	
+	private static synchronized void stopStaggered(String job) {
+		OptionHandler.cancelPendingStart(job);
+		SchedulerService.instance.stop(job);
+	}
+	
+	private static void cancelPendingStart(String job) {
+		ScheduledFuture<?> pending = OptionHandler.pendingStarts.remove(job);
+		if (pending != null) {
+			pending.cancel(false);
+		}
+	}
 }
@@ -17,15 +17,28 @@ package de.cinovo.cloudconductor.agent.jobs.handler;
  * #L%
  */
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.executors.CachedInstalledPackages;
 import de.cinovo.cloudconductor.agent.executors.IExecutor;
-import de.cinovo.cloudconductor.agent.executors.InstalledPackages;
 import de.cinovo.cloudconductor.agent.executors.ScriptExecutor;
-import de.cinovo.cloudconductor.agent.helper.ServerCom;
+import de.cinovo.cloudconductor.agent.executors.helper.ScriptResult;
+import de.cinovo.cloudconductor.agent.helper.AgentVars;
+import de.cinovo.cloudconductor.agent.helper.PackageChangeFilter;
+import de.cinovo.cloudconductor.agent.helper.PackageReporter;
+import de.cinovo.cloudconductor.agent.helper.RepoRevision;
+import de.cinovo.cloudconductor.agent.helper.RepoType;
+import de.cinovo.cloudconductor.agent.helper.RepoTypeHelper;
+import de.cinovo.cloudconductor.agent.helper.VersionComparator;
 import de.cinovo.cloudconductor.api.lib.exceptions.CloudConductorException;
-import de.cinovo.cloudconductor.api.model.PackageState;
 import de.cinovo.cloudconductor.api.model.PackageStateChanges;
 import de.cinovo.cloudconductor.api.model.PackageVersion;
 
@@ -38,29 +51,184 @@ import de.cinovo.cloudconductor.api.model.PackageVersion;
  */
 public class PackageHandler {
 	
+	private static final Logger LOGGER = LoggerFactory.getLogger(PackageHandler.class);
+	
+	private List<PackageVersion> installed;
+	private PackageStateChanges packageChanges;
+	private RepoType type;
+	private RepoRevision revision;
+	private boolean expireCache;
+	
+	
 	/**
 	 * @throws ExecutionError an error occurred during execution
 	 */
 	public void run() throws ExecutionError {
+		this.prepare();
+		this.apply();
+	}
+	
+	/**
+	 * Reports the installed packages and downloads the packages of the pending changes. Doesn't change the installed packages, so
+	 * it doesn't need the execution lock.
+	 * 
+	 * @return true if there are changes to apply
+	 * @throws ExecutionError an error occurred during execution
+	 */
+	public boolean prepare() throws ExecutionError {
+		this.packageChanges = null;
 		
 		// report installed packages
-		PackageStateChanges packageChanges = this.reportInstalledPackages();
+		this.installed = this.collectInstalledPackages();
+		PackageStateChanges changes = this.reportInstalledPackages(this.installed);
+		
+		// drop the changes the installed packages already satisfy, so a run without real changes doesn't start any process
+		try {
+			this.type = RepoTypeHelper.getRepoType();
+		} catch (CloudConductorException e) {
+			throw new ExecutionError(e);
+		}
+		changes = new PackageChangeFilter(this.installed, VersionComparator.forRepoType(this.type)).filter(changes);
+		if (PackageChangeFilter.isEmpty(changes)) {
+			PackageHandler.LOGGER.debug("No package changes to apply");
+			return false;
+		}
+		this.packageChanges = changes;
+		
+		// the metadata cache only needs to be expired if the repo changed
+		this.revision = new RepoRevision();
+		this.expireCache = this.revision.hasChanged();
+		if (this.isPrefetchEnabled() && (PackageHandler.hasElements(changes.getToInstall()) || PackageHandler.hasElements(changes.getToUpdate()))) {
+			try {
+				ScriptExecutor.generatePackagePrefetch(changes.getToInstall(), changes.getToUpdate(), this.expireCache).execute();
+				this.expireCache = false;
+			} catch (ExecutionError e) {
+				// the transaction downloads whatever is missing
+				PackageHandler.LOGGER.warn("Downloading packages in advance failed: " + e.getMessage());
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Applies the changes found by {@link #prepare()}. Has to run while holding the execution lock.
+	 * 
+	 * @throws ExecutionError an error occurred during execution
+	 */
+	public void apply() throws ExecutionError {
+		if (this.packageChanges == null) {
+			return;
+		}
+		PackageStateChanges changes = this.packageChanges;
+		this.packageChanges = null;
 		
 		// handle package changes
-		ScriptExecutor pkgHandler = ScriptExecutor.generatePackageHandler(packageChanges.getToErase(), packageChanges.getToInstall(), packageChanges.getToUpdate());
-		pkgHandler.execute();
+		ScriptExecutor pkgHandler = ScriptExecutor.generatePackageHandler(changes.getToErase(), changes.getToInstall(), changes.getToUpdate(), this.expireCache);
+		ExecutionError error = null;
+		try {
+			pkgHandler.execute();
+		} catch (ExecutionError e) {
+			List<ScriptResult> failed = pkgHandler.getFailedRecords();
+			if (failed.isEmpty()) {
+				throw e;
+			}
+			error = this.retryFailed(changes, failed);
+		}
+		if (error == null) {
+			this.revision.commit();
+		}
 		
 		// re-report installed packages
-		this.reportInstalledPackages();
+		this.reportInstalledPackages(this.collectChangedPackages(this.type, this.installed, changes));
+		if (error != null) {
+			throw error;
+		}
+	}
+	
+	/**
+	 * Runs the failed packages once more with fresh repository metadata, the others are done already.
+	 * 
+	 * @return the error of the retry or null if all packages succeeded
+	 */
+	private ExecutionError retryFailed(PackageStateChanges changes, List<ScriptResult> failed) {
+		Set<String> keys = new HashSet<>();
+		for (ScriptResult record : failed) {
+			keys.add(record.getAction() + " " + record.getItem());
+		}
+		List<PackageVersion> erase = PackageHandler.select(changes.getToErase(), "delete", keys);
+		List<PackageVersion> install = PackageHandler.select(changes.getToInstall(), "install", keys);
+		List<PackageVersion> update = PackageHandler.select(changes.getToUpdate(), "update", keys);
+		PackageHandler.LOGGER.info("Retrying " + (erase.size() + install.size() + update.size()) + " failed package changes");
+		try {
+			ScriptExecutor.generatePackageHandler(erase, install, update, true).execute();
+			return null;
+		} catch (ExecutionError e) {
+			return e;
+		}
+	}
+	
+	private static List<PackageVersion> select(List<PackageVersion> packages, String action, Set<String> keys) {
+		List<PackageVersion> selected = new ArrayList<>();
+		if (packages != null) {
+			for (PackageVersion pkg : packages) {
+				if (keys.contains(action + " " + ScriptExecutor.packageVersionToString(pkg))) {
+					selected.add(pkg);
+				}
+			}
+		}
+		return selected;
+	}
+	
+	private boolean isPrefetchEnabled() {
+		return !"false".equalsIgnoreCase(System.getProperty(AgentVars.PACKAGE_PREFETCH_PROP));
 	}
 	
-	private PackageStateChanges reportInstalledPackages() throws ExecutionError {
-		PackageState installedPackages = null;
-		IExecutor<List<PackageVersion>> execute = new InstalledPackages().execute();
-		installedPackages = new PackageState(execute.getResult());
+	private static boolean hasElements(List<PackageVersion> list) {
+		return (list != null) && !list.isEmpty();
+	}
+	
+	/**
+	 * Builds the installed packages after a transaction from the ones before and the current versions of the packages the
+	 * transaction touched. Packages pulled in as dependencies aren't seen that way, so the cache only serves this list until the
+	 * next full read is due, whether or not further transactions happen.
+	 */
+	private List<PackageVersion> collectChangedPackages(RepoType type, List<PackageVersion> before, PackageStateChanges changes) throws ExecutionError {
+		if (CachedInstalledPackages.isRescanDue()) {
+			CachedInstalledPackages.invalidate();
+			return this.collectInstalledPackages();
+		}
 		
+		Set<String> touched = new HashSet<>();
+		for (List<PackageVersion> list : Arrays.asList(changes.getToErase(), changes.getToInstall(), changes.getToUpdate())) {
+			if (list != null) {
+				for (PackageVersion pkg : list) {
+					touched.add(pkg.getName());
+				}
+			}
+		}
+		List<PackageVersion> after = new ArrayList<>(before.size() + touched.size());
+		for (PackageVersion pkg : before) {
+			if (!touched.contains(pkg.getName())) {
+				after.add(pkg);
+			}
+		}
+		for (PackageVersion pkg : RepoTypeHelper.getInstalledPackages(type, touched).execute().getResult()) {
+			if (touched.contains(pkg.getName())) {
+				after.add(pkg);
+			}
+		}
+		CachedInstalledPackages.updateDerived(type, after);
+		return after;
+	}
+	
+	private List<PackageVersion> collectInstalledPackages() throws ExecutionError {
+		IExecutor<List<PackageVersion>> execute = new CachedInstalledPackages().execute();
+		return execute.getResult();
+	}
+	
+	private PackageStateChanges reportInstalledPackages(List<PackageVersion> installed) throws ExecutionError {
 		try {
-			return ServerCom.notifyInstalledPackages(installedPackages);
+			return PackageReporter.report(installed);
 		} catch (CloudConductorException e) {
 			throw new ExecutionError(e);
 		}
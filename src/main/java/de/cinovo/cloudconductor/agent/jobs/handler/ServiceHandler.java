@@ -17,16 +17,16 @@ package de.cinovo.cloudconductor.agent.jobs.handler;
  * #L%
  */
 
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Scanner;
 import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
-import de.cinovo.cloudconductor.agent.executors.ScriptExecutor;
+import de.cinovo.cloudconductor.agent.executors.RunningServices;
+import de.cinovo.cloudconductor.agent.executors.ServiceActions;
 import de.cinovo.cloudconductor.agent.helper.ServerCom;
 import de.cinovo.cloudconductor.api.lib.exceptions.CloudConductorException;
 import de.cinovo.cloudconductor.api.model.Service;
@@ -44,22 +44,56 @@ public class ServiceHandler {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(ServiceHandler.class);
 
+	private ServiceStatesChanges serviceChanges;
+
 
 	/**
 	 * @throws ExecutionError an error occurred during execution
 	 */
 	public void run() throws ExecutionError {
+		this.prepare();
+		this.apply();
+	}
+
+	/**
+	 * Reports the running services and fetches the service changes. Doesn't change any service, so it doesn't need the execution
+	 * lock.
+	 *
+	 * @return true if there are service changes to apply
+	 * @throws ExecutionError an error occurred during execution
+	 */
+	public boolean prepare() throws ExecutionError {
+		this.serviceChanges = null;
 		List<String> runningServices = this.collectRunningServices();
 		ServiceStates req = new ServiceStates(runningServices);
-		ServiceStatesChanges serviceChanges;
+		ServiceStatesChanges changes;
 		try {
-			serviceChanges = ServerCom.notifyRunningServices(req);
+			changes = ServerCom.notifyRunningServices(req);
 		} catch (CloudConductorException e) {
 			throw new ExecutionError(e);
 		}
+		if ((changes == null) || (!ServiceHandler.hasElements(changes.getToRestart()) && !ServiceHandler.hasElements(changes.getToStart()) && !ServiceHandler.hasElements(changes.getToStop()))) {
+			ServiceHandler.LOGGER.debug("No service changes to apply");
+			return false;
+		}
+		this.serviceChanges = changes;
+		return true;
+	}
+
+	/**
+	 * Applies the service changes found by {@link #prepare()} and reports the running services afterwards.
+	 *
+	 * @throws ExecutionError an error occurred during execution
+	 */
+	public void apply() throws ExecutionError {
+		if (this.serviceChanges == null) {
+			return;
+		}
+		ServiceStatesChanges changes = this.serviceChanges;
+		this.serviceChanges = null;
 
 		// handle service changes
-		ScriptExecutor serviceHandler = ScriptExecutor.generateServiceStateHandler(serviceChanges.getToRestart(), serviceChanges.getToStart(), serviceChanges.getToStop());
+		ServiceActions serviceHandler = new ServiceActions(changes.getToRestart(), changes.getToStart(), changes.getToStop());
 		try {
 			serviceHandler.execute();
 		} catch (ExecutionError e) {
@@ -68,8 +102,8 @@ public class ServiceHandler {
 		}
 
 		// notify server on current state
-		runningServices = this.collectRunningServices();
-		req = new ServiceStates(runningServices);
+		List<String> runningServices = this.collectRunningServices();
+		ServiceStates req = new ServiceStates(runningServices);
 		try {
 			ServerCom.notifyRunningServices(req);
 		} catch (CloudConductorException e) {
@@ -77,6 +111,10 @@ public class ServiceHandler {
 		}
 	}
 
+	private static boolean hasElements(Collection<String> services) {
+		return (services != null) && !services.isEmpty();
+	}
+
 	private List<String> collectRunningServices() throws ExecutionError {
 		Set<Service> services = null;
 		try {
@@ -85,15 +123,6 @@ public class ServiceHandler {
 			throw new ExecutionError(e);
 		}
 
-		List<String> runningServices = new ArrayList<String>();
-		ScriptExecutor serviceStateHandler = ScriptExecutor.generateCheckServiceState(services);
-		serviceStateHandler.execute();
-		try (Scanner s = new Scanner(serviceStateHandler.getResult())) {
-			while (s.hasNextLine()) {
-				runningServices.add(s.next().trim());
-			}
-		}
-
-		return runningServices;
+		return new RunningServices(services).execute().getResult();
 	}
 }
@@ -0,0 +1,149 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.executors.helper.BaseExecutor;
+import de.cinovo.cloudconductor.agent.helper.AgentVars;
+import de.cinovo.cloudconductor.agent.helper.RepoType;
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Cache hits and full reads of {@link CachedInstalledPackages} on a dpkg status file in a temporary folder.
+ */
+public class CachedInstalledPackagesTest {
+	
+	private static final List<PackageVersion> DATABASE = Arrays.asList(new PackageVersion("bash", "5.2-1", null), new PackageVersion("libc6", "2.36-9", null));
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File status;
+	private int reads = 0;
+	
+	
+	@Before
+	public void setUp() throws IOException {
+		this.status = this.folder.newFile("status");
+		Files.write(this.status.toPath(), "Package: bash\n".getBytes(StandardCharsets.UTF_8));
+		System.setProperty(AgentVars.DPKG_STATUS_PROP, this.status.getAbsolutePath());
+		CachedInstalledPackages.invalidate();
+	}
+	
+	@After
+	public void tearDown() {
+		System.clearProperty(AgentVars.DPKG_STATUS_PROP);
+		System.clearProperty(AgentVars.PACKAGE_RESCAN_INTERVAL_PROP);
+		CachedInstalledPackages.invalidate();
+	}
+	
+	@Test
+	public void testUnchangedDatabase() throws ExecutionError {
+		Assert.assertEquals(CachedInstalledPackagesTest.DATABASE, this.read());
+		Assert.assertEquals(CachedInstalledPackagesTest.DATABASE, this.read());
+		Assert.assertEquals(1, this.reads);
+	}
+	
+	@Test
+	public void testChangedDatabase() throws Exception {
+		this.read();
+		this.touch();
+		this.read();
+		Assert.assertEquals(2, this.reads);
+	}
+	
+	@Test
+	public void testDerivedUntilRescanDue() throws Exception {
+		this.read();
+		this.touch();
+		List<PackageVersion> derived = Arrays.asList(new PackageVersion("bash", "5.2-2", null));
+		CachedInstalledPackages.updateDerived(RepoType.DEB, derived);
+		Assert.assertEquals(derived, this.read());
+		Assert.assertEquals(1, this.reads);
+		
+		// no further transaction, the next run still reads the database once the interval is over
+		System.setProperty(AgentVars.PACKAGE_RESCAN_INTERVAL_PROP, "0");
+		Assert.assertTrue(CachedInstalledPackages.isRescanDue());
+		Assert.assertEquals(CachedInstalledPackagesTest.DATABASE, this.read());
+		Assert.assertEquals(2, this.reads);
+	}
+	
+	@Test
+	public void testDerivedDroppedOnChange() throws Exception {
+		this.read();
+		CachedInstalledPackages.updateDerived(RepoType.DEB, Arrays.asList(new PackageVersion("bash", "5.2-2", null)));
+		this.touch();
+		Assert.assertEquals(CachedInstalledPackagesTest.DATABASE, this.read());
+		Assert.assertEquals(2, this.reads);
+	}
+	
+	private List<PackageVersion> read() throws ExecutionError {
+		return new CachedInstalledPackages(RepoType.DEB) {
+			
+			@Override
+			protected IExecutor<List<PackageVersion>> createDelegate(RepoType type) {
+				CachedInstalledPackagesTest.this.reads++;
+				return new BaseExecutor<List<PackageVersion>>() {
+					
+					@Override
+					protected void doExecute() throws ExecutionError {
+						// the fixed database content
+					}
+					
+					@Override
+					protected void abort() {
+						// nothing to abort
+					}
+					
+					@Override
+					public List<PackageVersion> getResult() {
+						return CachedInstalledPackagesTest.DATABASE;
+					}
+					
+					@Override
+					public boolean failed() {
+						return false;
+					}
+				};
+			}
+		}.execute().getResult();
+	}
+	
+	private void touch() throws IOException {
+		Files.write(this.status.toPath(), "Package: bash\nVersion: 5.2-2\n".getBytes(StandardCharsets.UTF_8));
+	}
+}
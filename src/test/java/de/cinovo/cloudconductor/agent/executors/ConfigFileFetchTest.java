@@ -0,0 +1,134 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.helper.FileManifest;
+import de.cinovo.cloudconductor.agent.helper.ServerStub;
+import de.cinovo.cloudconductor.api.lib.helper.MapperFactory;
+import de.cinovo.cloudconductor.api.model.ConfigFile;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Which fetches the {@link ConfigFileFetch} saves through the {@link FileManifest}, against a {@link ServerStub}. The manifest is
+ * updated the way the {@link FileExecutor} does it.
+ */
+public class ConfigFileFetchTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private final ObjectMapper mapper = MapperFactory.createDefault();
+	private ServerStub server;
+	private File local;
+	
+	
+	@Before
+	public void setUp() throws Exception {
+		this.server = ServerStub.get();
+		this.server.reset();
+		this.local = new File(this.folder.getRoot(), "app.conf");
+		this.server.respond(200, this.mapper.writeValueAsString("a=1\n"), "\"e1\"");
+		Assert.assertTrue(this.fetch("c1"));
+		Assert.assertEquals("a=1\n", this.read());
+		this.server.reset();
+	}
+	
+	@Test
+	public void testChecksumSkip() throws Exception {
+		Assert.assertFalse(this.fetch("c1"));
+		Assert.assertTrue(this.server.getRequests().isEmpty());
+	}
+	
+	@Test
+	public void testNotModified() throws Exception {
+		this.server.respond(304, null, "\"e1\"");
+		Assert.assertFalse(this.fetch("c2"));
+		Assert.assertEquals(1, this.server.getRequests().size());
+		Assert.assertEquals("\"e1\"", this.server.getRequests().get(0).getIfNoneMatch());
+		Assert.assertEquals("a=1\n", this.read());
+	}
+	
+	@Test
+	public void testModified() throws Exception {
+		this.server.respond(200, this.mapper.writeValueAsString("a=2\n"), "\"e2\"");
+		Assert.assertTrue(this.fetch("c2"));
+		Assert.assertEquals("\"e1\"", this.server.getRequests().get(0).getIfNoneMatch());
+		Assert.assertEquals("a=2\n", this.read());
+		
+		this.server.reset();
+		Assert.assertFalse(this.fetch("c2"));
+		Assert.assertTrue(this.server.getRequests().isEmpty());
+	}
+	
+	@Test
+	public void testLocalEdit() throws Exception {
+		Files.write(this.local.toPath(), "a=local\n".getBytes(StandardCharsets.UTF_8));
+		this.server.respond(200, this.mapper.writeValueAsString("a=1\n"), "\"e1\"");
+		Assert.assertTrue(this.fetch("c1"));
+		Assert.assertEquals(1, this.server.getRequests().size());
+		Assert.assertNull(this.server.getRequests().get(0).getIfNoneMatch());
+		Assert.assertEquals("a=1\n", this.read());
+	}
+	
+	@Test
+	public void testDeletedLocalFile() throws Exception {
+		Assert.assertTrue(this.local.delete());
+		this.server.respond(200, this.mapper.writeValueAsString("a=1\n"), "\"e1\"");
+		Assert.assertTrue(this.fetch("c1"));
+		Assert.assertNull(this.server.getRequests().get(0).getIfNoneMatch());
+		Assert.assertEquals("a=1\n", this.read());
+	}
+	
+	/**
+	 * @return true if content got fetched and written
+	 */
+	private boolean fetch(String checksum) throws ExecutionError, IOException {
+		ConfigFile file = new ConfigFile("app.conf", "app", this.local.getAbsolutePath(), null, null, "644", false, false, checksum, Collections.<String> emptySet());
+		ConfigFileFetch fetch = new ConfigFileFetch(file, this.local);
+		fetch.execute();
+		if (fetch.getResult() == null) {
+			return false;
+		}
+		fetch.replace();
+		FileManifest.put(file.getName(), this.local, fetch.getETag(), file.getChecksum());
+		return true;
+	}
+	
+	private String read() throws IOException {
+		return new String(Files.readAllBytes(this.local.toPath()), StandardCharsets.UTF_8);
+	}
+}
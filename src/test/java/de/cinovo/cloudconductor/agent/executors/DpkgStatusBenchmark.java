@@ -0,0 +1,153 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Reading a dpkg status file of 5,000 packages with the memory mapped {@link DpkgStatusPackages} compared to a line by line
+ * BufferedReader parser. Run with <code>mvn test-compile</code> and the main method on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DpkgStatusBenchmark {
+	
+	private static final int PACKAGES = 5000;
+	
+	private File status;
+	
+	
+	/**
+	 * writes the fixture
+	 *
+	 * @throws IOException on errors
+	 */
+	@Setup
+	public void setup() throws IOException {
+		this.status = File.createTempFile("dpkg-status", null);
+		try (Writer w = Files.newBufferedWriter(this.status.toPath(), StandardCharsets.UTF_8)) {
+			for (int i = 0; i < DpkgStatusBenchmark.PACKAGES; i++) {
+				w.write("Package: package-" + i + "\n");
+				w.write("Status: install ok " + ((i % 50) == 0 ? "config-files" : "installed") + "\n");
+				w.write("Priority: optional\nSection: libs\nInstalled-Size: " + (i * 7) + "\n");
+				w.write("Maintainer: Maintainers <maint@example.org>\nArchitecture: amd64\n");
+				w.write("Version: " + (i % 13) + ".2." + i + "-1ubuntu" + (i % 4) + "\n");
+				w.write("Depends: libc6 (>= 2.17), package-" + (i / 2) + " (= " + (i % 3) + ".0)\n");
+				w.write("Description: package number " + i + "\n");
+				for (int l = 0; l < 6; l++) {
+					w.write(" a continuation line of the long description that dpkg keeps for every package " + l + "\n");
+				}
+				w.write("\n");
+			}
+		}
+	}
+	
+	/**
+	 * deletes the fixture
+	 */
+	@TearDown
+	public void tearDown() {
+		this.status.delete();
+	}
+	
+	/**
+	 * @return the packages
+	 * @throws ExecutionError on errors
+	 */
+	@Benchmark
+	public List<PackageVersion> mappedParser() throws ExecutionError {
+		DpkgStatusPackages packages = new DpkgStatusPackages(this.status);
+		packages.execute();
+		return packages.getResult();
+	}
+	
+	/**
+	 * @return the packages
+	 * @throws IOException on errors
+	 */
+	@Benchmark
+	public List<PackageVersion> readerParser() throws IOException {
+		List<PackageVersion> packages = new ArrayList<>();
+		try (BufferedReader r = Files.newBufferedReader(this.status.toPath(), StandardCharsets.UTF_8)) {
+			String name = null;
+			String version = null;
+			boolean installed = false;
+			String line;
+			while ((line = r.readLine()) != null) {
+				if (line.isEmpty()) {
+					if (installed && (name != null) && (version != null)) {
+						packages.add(new PackageVersion(name, version, null));
+					}
+					name = null;
+					version = null;
+					installed = false;
+				} else if (line.startsWith("Package:")) {
+					name = line.substring(8).trim();
+				} else if (line.startsWith("Version:")) {
+					version = line.substring(8).trim();
+				} else if (line.startsWith("Status:")) {
+					installed = line.endsWith(" installed");
+				}
+			}
+		}
+		return packages;
+	}
+	
+	/**
+	 * @param args not used
+	 * @throws RunnerException on errors
+	 */
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(DpkgStatusBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,148 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Parses dpkg status files with {@link DpkgStatusPackages}: several paragraphs with the states dpkg leaves behind, and the
+ * status file of the build host compared to <code>dpkg-query -W</code> if there is one.
+ */
+public class DpkgStatusPackagesTest {
+	
+	@Test
+	public void testParagraphs() {
+		StringBuilder status = new StringBuilder();
+		status.append("Package: libc6\n");
+		status.append("Status: install ok installed\n");
+		status.append("Priority: optional\n");
+		status.append("Architecture: amd64\n");
+		status.append("Multi-Arch: same\n");
+		status.append("Version: 2.36-9+deb12u4\n");
+		status.append("Description: GNU C Library: Shared libraries\n");
+		status.append(" Contains the standard libraries.\n");
+		// continuation lines start with a space
+		status.append(" Version: 0.0\n");
+		status.append("\n");
+		// removed, only its configuration files are left
+		status.append("Package: apache2\n");
+		status.append("Status: deinstall ok config-files\n");
+		status.append("Config-Version: 2.4.57-2\n");
+		status.append("Version: 2.4.57-2\n");
+		status.append("Conffiles:\n");
+		status.append(" /etc/apache2/apache2.conf 354c9e6d2b88a0a3e0548f853840674c\n");
+		status.append("\n");
+		status.append("Package: bsdutils\n");
+		status.append("Essential: yes\n");
+		status.append("Status: install ok installed\n");
+		status.append("Version: 1:2.38.1-5+deb12u3\n");
+		status.append("\n");
+		status.append("Package: half\n");
+		status.append("Status: install ok half-configured\n");
+		status.append("Version: 1.0-1\n");
+		status.append("\n");
+		status.append("Package: held\n");
+		status.append("Status: hold ok installed\n");
+		status.append("Version: 0.9\n");
+		status.append("\n");
+		status.append("Package: purged\n");
+		status.append("Status: install ok not-installed\n");
+		status.append("\n");
+		// the last paragraph isn't necessarily closed by an empty line
+		status.append("Package: tzdata\r\n");
+		status.append("Status: install ok installed\r\n");
+		status.append("Version: 2024a-0+deb12u1\r\n");
+		
+		List<String> packages = DpkgStatusPackagesTest.lines(DpkgStatusPackages.parse(ByteBuffer.wrap(status.toString().getBytes(StandardCharsets.UTF_8))));
+		Assert.assertEquals(Arrays.asList("libc6;2.36-9+deb12u4", "bsdutils;1:2.38.1-5+deb12u3", "held;0.9", "tzdata;2024a-0+deb12u1"), packages);
+	}
+	
+	@Test
+	public void testEmpty() {
+		Assert.assertTrue(DpkgStatusPackages.parse(ByteBuffer.allocate(0)).isEmpty());
+		Assert.assertTrue(DpkgStatusPackages.parse(ByteBuffer.wrap("\n\n".getBytes(StandardCharsets.UTF_8))).isEmpty());
+	}
+	
+	@Test
+	public void testHostStatusFile() throws Exception {
+		File status = new File("/var/lib/dpkg/status");
+		Assume.assumeTrue(status.isFile());
+		String query = DpkgStatusPackagesTest.dpkgQuery("-W", "-f=${db:Status-Status};${Package};${Version}\\n");
+		Assume.assumeNotNull(query);
+		List<String> expected = new ArrayList<>();
+		for (String line : query.split("\n")) {
+			if (line.startsWith("installed;")) {
+				expected.add(line.substring("installed;".length()));
+			}
+		}
+		Collections.sort(expected);
+		
+		List<String> actual = DpkgStatusPackagesTest.lines(DpkgStatusPackages.parse(ByteBuffer.wrap(Files.readAllBytes(status.toPath()))));
+		Collections.sort(actual);
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(expected, actual);
+	}
+	
+	/**
+	 * @return the output of dpkg-query or null if it isn't available
+	 */
+	private static String dpkgQuery(String... args) throws InterruptedException {
+		List<String> cmd = new ArrayList<>();
+		cmd.add("dpkg-query");
+		Collections.addAll(cmd, args);
+		try {
+			Process p = new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+			try (InputStream in = p.getInputStream()) {
+				String output = new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+				return p.waitFor() == 0 ? output : null;
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	private static List<String> lines(List<PackageVersion> packages) {
+		List<String> lines = new ArrayList<>();
+		for (PackageVersion p : packages) {
+			lines.add(p.getName() + ";" + p.getVersion());
+		}
+		return lines;
+	}
+}
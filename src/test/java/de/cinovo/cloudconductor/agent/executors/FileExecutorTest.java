@@ -0,0 +1,209 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.velocity.app.Velocity;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.log.NullLogChute;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.helper.AgentVars;
+import de.cinovo.cloudconductor.agent.helper.FileManifest;
+import de.cinovo.cloudconductor.agent.helper.ServerStub;
+import de.cinovo.cloudconductor.api.lib.helper.MapperFactory;
+import de.cinovo.cloudconductor.api.model.ConfigFile;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * How the {@link FileExecutor} writes a config file against a {@link ServerStub}: owner and mode are set on the rendered content
+ * before it is moved over the local file, failed fetches and renders leave no temporary file behind, and the local file is
+ * either the old or the new content, never something in between.
+ */
+public class FileExecutorTest {
+	
+	private static final String OLD = "a=old\n";
+	
+	private static class Snapshot {
+		
+		private String mode;
+		private String owner;
+		private String group;
+		private String source;
+		private String target;
+	}
+	
+	private class RecordingExecutor extends FileExecutor {
+		
+		private final Snapshot snapshot = new Snapshot();
+		private final boolean failMove;
+		
+		
+		RecordingExecutor(ConfigFile file, boolean failMove) {
+			super(Collections.singleton(file));
+			this.failMove = failMove;
+		}
+		
+		@Override
+		ConfigFileFetch createFetch(ConfigFile file, File localFile) {
+			return new ConfigFileFetch(file, localFile) {
+				
+				@Override
+				void move(File source, File target) throws IOException {
+					PosixFileAttributes attributes = Files.readAttributes(source.toPath(), PosixFileAttributes.class);
+					RecordingExecutor.this.snapshot.mode = PosixFilePermissions.toString(attributes.permissions());
+					RecordingExecutor.this.snapshot.owner = attributes.owner().getName();
+					RecordingExecutor.this.snapshot.group = attributes.group().getName();
+					RecordingExecutor.this.snapshot.source = FileExecutorTest.read(source);
+					RecordingExecutor.this.snapshot.target = FileExecutorTest.read(target);
+					if (RecordingExecutor.this.failMove) {
+						throw new IOException("move failed");
+					}
+					super.move(source, target);
+				}
+			};
+		}
+	}
+	
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private final ObjectMapper mapper = MapperFactory.createDefault();
+	private ServerStub server;
+	private File local;
+	private String owner;
+	private String group;
+	
+	
+	@BeforeClass
+	public static void setUpClass() {
+		// velocity writes velocity.log into the working directory otherwise
+		Velocity.setProperty(RuntimeConstants.RUNTIME_LOG_LOGSYSTEM_CLASS, NullLogChute.class.getName());
+	}
+	
+	@Before
+	public void setUp() throws IOException {
+		// keeps the checksum index out of the working directory
+		System.setProperty(AgentVars.FILE_INDEX_PROP, "false");
+		this.server = ServerStub.get();
+		this.server.reset();
+		this.local = new File(this.folder.getRoot(), "app.conf");
+		Files.write(this.local.toPath(), FileExecutorTest.OLD.getBytes(StandardCharsets.UTF_8));
+		Files.setPosixFilePermissions(this.local.toPath(), PosixFilePermissions.fromString("rw-r--r--"));
+		PosixFileAttributes attributes = Files.readAttributes(this.folder.getRoot().toPath(), PosixFileAttributes.class);
+		this.owner = attributes.owner().getName();
+		this.group = attributes.group().getName();
+	}
+	
+	@After
+	public void tearDown() {
+		FileManifest.remove(this.local);
+	}
+	
+	@Test
+	public void testOwnerAndModeBeforeMove() throws Exception {
+		this.server.respond(200, this.mapper.writeValueAsString("a=new\n"), "\"e1\"");
+		RecordingExecutor executor = new RecordingExecutor(this.file(false), false);
+		executor.execute();
+		
+		// the temporary file starts as rw-------, so the mode at the move comes from the config file
+		Assert.assertEquals("rw-r-----", executor.snapshot.mode);
+		Assert.assertEquals(this.owner, executor.snapshot.owner);
+		Assert.assertEquals(this.group, executor.snapshot.group);
+		Assert.assertEquals("a=new\n", executor.snapshot.source);
+		Assert.assertEquals(FileExecutorTest.OLD, executor.snapshot.target);
+		Assert.assertEquals("a=new\n", FileExecutorTest.read(this.local));
+		Assert.assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(this.local.toPath())));
+		Assert.assertEquals(Collections.singleton("svc"), executor.getResult());
+		this.assertNoTempFiles();
+	}
+	
+	@Test
+	public void testFetchFailure() throws Exception {
+		this.server.respond(500, null);
+		RecordingExecutor executor = new RecordingExecutor(this.file(false), false);
+		executor.execute();
+		Assert.assertNull(executor.snapshot.source);
+		Assert.assertEquals(FileExecutorTest.OLD, FileExecutorTest.read(this.local));
+		this.assertNoTempFiles();
+	}
+	
+	@Test
+	public void testRenderFailureMidway() throws Exception {
+		// more than a buffer of content gets written before the template fails
+		StringBuilder template = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			template.append("line ").append(i).append('\n');
+		}
+		template.append("#set($s = \"abc\")$s.substring(10)\n");
+		this.server.respond(200, this.mapper.writeValueAsString(template.toString()), "\"e1\"");
+		RecordingExecutor executor = new RecordingExecutor(this.file(true), false);
+		executor.execute();
+		Assert.assertNull(executor.snapshot.source);
+		Assert.assertEquals(FileExecutorTest.OLD, FileExecutorTest.read(this.local));
+		this.assertNoTempFiles();
+	}
+	
+	@Test
+	public void testMoveFailure() throws Exception {
+		this.server.respond(200, this.mapper.writeValueAsString("a=new\n"), "\"e1\"");
+		RecordingExecutor executor = new RecordingExecutor(this.file(false), true);
+		try {
+			executor.execute();
+			Assert.fail("expected the write to fail");
+		} catch (ExecutionError e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Failed to write file"));
+		}
+		Assert.assertEquals(FileExecutorTest.OLD, FileExecutorTest.read(this.local));
+		this.assertNoTempFiles();
+	}
+	
+	private ConfigFile file(boolean template) {
+		return new ConfigFile("app.conf", "app", this.local.getAbsolutePath(), this.owner, this.group, "640", template, true, null, Collections.singleton("svc"));
+	}
+	
+	private void assertNoTempFiles() {
+		Assert.assertEquals(Arrays.asList("app.conf"), Arrays.asList(this.folder.getRoot().list()));
+	}
+	
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+}
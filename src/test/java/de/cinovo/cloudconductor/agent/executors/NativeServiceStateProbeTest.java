@@ -0,0 +1,145 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Runs the {@link NativeServiceStateProbe} against a fake proc, run and cgroup tree.
+ */
+public class NativeServiceStateProbeTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File proc;
+	private File run;
+	private File cgroup;
+	private NativeServiceStateProbe probe;
+	
+	
+	@Before
+	public void setUp() throws IOException {
+		this.proc = this.folder.newFolder("proc");
+		this.run = this.folder.newFolder("run");
+		this.cgroup = this.folder.newFolder("cgroup");
+		this.probe = new NativeServiceStateProbe(this.proc, this.run, this.cgroup);
+	}
+	
+	@Test
+	public void testLivePid() throws IOException {
+		this.process(1234, 'S');
+		NativeServiceStateProbeTest.write(new File(this.run, "httpd.pid"), "1234\n");
+		Assert.assertEquals(Boolean.TRUE, this.probe.isRunning("httpd"));
+	}
+	
+	@Test
+	public void testLivePidInServiceFolder() throws IOException {
+		this.process(1234, 'R');
+		NativeServiceStateProbeTest.write(new File(this.run, "httpd/httpd.pid"), "1234");
+		Assert.assertEquals(Boolean.TRUE, this.probe.isRunning("httpd"));
+	}
+	
+	@Test
+	public void testStalePid() throws IOException {
+		NativeServiceStateProbeTest.write(new File(this.run, "httpd.pid"), "1234\n");
+		Assert.assertEquals(Boolean.FALSE, this.probe.isRunning("httpd"));
+	}
+	
+	@Test
+	public void testZombiePid() throws IOException {
+		this.process(1234, 'Z');
+		NativeServiceStateProbeTest.write(new File(this.run, "httpd.pid"), "1234\n");
+		Assert.assertEquals(Boolean.FALSE, this.probe.isRunning("httpd"));
+	}
+	
+	@Test
+	public void testMissingPidFile() {
+		Assert.assertNull(this.probe.isRunning("httpd"));
+	}
+	
+	@Test
+	public void testBrokenPidFile() throws IOException {
+		NativeServiceStateProbeTest.write(new File(this.run, "httpd.pid"), "garbage\n");
+		Assert.assertNull(this.probe.isRunning("httpd"));
+	}
+	
+	@Test
+	public void testPathIsNotProbed() {
+		Assert.assertNull(this.probe.isRunning("/etc/init.d/httpd"));
+	}
+	
+	@Test
+	public void testSystemdUnit() throws IOException {
+		this.systemd();
+		this.process(4321, 'S');
+		NativeServiceStateProbeTest.write(new File(this.cgroup, "system.slice/httpd.service/cgroup.procs"), "4321\n");
+		Assert.assertEquals(Boolean.TRUE, this.probe.isRunning("httpd"));
+		Assert.assertEquals(Boolean.TRUE, this.probe.isRunning("httpd.service"));
+	}
+	
+	@Test
+	public void testSystemdUnitCgroupV1() throws IOException {
+		this.systemd();
+		this.process(4321, 'S');
+		NativeServiceStateProbeTest.write(new File(this.cgroup, "systemd/system.slice/httpd.service/cgroup.procs"), "4321\n");
+		Assert.assertEquals(Boolean.TRUE, this.probe.isRunning("httpd"));
+	}
+	
+	@Test
+	public void testStoppedSystemdUnit() throws IOException {
+		this.systemd();
+		NativeServiceStateProbeTest.write(new File(this.cgroup, "system.slice/httpd.service/cgroup.procs"), "");
+		Assert.assertNull(this.probe.isRunning("httpd"));
+	}
+	
+	@Test
+	public void testCgroupIgnoredWithoutSystemd() throws IOException {
+		this.process(4321, 'S');
+		NativeServiceStateProbeTest.write(new File(this.cgroup, "system.slice/httpd.service/cgroup.procs"), "4321\n");
+		Assert.assertNull(this.probe.isRunning("httpd"));
+	}
+	
+	private void systemd() {
+		Assert.assertTrue(new File(this.run, "systemd/system").mkdirs());
+	}
+	
+	private void process(int pid, char state) throws IOException {
+		// the command name may contain blanks and brackets
+		NativeServiceStateProbeTest.write(new File(this.proc, pid + "/stat"), pid + " (my (daemon)) " + state + " 1 " + pid + " " + pid + " 0 -1\n");
+	}
+	
+	private static void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,153 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.executors.helper.ResultStreamAnalyzer;
+import de.cinovo.cloudconductor.agent.executors.helper.ScriptResult;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Checks when the result records of a helper script run count as success, and the records serviceHandler.sh reports for a
+ * restart done through its stop and start fallback.
+ */
+public class ScriptExecutorTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private static final List<String> MANIFEST = Arrays.asList("restart\ta", "stop\tb", "start\tc");
+	
+	
+	@Test
+	public void testAllReported() throws ExecutionError {
+		ScriptExecutor.checkRecords("serviceHandler.sh", ScriptExecutorTest.MANIFEST, Arrays.asList(ScriptExecutorTest.record("restart", "a", "ok"), ScriptExecutorTest.record("stop", "b", "ok"), ScriptExecutorTest.record("start", "c", "ok")), 0);
+	}
+	
+	@Test
+	public void testFailedRecord() {
+		String msg = ScriptExecutorTest.check(Arrays.asList(ScriptExecutorTest.record("restart", "a", "ok"), ScriptExecutorTest.record("stop", "b", "failed"), ScriptExecutorTest.record("start", "c", "ok")), 0);
+		Assert.assertEquals("stop of b failed", msg);
+	}
+	
+	@Test
+	public void testDiedAfterOkRecords() {
+		String msg = ScriptExecutorTest.check(Arrays.asList(ScriptExecutorTest.record("restart", "a", "ok")), 137);
+		Assert.assertEquals("serviceHandler.sh exited with 137 without reporting [stop b, start c]", msg);
+	}
+	
+	@Test
+	public void testNonZeroExit() {
+		String msg = ScriptExecutorTest.check(Arrays.asList(ScriptExecutorTest.record("restart", "a", "ok"), ScriptExecutorTest.record("stop", "b", "ok"), ScriptExecutorTest.record("start", "c", "ok")), 1);
+		Assert.assertEquals("serviceHandler.sh exited with 1", msg);
+	}
+	
+	@Test
+	public void testMissingRecords() {
+		String msg = ScriptExecutorTest.check(Arrays.asList(ScriptExecutorTest.record("restart", "a", "ok"), ScriptExecutorTest.record("start", "c", "ok")), 0);
+		Assert.assertEquals("serviceHandler.sh didn't report [stop b]", msg);
+	}
+	
+	@Test
+	public void testNoManifest() throws ExecutionError {
+		ScriptExecutor.checkRecords("serviceState.sh", null, Collections.singletonList(ScriptExecutorTest.record("check", "a", "ok")), 0);
+	}
+	
+	@Test
+	public void testFallbackRecord() throws ExecutionError {
+		ScriptResult fallback = ScriptExecutorTest.record("restart", "a", ScriptResult.STATUS_OK_FALLBACK);
+		fallback.setMessage("restart not supported");
+		Assert.assertFalse(fallback.isFailed());
+		Assert.assertEquals("restart of a succeeded through the fallback: restart not supported", fallback.toString());
+		ScriptExecutor.checkRecords("serviceHandler.sh", Collections.singletonList("restart\ta"), Collections.singletonList(fallback), 0);
+	}
+	
+	@Test
+	public void testRestartFallbackReported() throws Exception {
+		File bin = this.folder.newFolder("bin");
+		File service = new File(bin, "service");
+		StringBuilder fake = new StringBuilder();
+		fake.append("#!/bin/bash\n");
+		fake.append("case \"$1 $2\" in\n");
+		fake.append("\t\"flaky restart\") echo \"restart not supported\"; exit 1 ;;\n");
+		fake.append("\t\"broken restart\") echo \"restart broke\"; exit 1 ;;\n");
+		fake.append("\t\"broken start\") echo \"start broke\"; exit 1 ;;\n");
+		fake.append("esac\n");
+		Files.write(service.toPath(), fake.toString().getBytes(StandardCharsets.UTF_8));
+		Assert.assertTrue(service.setExecutable(true));
+		File manifest = this.folder.newFile("manifest");
+		Files.write(manifest.toPath(), Arrays.asList("restart\tgood", "restart\tflaky", "restart\tbroken"), StandardCharsets.UTF_8);
+		
+		List<ScriptResult> records = this.runServiceHandler(bin, manifest);
+		Assert.assertEquals(3, records.size());
+		Assert.assertEquals("restart of good succeeded", records.get(0).toString());
+		Assert.assertEquals(ScriptResult.STATUS_OK_FALLBACK, records.get(1).getStatus());
+		Assert.assertEquals("restart not supported", records.get(1).getMessage());
+		Assert.assertTrue(records.get(2).isFailed());
+		Assert.assertEquals("start broke", records.get(2).getMessage());
+	}
+	
+	private List<ScriptResult> runServiceHandler(File bin, File manifest) throws IOException, InterruptedException {
+		ProcessBuilder builder = new ProcessBuilder("bash", "package/helperscripts/serviceHandler.sh", "-f", manifest.getAbsolutePath());
+		builder.environment().put("PATH", bin.getAbsolutePath() + File.pathSeparator + System.getenv("PATH"));
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		Process p = builder.start();
+		List<ScriptResult> records = new ArrayList<>();
+		ResultStreamAnalyzer analyzer = new ResultStreamAnalyzer(p.getInputStream(), records);
+		analyzer.start();
+		Assert.assertEquals(0, p.waitFor());
+		analyzer.join();
+		return records;
+	}
+	
+	private static String check(List<ScriptResult> records, int exitValue) {
+		try {
+			ScriptExecutor.checkRecords("serviceHandler.sh", ScriptExecutorTest.MANIFEST, records, exitValue);
+		} catch (ExecutionError e) {
+			return e.getMessage();
+		}
+		Assert.fail("expected the run to fail");
+		return null;
+	}
+	
+	private static ScriptResult record(String action, String item, String status) {
+		ScriptResult record = new ScriptResult();
+		record.setAction(action);
+		record.setItem(item);
+		record.setStatus(status);
+		return record;
+	}
+}
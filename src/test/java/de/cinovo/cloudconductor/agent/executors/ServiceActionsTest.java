@@ -0,0 +1,235 @@
+package de.cinovo.cloudconductor.agent.executors;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.executors.helper.BaseExecutor;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Checks the order {@link ServiceActions} runs the actions in for a few dependency graphs. The actions only record themselves
+ * instead of calling the service handler script.
+ */
+public class ServiceActionsTest {
+	
+	private static class FakeDependencies extends ServiceDependencies {
+		
+		private final Map<String, Set<String>> dependencies = new HashMap<>();
+		
+		
+		FakeDependencies() {
+			super(new File("/nonexistent"), Collections.<File> emptyList());
+		}
+		
+		FakeDependencies dependsOn(String service, String... others) {
+			this.dependencies.put(service, new LinkedHashSet<>(Arrays.asList(others)));
+			return this;
+		}
+		
+		@Override
+		public Set<String> getDependencies(String service) {
+			Set<String> others = this.dependencies.get(service);
+			return others == null ? Collections.<String> emptySet() : others;
+		}
+	}
+	
+	private static class RecordingActions extends ServiceActions {
+		
+		private final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+		
+		
+		RecordingActions(Collection<String> restart, Collection<String> start, Collection<String> stop, ServiceDependencies dependencies) {
+			super(restart, start, stop, dependencies);
+		}
+		
+		@Override
+		BaseExecutor<String> createScript(final Action action, final String name) {
+			return new BaseExecutor<String>() {
+				
+				@Override
+				protected void doExecute() throws ExecutionError {
+					try {
+						// gives a wrongly released action the chance to overtake
+						Thread.sleep(20);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					RecordingActions.this.order.add(action.name().toLowerCase() + " " + name);
+				}
+				
+				@Override
+				protected void abort() {
+					// nothing to abort
+				}
+				
+				@Override
+				public String getResult() {
+					return null;
+				}
+				
+				@Override
+				public boolean failed() {
+					return false;
+				}
+			};
+		}
+		
+		List<String> getOrder() {
+			return new ArrayList<>(this.order);
+		}
+	}
+	
+	private static class Warnings extends AppenderSkeleton {
+		
+		private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+		
+		
+		@Override
+		protected void append(LoggingEvent event) {
+			if (event.getLevel().isGreaterOrEqual(Level.WARN)) {
+				this.messages.add(event.getRenderedMessage());
+			}
+		}
+		
+		@Override
+		public void close() {
+			// nothing to release
+		}
+		
+		@Override
+		public boolean requiresLayout() {
+			return false;
+		}
+	}
+	
+	
+	private final Warnings warnings = new Warnings();
+	
+	
+	@Before
+	public void setUp() {
+		Logger.getLogger(ServiceActions.class).addAppender(this.warnings);
+	}
+	
+	@After
+	public void tearDown() {
+		Logger.getLogger(ServiceActions.class).removeAppender(this.warnings);
+	}
+	
+	@Test
+	public void testLinearChain() throws ExecutionError {
+		FakeDependencies dependencies = new FakeDependencies().dependsOn("c", "b").dependsOn("b", "a");
+		RecordingActions actions = new RecordingActions(null, Arrays.asList("c", "b", "a"), null, dependencies);
+		actions.execute();
+		Assert.assertEquals(Arrays.asList("start a", "start b", "start c"), actions.getOrder());
+		Assert.assertTrue(this.warnings.messages.isEmpty());
+	}
+	
+	@Test
+	public void testDiamond() throws ExecutionError {
+		FakeDependencies dependencies = new FakeDependencies().dependsOn("d", "b", "c").dependsOn("b", "a").dependsOn("c", "a");
+		RecordingActions actions = new RecordingActions(Arrays.asList("d", "b"), Arrays.asList("c", "a"), null, dependencies);
+		actions.execute();
+		List<String> order = actions.getOrder();
+		Assert.assertEquals(4, order.size());
+		Assert.assertEquals("start a", order.get(0));
+		Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("restart b", "start c")), new LinkedHashSet<>(order.subList(1, 3)));
+		Assert.assertEquals("restart d", order.get(3));
+		Assert.assertTrue(this.warnings.messages.isEmpty());
+	}
+	
+	@Test
+	public void testCycle() throws ExecutionError {
+		// a and b wait for each other, c waits for a
+		FakeDependencies dependencies = new FakeDependencies().dependsOn("a", "b").dependsOn("b", "a").dependsOn("c", "a");
+		RecordingActions actions = new RecordingActions(null, Arrays.asList("c", "a", "b"), null, dependencies);
+		actions.execute();
+		List<String> order = actions.getOrder();
+		Assert.assertEquals(3, order.size());
+		// c isn't part of the cycle and keeps waiting, a is the first service of the cycle and no longer waits for b
+		Assert.assertEquals("start a", order.get(0));
+		Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("start b", "start c")), new LinkedHashSet<>(order.subList(1, 3)));
+		Assert.assertEquals(Arrays.asList("Dependency cycle between a, b, a no longer waits for b"), this.warnings.messages);
+	}
+	
+	@Test
+	public void testCycleBehindChain() throws ExecutionError {
+		// d waits for c, which waits for the cycle of a and b; only the edge inside the cycle is dropped
+		FakeDependencies dependencies = new FakeDependencies().dependsOn("d", "c").dependsOn("c", "b").dependsOn("b", "a").dependsOn("a", "b");
+		RecordingActions actions = new RecordingActions(null, Arrays.asList("d", "c", "b", "a"), null, dependencies);
+		actions.execute();
+		List<String> order = actions.getOrder();
+		Assert.assertEquals(4, order.size());
+		Assert.assertEquals("start b", order.get(0));
+		Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("start a", "start c")), new LinkedHashSet<>(order.subList(1, 3)));
+		Assert.assertEquals("start d", order.get(3));
+		Assert.assertEquals(Arrays.asList("Dependency cycle between b, a, b no longer waits for a"), this.warnings.messages);
+	}
+	
+	@Test
+	public void testStopReversesStart() throws ExecutionError {
+		FakeDependencies dependencies = new FakeDependencies().dependsOn("c", "b").dependsOn("b", "a");
+		RecordingActions start = new RecordingActions(null, Arrays.asList("b", "a", "c"), null, dependencies);
+		start.execute();
+		RecordingActions stop = new RecordingActions(null, null, Arrays.asList("b", "a", "c"), dependencies);
+		stop.execute();
+		
+		List<String> started = new ArrayList<>();
+		for (String entry : start.getOrder()) {
+			started.add(entry.substring("start ".length()));
+		}
+		List<String> stopped = new ArrayList<>();
+		for (String entry : stop.getOrder()) {
+			stopped.add(entry.substring("stop ".length()));
+		}
+		Collections.reverse(started);
+		Assert.assertEquals(Arrays.asList("c", "b", "a"), stopped);
+		Assert.assertEquals(started, stopped);
+	}
+	
+	@Test
+	public void testStopsBeforeStarts() throws ExecutionError {
+		RecordingActions actions = new RecordingActions(null, Arrays.asList("x"), Arrays.asList("y", "z"), new FakeDependencies());
+		actions.execute();
+		Assert.assertEquals("start x", actions.getOrder().get(2));
+	}
+}
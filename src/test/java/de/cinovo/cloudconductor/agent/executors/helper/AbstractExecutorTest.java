@@ -0,0 +1,152 @@
+package de.cinovo.cloudconductor.agent.executors.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.helper.FutureImpl;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Process handling of the {@link AbstractExecutor}: draining the output, deadlines and killing the process tree.
+ */
+public class AbstractExecutorTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	
+	private static class BashExecutor extends AbstractExecutor<String> {
+		
+		private final String script;
+		private String result;
+		
+		
+		BashExecutor(String script) {
+			this.script = script;
+		}
+		
+		@Override
+		protected Process genProcess() throws IOException {
+			return new ProcessBuilder("bash", "-c", this.script).start();
+		}
+		
+		@Override
+		protected void analyzeStream(OutputBuffer dev, OutputBuffer error) throws ExecutionError {
+			this.result = dev.toString();
+		}
+		
+		@Override
+		public String getResult() {
+			return this.result;
+		}
+	}
+	
+	
+	@Test
+	public void testOutput() throws ExecutionError {
+		BashExecutor executor = new BashExecutor("echo one; echo two >&2; exit 3");
+		executor.execute();
+		Assert.assertTrue(executor.getResult().contains("one"));
+		Assert.assertEquals(3, executor.exitValue);
+		Assert.assertTrue(executor.failed());
+	}
+	
+	@Test
+	public void testDaemonHoldingOutput() throws Exception {
+		// the daemon inherits stdout and stderr and outlives the script
+		File pidFile = this.folder.newFile("pid");
+		BashExecutor executor = new BashExecutor("(sleep 30 & echo $! > " + pidFile.getAbsolutePath() + "); echo started");
+		executor.setTimeout(2, TimeUnit.SECONDS);
+		long start = System.nanoTime();
+		try {
+			executor.execute();
+			Assert.assertTrue(executor.getResult().contains("started"));
+		} catch (ExecutionError e) {
+			// the runtime couldn't drain the pipes, the deadline ended the wait
+		} finally {
+			// the daemon left the process tree, so nobody kills it for us
+			String pid = new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.US_ASCII).trim();
+			new ProcessBuilder("kill", pid).start().waitFor();
+		}
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+	}
+	
+	@Test
+	public void testDeadlineKillsTree() throws Exception {
+		File pidFile = this.folder.newFile("pid");
+		BashExecutor executor = new BashExecutor("sleep 30 & echo $! > " + pidFile.getAbsolutePath() + "; wait");
+		executor.setTimeout(500, TimeUnit.MILLISECONDS);
+		long start = System.nanoTime();
+		try {
+			executor.execute();
+			Assert.fail("expected the deadline to hit");
+		} catch (ExecutionError e) {
+			Assert.assertTrue(executor.timedOut());
+		}
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+		String pid = new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.US_ASCII).trim();
+		Assert.assertTrue("sleep " + pid + " survived", AbstractExecutorTest.isGone(pid));
+	}
+	
+	@Test
+	public void testCancelKillsTree() throws Exception {
+		File pidFile = this.folder.newFile("pid");
+		BashExecutor executor = new BashExecutor("sleep 30 & echo $! > " + pidFile.getAbsolutePath() + "; wait");
+		executor.setTimeout(0, TimeUnit.SECONDS);
+		FutureImpl<String> future = executor.executeAsync();
+		String pid = "";
+		for (int i = 0; (i < 50) && pid.isEmpty(); i++) {
+			Thread.sleep(100);
+			pid = new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.US_ASCII).trim();
+		}
+		Assert.assertFalse(pid.isEmpty());
+		future.cancel(true);
+		Assert.assertTrue("sleep " + pid + " survived", AbstractExecutorTest.isGone(pid));
+	}
+	
+	private static boolean isGone(String pid) throws Exception {
+		File stat = new File("/proc/" + pid + "/stat");
+		for (int i = 0; i < 50; i++) {
+			try {
+				String content = new String(Files.readAllBytes(stat.toPath()), StandardCharsets.US_ASCII);
+				if (content.charAt(content.lastIndexOf(')') + 2) == 'Z') {
+					return true;
+				}
+			} catch (IOException e) {
+				return true;
+			}
+			Thread.sleep(100);
+		}
+		return false;
+	}
+}
@@ -0,0 +1,130 @@
+package de.cinovo.cloudconductor.agent.executors.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+import de.cinovo.cloudconductor.agent.helper.FutureImpl;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Deadline and cancellation handling of the {@link BaseExecutor}.
+ */
+public class BaseExecutorTest {
+	
+	private static class SleepingExecutor extends BaseExecutor<String> {
+		
+		private final long millis;
+		private final CountDownLatch aborted = new CountDownLatch(1);
+		
+		
+		SleepingExecutor(long millis) {
+			this.millis = millis;
+		}
+		
+		@Override
+		protected void doExecute() throws ExecutionError {
+			try {
+				this.aborted.await(this.millis, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		@Override
+		protected void abort() {
+			this.aborted.countDown();
+		}
+		
+		@Override
+		public String getResult() {
+			return "done";
+		}
+		
+		@Override
+		public boolean failed() {
+			return false;
+		}
+	}
+	
+	
+	@Test
+	public void testDeadline() {
+		SleepingExecutor executor = new SleepingExecutor(10000);
+		executor.setTimeout(100, TimeUnit.MILLISECONDS);
+		try {
+			executor.execute();
+			Assert.fail("timeout expected");
+		} catch (ExecutionError e) {
+			Assert.assertTrue(executor.timedOut());
+			Assert.assertTrue(executor.getDuration() < 5000);
+		}
+	}
+	
+	@Test
+	public void testFinishedBeforeDeadline() throws ExecutionError {
+		SleepingExecutor executor = new SleepingExecutor(0);
+		executor.setTimeout(1, TimeUnit.SECONDS);
+		executor.execute();
+		Assert.assertFalse(executor.timedOut());
+	}
+	
+	@Test
+	public void testDeadlineAroundFinish() throws ExecutionError {
+		// runs finishing right at their deadline either time out properly or succeed, they never fail after finishing
+		for (int i = 0; i < 200; i++) {
+			SleepingExecutor executor = new SleepingExecutor(1);
+			executor.setTimeout(1, TimeUnit.MILLISECONDS);
+			try {
+				executor.execute();
+				Assert.assertFalse(executor.timedOut());
+			} catch (ExecutionError e) {
+				Assert.assertTrue(executor.timedOut());
+			}
+		}
+	}
+	
+	@Test
+	public void testCancel() throws Exception {
+		SleepingExecutor executor = new SleepingExecutor(10000);
+		executor.setTimeout(0, TimeUnit.SECONDS);
+		FutureImpl<String> future = executor.executeAsync();
+		Thread.sleep(50);
+		future.cancel(true);
+		Assert.assertTrue(executor.aborted.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(future.isCancelled());
+	}
+	
+	@Test
+	public void testCancelAfterFinish() throws Exception {
+		SleepingExecutor executor = new SleepingExecutor(0);
+		FutureImpl<String> future = executor.executeAsync();
+		Assert.assertEquals("done", future.get(5, TimeUnit.SECONDS));
+		future.cancel(true);
+		Assert.assertEquals(1, executor.aborted.getCount());
+	}
+}
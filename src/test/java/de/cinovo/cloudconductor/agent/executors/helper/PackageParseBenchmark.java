@@ -0,0 +1,118 @@
+package de.cinovo.cloudconductor.agent.executors.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Parsing 5,000 lines of <code>rpm -qa</code> output with the {@link PackageStreamAnalyzer} compared to the former Scanner,
+ * String[] and split(";") path. Run with <code>mvn test-compile</code> and the main method on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PackageParseBenchmark {
+	
+	private static final int LINES = 5000;
+	
+	private byte[] output;
+	
+	
+	/**
+	 * builds the fixture
+	 */
+	@Setup
+	public void setup() {
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < PackageParseBenchmark.LINES; i++) {
+			b.append("package-").append(i).append("-libs;").append(i % 17).append('.').append(i % 5).append('.').append(i).append("-1.el7_").append(i % 9).append('\n');
+		}
+		this.output = b.toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * @return the packages
+	 */
+	@Benchmark
+	public List<PackageVersion> streamParser() {
+		List<PackageVersion> result = new ArrayList<>(PackageParseBenchmark.LINES);
+		PackageStreamAnalyzer analyzer = new PackageStreamAnalyzer(new ByteArrayInputStream(this.output), result);
+		analyzer.run();
+		analyzer.getValues().close();
+		return result;
+	}
+	
+	/**
+	 * @return the packages
+	 */
+	@Benchmark
+	public List<PackageVersion> scannerSplit() {
+		List<String> lines = new ArrayList<>();
+		try (Scanner sc = new Scanner(new ByteArrayInputStream(this.output))) {
+			while (sc.hasNextLine()) {
+				String line = sc.nextLine();
+				if (!line.isEmpty()) {
+					lines.add(line);
+				}
+			}
+		}
+		List<PackageVersion> result = new ArrayList<>();
+		for (String str : lines.toArray(new String[lines.size()])) {
+			String[] arr = str.split(";");
+			result.add(new PackageVersion(arr[0], arr[1], null));
+		}
+		return result;
+	}
+	
+	/**
+	 * @param args not used
+	 * @throws RunnerException on errors
+	 */
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(PackageParseBenchmark.class.getSimpleName()).build()).run();
+	}
+}
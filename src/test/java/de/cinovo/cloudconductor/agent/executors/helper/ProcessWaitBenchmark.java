@@ -0,0 +1,114 @@
+package de.cinovo.cloudconductor.agent.executors.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.cinovo.cloudconductor.agent.exceptions.ExecutionError;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Per process latency of the {@link AbstractExecutor} waiting for the process exit compared to the former exitValue() poll with a
+ * one second sleep. Run with <code>mvn test-compile</code> and the main method on the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProcessWaitBenchmark {
+	
+	private static final String[] CMD = {"/bin/sh", "-c", "echo done"};
+	
+	
+	private static class EchoExecutor extends AbstractExecutor<Integer> {
+		
+		@Override
+		protected Process genProcess() throws IOException {
+			return Runtime.getRuntime().exec(ProcessWaitBenchmark.CMD);
+		}
+		
+		@Override
+		protected void analyzeStream(OutputBuffer dev, OutputBuffer error) throws ExecutionError {
+			// nothing to analyze
+		}
+		
+		@Override
+		public Integer getResult() {
+			return this.exitValue;
+		}
+	}
+	
+	
+	/**
+	 * @return the exit value
+	 * @throws ExecutionError on errors
+	 */
+	@Benchmark
+	public int waitForExit() throws ExecutionError {
+		return new EchoExecutor().execute().getResult();
+	}
+	
+	/**
+	 * @return the exit value
+	 * @throws Exception on errors
+	 */
+	@Benchmark
+	public int pollExitValue() throws Exception {
+		Process p = Runtime.getRuntime().exec(ProcessWaitBenchmark.CMD);
+		DefaultStreamAnalyzer dev = new DefaultStreamAnalyzer(p.getInputStream());
+		DefaultStreamAnalyzer error = new DefaultStreamAnalyzer(p.getErrorStream());
+		dev.start();
+		error.start();
+		int exitValue = -1;
+		while (exitValue < 0) {
+			try {
+				exitValue = p.exitValue();
+			} catch (IllegalThreadStateException e) {
+				Thread.sleep(1000);
+			}
+		}
+		dev.getValues().close();
+		error.getValues().close();
+		return exitValue;
+	}
+	
+	/**
+	 * @param args not used
+	 * @throws RunnerException on errors
+	 */
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ProcessWaitBenchmark.class.getSimpleName()).build()).run();
+	}
+}
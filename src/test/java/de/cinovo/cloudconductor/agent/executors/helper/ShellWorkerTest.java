@@ -0,0 +1,214 @@
+package de.cinovo.cloudconductor.agent.executors.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.cinovo.cloudconductor.agent.helper.AgentVars;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Runs the {@link ShellWorker} with package/helperscripts/worker.sh and a few test scripts next to it: the NUL framed requests
+ * and "@@CCW id rc" answers, a worker dying or getting killed during a call, and the pool replacing and retiring workers.
+ */
+public class ShellWorkerTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File script;
+	
+	
+	@Before
+	public void setUp() throws IOException {
+		File scripts = this.folder.newFolder("scripts");
+		this.script = new File(scripts, "worker.sh");
+		Files.copy(new File("package/helperscripts/worker.sh").toPath(), this.script.toPath());
+		ShellWorkerTest.write(new File(scripts, "args.sh"), "for a in \"$@\"; do printf '%s\\0' \"$a\"; done");
+		ShellWorkerTest.write(new File(scripts, "fail.sh"), "echo partial; echo oops >&2; exit 3");
+		ShellWorkerTest.write(new File(scripts, "slow.sh"), "sleep 30 & echo $! > \"$1\"; wait");
+		ShellWorkerTest.write(new File(scripts, "die.sh"), "kill -9 $$");
+		ShellWorkerTest.write(new File(scripts, "dielater.sh"), "( sleep 0.3; kill -9 $$ ) > /dev/null 2>&1 &");
+	}
+	
+	@After
+	public void tearDown() {
+		System.clearProperty(AgentVars.WORKER_POOL_PROP);
+		System.clearProperty(AgentVars.SERVICE_PROBE_PARALLELISM_PROP);
+	}
+	
+	@Test
+	public void testProtocol() throws IOException {
+		ShellWorker worker = new ShellWorker(this.script);
+		try {
+			List<String> args = Arrays.asList("plain", "with space", "new\nline", "", "tab\there", "@@CCW 1 0", "ümläut");
+			long id = worker.send("args.sh", args);
+			Assert.assertEquals(0, worker.await(id));
+			StringBuilder expected = new StringBuilder();
+			for (String arg : args) {
+				expected.append(arg).append('\0');
+			}
+			Assert.assertEquals(expected.toString(), ShellWorkerTest.read(worker.getOut()));
+			
+			long next = worker.send("fail.sh", Collections.<String> emptyList());
+			Assert.assertTrue(next > id);
+			Assert.assertEquals(3, worker.await(next));
+			Assert.assertEquals("partial\n", ShellWorkerTest.read(worker.getOut()));
+			Assert.assertEquals("oops\n", ShellWorkerTest.read(worker.getErr()));
+			
+			Assert.assertEquals(127, worker.await(worker.send("missing.sh", Collections.<String> emptyList())));
+			Assert.assertTrue(worker.isAlive());
+		} finally {
+			worker.kill();
+		}
+	}
+	
+	@Test
+	public void testDeathDuringCall() throws Exception {
+		ShellWorker worker = new ShellWorker(this.script);
+		try {
+			worker.await(worker.send("die.sh", Collections.<String> emptyList()));
+			Assert.fail("expected the worker to be gone");
+		} catch (IOException e) {
+			// expected
+		}
+		Assert.assertTrue(ShellWorkerTest.waitForExit(worker));
+		worker.kill();
+	}
+	
+	@Test
+	public void testKilledDuringCall() throws Exception {
+		final ShellWorker worker = new ShellWorker(this.script);
+		File pidFile = this.folder.newFile("pid");
+		long id = worker.send("slow.sh", Arrays.asList(pidFile.getAbsolutePath()));
+		String pid = "";
+		for (int i = 0; (i < 50) && pid.isEmpty(); i++) {
+			Thread.sleep(100);
+			pid = ShellWorkerTest.read(pidFile).trim();
+		}
+		Assert.assertFalse(pid.isEmpty());
+		// what the executor does when the deadline passes in the middle of the call
+		new Thread() {
+			
+			@Override
+			public void run() {
+				worker.kill();
+			}
+		}.start();
+		long start = System.nanoTime();
+		try {
+			worker.await(id);
+			Assert.fail("expected the call to fail");
+		} catch (IOException e) {
+			// expected
+		}
+		Assert.assertTrue((System.nanoTime() - start) < 5000000000L);
+		// the signals are out when the call fails, the processes may take a moment to exit
+		boolean gone = false;
+		for (int i = 0; (i < 50) && !gone; i++) {
+			gone = ShellWorkerTest.isGone(pid);
+			Thread.sleep(100);
+		}
+		Assert.assertTrue(gone);
+	}
+	
+	@Test
+	public void testDeadIdleWorkerReplaced() throws Exception {
+		ShellWorker worker = ShellWorker.acquire(this.script);
+		Assert.assertEquals(0, worker.await(worker.send("dielater.sh", Collections.<String> emptyList())));
+		ShellWorker.release(worker);
+		Assert.assertTrue(ShellWorkerTest.waitForExit(worker));
+		
+		ShellWorker replacement = ShellWorker.acquire(this.script);
+		try {
+			Assert.assertNotSame(worker, replacement);
+			Assert.assertEquals(3, replacement.await(replacement.send("fail.sh", Collections.<String> emptyList())));
+		} finally {
+			replacement.kill();
+		}
+	}
+	
+	@Test
+	public void testSurplusWorkerRetired() throws Exception {
+		System.setProperty(AgentVars.WORKER_POOL_PROP, "1");
+		System.setProperty(AgentVars.SERVICE_PROBE_PARALLELISM_PROP, "1");
+		ShellWorker first = ShellWorker.acquire(this.script);
+		ShellWorker second = ShellWorker.acquire(this.script);
+		ShellWorker.release(first);
+		ShellWorker.release(second);
+		
+		// bash leaves its read loop and removes its work directory on its own
+		Assert.assertTrue(ShellWorkerTest.waitForExit(second));
+		Assert.assertFalse(second.getOut().getParentFile().exists());
+		Assert.assertTrue(first.isAlive());
+		
+		ShellWorker pooled = ShellWorker.acquire(this.script);
+		Assert.assertSame(first, pooled);
+		pooled.kill();
+	}
+	
+	@Test
+	public void testPoolCoversProbes() {
+		System.setProperty(AgentVars.WORKER_POOL_PROP, "2");
+		System.setProperty(AgentVars.SERVICE_PROBE_PARALLELISM_PROP, "6");
+		Assert.assertEquals(6, ShellWorker.getPoolSize());
+		System.setProperty(AgentVars.WORKER_POOL_PROP, "10");
+		Assert.assertEquals(10, ShellWorker.getPoolSize());
+	}
+	
+	private static boolean waitForExit(ShellWorker worker) throws InterruptedException {
+		for (int i = 0; (i < 50) && worker.isAlive(); i++) {
+			Thread.sleep(100);
+		}
+		return !worker.isAlive();
+	}
+	
+	private static boolean isGone(String pid) {
+		try {
+			String stat = ShellWorkerTest.read(new File("/proc/" + pid + "/stat"));
+			return stat.charAt(stat.lastIndexOf(')') + 2) == 'Z';
+		} catch (IOException e) {
+			return true;
+		}
+	}
+	
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), (content + "\n").getBytes(StandardCharsets.UTF_8));
+	}
+	
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,180 @@
+package de.cinovo.cloudconductor.agent.executors.rpmdb;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Reads the fixture databases in src/test/resources/rpmdb and compares the packages to the
+ * <code>rpm -qa --queryformat %{NAME};%{VERSION}-%{RELEASE}\n</code> output next to them. The sqlite fixture has a header spanning
+ * overflow pages and a removed package, the ndb fixture has blobs out of package order and a freed slot. Both were built by hand
+ * from the file formats; capture.sh next to them replaces them with databases written by rpm itself. On a build host with rpm,
+ * the database of the host is compared to <code>rpm -qa</code> as well.
+ */
+public class RpmDatabaseTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	
+	@Test
+	public void testSqlite() throws Exception {
+		File fixture = RpmDatabaseTest.fixture("sqlite");
+		try (RpmDatabase db = RpmDatabase.open(fixture)) {
+			Assert.assertTrue(db instanceof SqliteRpmDatabase);
+			Assert.assertEquals(RpmDatabaseTest.expected(fixture), RpmDatabaseTest.lines(db.readPackages()));
+		}
+	}
+	
+	@Test
+	public void testNdb() throws Exception {
+		File fixture = RpmDatabaseTest.fixture("ndb");
+		try (RpmDatabase db = RpmDatabase.open(fixture)) {
+			Assert.assertTrue(db instanceof NdbRpmDatabase);
+			Assert.assertEquals(RpmDatabaseTest.expected(fixture), RpmDatabaseTest.lines(db.readPackages()));
+		}
+	}
+	
+	@Test
+	public void testHostDatabase() throws Exception {
+		String dbpath = RpmDatabaseTest.rpm("-E", "%_dbpath");
+		Assume.assumeNotNull(dbpath);
+		try (RpmDatabase db = RpmDatabase.open(new File(dbpath.trim()))) {
+			// older hosts keep a berkeley db
+			Assume.assumeNotNull(db);
+			String installed = RpmDatabaseTest.rpm("-qa", "--queryformat", "%{NAME};%{VERSION}-%{RELEASE}\\n");
+			Assert.assertNotNull(installed);
+			List<String> expected = RpmDatabaseTest.sorted(installed);
+			List<String> actual = RpmDatabaseTest.lines(db.readPackages());
+			Collections.sort(actual);
+			Assert.assertFalse(expected.isEmpty());
+			Assert.assertEquals(expected, actual);
+		}
+	}
+	
+	@Test
+	public void testUncheckpointedWal() throws Exception {
+		File copy = this.copy("sqlite", "rpmdb.sqlite");
+		Files.write(new File(copy, "rpmdb.sqlite-wal").toPath(), new byte[] {1});
+		Assert.assertNull(RpmDatabase.open(copy));
+	}
+	
+	@Test
+	public void testNoDatabase() throws Exception {
+		Assert.assertNull(RpmDatabase.open(this.folder.newFolder()));
+	}
+	
+	@Test(expected = IOException.class)
+	public void testTruncatedSqlite() throws Exception {
+		File copy = this.copy("sqlite", "rpmdb.sqlite");
+		RpmDatabaseTest.truncate(new File(copy, "rpmdb.sqlite"), 8192);
+		try (RpmDatabase db = RpmDatabase.open(copy)) {
+			db.readPackages();
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void testTruncatedNdb() throws Exception {
+		File copy = this.copy("ndb", "Packages.db");
+		RpmDatabaseTest.truncate(new File(copy, "Packages.db"), 6000);
+		try (RpmDatabase db = RpmDatabase.open(copy)) {
+			db.readPackages();
+		}
+	}
+	
+	private File copy(String fixture, String name) throws Exception {
+		File target = this.folder.newFolder();
+		Files.copy(new File(RpmDatabaseTest.fixture(fixture), name).toPath(), new File(target, name).toPath());
+		return target;
+	}
+	
+	private static void truncate(File file, long length) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(length);
+		}
+	}
+	
+	private static File fixture(String name) throws URISyntaxException {
+		return new File(RpmDatabaseTest.class.getResource("/rpmdb/" + name).toURI());
+	}
+	
+	private static List<String> expected(File fixture) throws IOException {
+		return Files.readAllLines(new File(fixture, "rpm-qa.txt").toPath(), StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * @return the output of rpm or null if rpm isn't available
+	 */
+	private static String rpm(String... args) throws InterruptedException {
+		List<String> cmd = new ArrayList<>();
+		cmd.add("rpm");
+		Collections.addAll(cmd, args);
+		try {
+			Process p = new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+			try (InputStream in = p.getInputStream()) {
+				String output = new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+				return p.waitFor() == 0 ? output : null;
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	private static List<String> sorted(String output) {
+		List<String> lines = new ArrayList<>();
+		for (String line : output.split("\n")) {
+			if (!line.isEmpty()) {
+				lines.add(line);
+			}
+		}
+		Collections.sort(lines);
+		return lines;
+	}
+	
+	private static List<String> lines(List<PackageVersion> packages) {
+		List<String> lines = new ArrayList<>();
+		for (PackageVersion p : packages) {
+			lines.add(p.getName() + ";" + p.getVersion());
+		}
+		return lines;
+	}
+}
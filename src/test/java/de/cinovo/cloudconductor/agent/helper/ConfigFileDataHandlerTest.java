@@ -0,0 +1,102 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.cinovo.cloudconductor.agent.AgentState;
+import de.cinovo.cloudconductor.agent.helper.ConfigFileDataHandler.FileData;
+import de.cinovo.cloudconductor.api.lib.exceptions.CloudConductorException;
+import de.cinovo.cloudconductor.api.lib.helper.MapperFactory;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Conditional fetches of the {@link ConfigFileDataHandler} against a {@link ServerStub}.
+ */
+public class ConfigFileDataHandlerTest {
+	
+	private final ObjectMapper mapper = MapperFactory.createDefault();
+	private ServerStub server;
+	private ConfigFileDataHandler handler;
+	
+	
+	@Before
+	public void setUp() throws IOException {
+		this.server = ServerStub.get();
+		this.server.reset();
+		this.handler = new ConfigFileDataHandler(AgentState.info().getServer());
+	}
+	
+	@Test
+	public void testUnconditionalFetch() throws Exception {
+		this.server.respond(200, this.mapper.writeValueAsString("a=1\n"), "\"e1\"");
+		FileData data = this.handler.getConfigFileData("app.conf", null);
+		Assert.assertEquals("a=1\n", data.getContent());
+		Assert.assertEquals("\"e1\"", data.getETag());
+		
+		List<ServerStub.Request> requests = this.server.getRequests();
+		Assert.assertEquals(1, requests.size());
+		Assert.assertEquals("GET", requests.get(0).getMethod());
+		Assert.assertEquals("/file/app.conf/data", requests.get(0).getPath());
+		Assert.assertNull(requests.get(0).getIfNoneMatch());
+	}
+	
+	@Test
+	public void testNotModified() throws Exception {
+		this.server.respond(304, null, "\"e1\"");
+		Assert.assertNull(this.handler.getConfigFileData("app.conf", "\"e1\""));
+		Assert.assertEquals("\"e1\"", this.server.getRequests().get(0).getIfNoneMatch());
+	}
+	
+	@Test
+	public void testModified() throws Exception {
+		this.server.respond(200, this.mapper.writeValueAsString("a=2\n"), "\"e2\"");
+		FileData data = this.handler.getConfigFileData("app.conf", "\"e1\"");
+		Assert.assertEquals("a=2\n", data.getContent());
+		Assert.assertEquals("\"e2\"", data.getETag());
+		Assert.assertEquals("\"e1\"", this.server.getRequests().get(0).getIfNoneMatch());
+	}
+	
+	@Test
+	public void testWithoutETag() throws Exception {
+		this.server.respond(200, this.mapper.writeValueAsString("a=1\n"));
+		Assert.assertNull(this.handler.getConfigFileData("app.conf", null).getETag());
+	}
+	
+	@Test
+	public void testError() throws Exception {
+		this.server.respond(404, null);
+		try {
+			this.handler.getConfigFileData("app.conf", "\"e1\"");
+			Assert.fail("expected an exception");
+		} catch (CloudConductorException e) {
+			Assert.assertEquals(Integer.valueOf(404), e.getStatusCode());
+		}
+	}
+}
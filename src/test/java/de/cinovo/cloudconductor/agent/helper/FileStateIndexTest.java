@@ -0,0 +1,198 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Checks when the {@link FileStateIndex} serves a stored checksum and when it hashes the file again. A forged record with a
+ * valid CRC shows whether the index was trusted.
+ */
+public class FileStateIndexTest {
+	
+	private static final int HEADER_SIZE = 16;
+	private static final int RECORD_SIZE = 80;
+	private static final int MD5_OFFSET = 56;
+	private static final int CRC_OFFSET = 76;
+	private static final byte[] FORGED = new byte[16];
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File index;
+	private File file;
+	private HashCode md5;
+	
+	
+	@Before
+	public void setUp() throws IOException {
+		Arrays.fill(FileStateIndexTest.FORGED, (byte) 0x5a);
+		this.index = new File(this.folder.newFolder("state"), "file.index");
+		this.file = this.folder.newFile("config.txt");
+		Files.write("some content\n", this.file, StandardCharsets.UTF_8);
+		this.md5 = Files.hash(this.file, Hashing.md5());
+	}
+	
+	@Test
+	public void testStoredRecordTrusted() throws IOException {
+		Assert.assertEquals(this.md5, new FileStateIndex(this.index, 0).getChecksum(this.file));
+		int offset = this.findRecord(this.file);
+		Assert.assertTrue(offset > 0);
+		this.writeMd5(offset, FileStateIndexTest.FORGED, true);
+		Assert.assertEquals(HashCode.fromBytes(FileStateIndexTest.FORGED), new FileStateIndex(this.index, 0).getChecksum(this.file));
+	}
+	
+	@Test
+	public void testCorruptedCrcRehashed() throws IOException {
+		new FileStateIndex(this.index, 0).getChecksum(this.file);
+		int offset = this.findRecord(this.file);
+		this.writeMd5(offset, FileStateIndexTest.FORGED, false);
+		Assert.assertEquals(-1, this.findRecord(this.file));
+		
+		FileStateIndex reopened = new FileStateIndex(this.index, 0);
+		Assert.assertEquals(this.md5, reopened.getChecksum(this.file));
+		reopened.flush();
+		// the record got written again with the real checksum
+		Assert.assertEquals(offset, this.findRecord(this.file));
+		Assert.assertArrayEquals(this.md5.asBytes(), this.readMd5(offset));
+	}
+	
+	@Test
+	public void testRacyFileNotStored() throws IOException {
+		FileStateIndex racy = new FileStateIndex(this.index, 60000);
+		Assert.assertEquals(this.md5, racy.getChecksum(this.file));
+		racy.flush();
+		Assert.assertEquals(-1, this.findRecord(this.file));
+		
+		// a file modified in the future is racy as well, its timestamp may still be updated
+		Assert.assertTrue(this.file.setLastModified(System.currentTimeMillis() + 60000));
+		Assert.assertEquals(this.md5, new FileStateIndex(this.index, 0).getChecksum(this.file));
+		Assert.assertEquals(-1, this.findRecord(this.file));
+	}
+	
+	@Test
+	public void testGrowthKeepsEntries() throws Exception {
+		FileStateIndex grown = new FileStateIndex(this.index, 0);
+		List<File> files = new ArrayList<>();
+		Object before = null;
+		for (int i = 0; i < 300; i++) {
+			File f = this.folder.newFile("file" + i);
+			Files.write("content " + i, f, StandardCharsets.UTF_8);
+			files.add(f);
+			Assert.assertEquals(Files.hash(f, Hashing.md5()), grown.getChecksum(f));
+			if (i == 0) {
+				// holds on to the first mapping, only unmapping releases the replaced file then
+				Field buffer = FileStateIndex.class.getDeclaredField("buffer");
+				buffer.setAccessible(true);
+				before = buffer.get(grown);
+			}
+		}
+		grown.flush();
+		Assert.assertEquals(FileStateIndexTest.HEADER_SIZE + (512L * FileStateIndexTest.RECORD_SIZE), this.index.length());
+		for (File f : files) {
+			int offset = this.findRecord(f);
+			Assert.assertTrue(f.getName(), offset > 0);
+			Assert.assertArrayEquals(Files.hash(f, Hashing.md5()).asBytes(), this.readMd5(offset));
+		}
+		
+		File maps = new File("/proc/self/maps");
+		Assume.assumeTrue(maps.isFile());
+		for (String line : Files.readLines(maps, StandardCharsets.UTF_8)) {
+			Assert.assertFalse(line, line.contains(this.index.getAbsolutePath()) && line.endsWith("(deleted)"));
+		}
+		Assert.assertNotNull(before);
+	}
+	
+	@Test
+	public void testTruncatedIndexRebuilt() throws IOException {
+		new FileStateIndex(this.index, 0).getChecksum(this.file);
+		try (RandomAccessFile raf = new RandomAccessFile(this.index, "rw")) {
+			raf.setLength(FileStateIndexTest.HEADER_SIZE + FileStateIndexTest.RECORD_SIZE + 10);
+		}
+		FileStateIndex rebuilt = new FileStateIndex(this.index, 0);
+		Assert.assertEquals(this.md5, rebuilt.getChecksum(this.file));
+		rebuilt.flush();
+		Assert.assertEquals(FileStateIndexTest.HEADER_SIZE + (256L * FileStateIndexTest.RECORD_SIZE), this.index.length());
+		Assert.assertTrue(this.findRecord(this.file) > 0);
+	}
+	
+	/**
+	 * @return the offset of the valid record of the file or -1
+	 */
+	private int findRecord(File f) throws IOException {
+		byte[] key = Hashing.murmur3_128().hashString(f.getAbsolutePath(), StandardCharsets.UTF_8).asBytes();
+		byte[] data = Files.toByteArray(this.index);
+		for (int offset = FileStateIndexTest.HEADER_SIZE; (offset + FileStateIndexTest.RECORD_SIZE) <= data.length; offset += FileStateIndexTest.RECORD_SIZE) {
+			byte[] record = Arrays.copyOfRange(data, offset, offset + FileStateIndexTest.RECORD_SIZE);
+			if (Arrays.equals(key, Arrays.copyOf(record, 16)) && (ByteBuffer.wrap(record).getInt(FileStateIndexTest.CRC_OFFSET) == FileStateIndexTest.crc(record))) {
+				return offset;
+			}
+		}
+		return -1;
+	}
+	
+	private byte[] readMd5(int offset) throws IOException {
+		byte[] data = Files.toByteArray(this.index);
+		return Arrays.copyOfRange(data, offset + FileStateIndexTest.MD5_OFFSET, offset + FileStateIndexTest.MD5_OFFSET + 16);
+	}
+	
+	private void writeMd5(int offset, byte[] md5, boolean fixCrc) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(this.index, "rw")) {
+			byte[] record = new byte[FileStateIndexTest.RECORD_SIZE];
+			raf.seek(offset);
+			raf.readFully(record);
+			System.arraycopy(md5, 0, record, FileStateIndexTest.MD5_OFFSET, md5.length);
+			if (fixCrc) {
+				ByteBuffer.wrap(record).putInt(FileStateIndexTest.CRC_OFFSET, FileStateIndexTest.crc(record));
+			}
+			raf.seek(offset);
+			raf.write(record);
+		}
+	}
+	
+	private static int crc(byte[] record) {
+		CRC32 crc = new CRC32();
+		crc.update(record, 0, FileStateIndexTest.CRC_OFFSET);
+		return (int) crc.getValue();
+	}
+}
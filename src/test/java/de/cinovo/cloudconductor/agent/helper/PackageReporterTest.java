@@ -0,0 +1,188 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.cinovo.cloudconductor.api.lib.exceptions.CloudConductorException;
+import de.cinovo.cloudconductor.api.lib.helper.MapperFactory;
+import de.cinovo.cloudconductor.api.model.PackageStateChanges;
+import de.cinovo.cloudconductor.api.model.PackageVersion;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Delta computation of the {@link PackageReporter} and its reports against a {@link ServerStub}.
+ */
+public class PackageReporterTest {
+	
+	private final ObjectMapper mapper = MapperFactory.createDefault();
+	private ServerStub server;
+	private String changes;
+	
+	
+	@Before
+	public void setUp() throws IOException {
+		this.server = ServerStub.get();
+		this.server.reset();
+		PackageReporter.reset();
+		List<PackageVersion> none = new ArrayList<>();
+		this.changes = this.mapper.writeValueAsString(new PackageStateChanges(PackageReporterTest.packages("vim;8.0-1"), none, none));
+	}
+	
+	@Test
+	public void testDiffSingleVersion() {
+		List<PackageVersion> before = PackageReporterTest.packages("bash;4.2-1", "curl;7.29-1", "sed;4.2-1");
+		List<PackageVersion> after = PackageReporterTest.packages("bash;4.2-2", "curl;7.29-1", "zsh;5.0-1");
+		PackageStateDelta delta = PackageReporter.diff(before, after);
+		Assert.assertEquals(Arrays.asList("zsh;5.0-1"), PackageReporterTest.lines(delta.getAdded()));
+		Assert.assertEquals(Arrays.asList("bash;4.2-2"), PackageReporterTest.lines(delta.getChanged()));
+		Assert.assertEquals(Arrays.asList("sed;4.2-1"), PackageReporterTest.lines(delta.getRemoved()));
+		Assert.assertTrue(PackageReporter.diff(after, after).isEmpty());
+	}
+	
+	@Test
+	public void testDiffSideBySide() {
+		List<PackageVersion> one = PackageReporterTest.packages("kernel;3.10-1");
+		List<PackageVersion> two = PackageReporterTest.packages("kernel;3.10-1", "kernel;3.10-2");
+		List<PackageVersion> rotated = PackageReporterTest.packages("kernel;3.10-3", "kernel;3.10-2");
+		
+		PackageStateDelta delta = PackageReporter.diff(one, two);
+		Assert.assertEquals(Arrays.asList("kernel;3.10-2"), PackageReporterTest.lines(delta.getAdded()));
+		Assert.assertTrue(delta.getChanged().isEmpty());
+		Assert.assertTrue(delta.getRemoved().isEmpty());
+		
+		delta = PackageReporter.diff(two, rotated);
+		Assert.assertEquals(Arrays.asList("kernel;3.10-3"), PackageReporterTest.lines(delta.getAdded()));
+		Assert.assertTrue(delta.getChanged().isEmpty());
+		Assert.assertEquals(Arrays.asList("kernel;3.10-1"), PackageReporterTest.lines(delta.getRemoved()));
+	}
+	
+	@Test
+	public void testDiffRemoval() {
+		List<PackageVersion> before = PackageReporterTest.packages("bash;4.2-1", "kernel;3.10-1", "kernel;3.10-2");
+		PackageStateDelta delta = PackageReporter.diff(before, PackageReporterTest.packages("kernel;3.10-2"));
+		Assert.assertTrue(delta.getAdded().isEmpty());
+		Assert.assertTrue(delta.getChanged().isEmpty());
+		Assert.assertEquals(Arrays.asList("kernel;3.10-1", "bash;4.2-1"), PackageReporterTest.lines(delta.getRemoved()));
+	}
+	
+	@Test
+	public void testReportDelta() throws Exception {
+		this.server.respond(200, this.changes);
+		this.server.respond(200, this.changes);
+		PackageStateChanges changes = PackageReporter.report(PackageReporterTest.packages("bash;4.2-1", "sed;4.2-1"));
+		Assert.assertEquals(Arrays.asList("vim;8.0-1"), PackageReporterTest.lines(changes.getToInstall()));
+		PackageReporter.report(PackageReporterTest.packages("bash;4.2-2", "sed;4.2-1"));
+		
+		List<ServerStub.Request> requests = this.server.getRequests();
+		Assert.assertEquals(2, requests.size());
+		PackageStateDelta full = this.delta(requests.get(0));
+		Assert.assertNull(full.getBaseline());
+		Assert.assertEquals(Arrays.asList("bash;4.2-1", "sed;4.2-1"), PackageReporterTest.lines(full.getAdded()));
+		PackageStateDelta delta = this.delta(requests.get(1));
+		Assert.assertEquals(Long.valueOf(full.getVersion()), delta.getBaseline());
+		Assert.assertTrue(delta.getVersion() > full.getVersion());
+		Assert.assertTrue(delta.getAdded().isEmpty());
+		Assert.assertEquals(Arrays.asList("bash;4.2-2"), PackageReporterTest.lines(delta.getChanged()));
+	}
+	
+	@Test
+	public void testReportRejectedBaseline() throws Exception {
+		this.server.respond(200, this.changes);
+		PackageReporter.report(PackageReporterTest.packages("bash;4.2-1"));
+		this.server.reset();
+		this.server.respond(409, null);
+		this.server.respond(200, this.changes);
+		PackageStateChanges changes = PackageReporter.report(PackageReporterTest.packages("bash;4.2-2"));
+		Assert.assertEquals(Arrays.asList("vim;8.0-1"), PackageReporterTest.lines(changes.getToInstall()));
+		
+		List<ServerStub.Request> requests = this.server.getRequests();
+		Assert.assertEquals(2, requests.size());
+		Assert.assertNotNull(this.delta(requests.get(0)).getBaseline());
+		PackageStateDelta full = this.delta(requests.get(1));
+		Assert.assertNull(full.getBaseline());
+		Assert.assertEquals(Arrays.asList("bash;4.2-2"), PackageReporterTest.lines(full.getAdded()));
+	}
+	
+	@Test
+	public void testReportWithoutDeltaSupport() throws Exception {
+		for (int status : new int[] {404, 405}) {
+			PackageReporter.reset();
+			this.server.reset();
+			this.server.respond(status, null);
+			this.server.respond(200, this.changes);
+			this.server.respond(200, this.changes);
+			PackageStateChanges changes = PackageReporter.report(PackageReporterTest.packages("bash;4.2-1"));
+			Assert.assertEquals(Arrays.asList("vim;8.0-1"), PackageReporterTest.lines(changes.getToInstall()));
+			PackageReporter.report(PackageReporterTest.packages("bash;4.2-2"));
+			
+			List<ServerStub.Request> requests = this.server.getRequests();
+			Assert.assertEquals(3, requests.size());
+			Assert.assertTrue(requests.get(0).getPath().endsWith("/package/delta"));
+			// the plain package state from then on
+			for (ServerStub.Request request : requests.subList(1, 3)) {
+				Assert.assertEquals("PUT", request.getMethod());
+				Assert.assertTrue(request.getPath().endsWith("/package"));
+			}
+			Assert.assertTrue(requests.get(2).getBody().contains("4.2-2"));
+		}
+	}
+	
+	@Test(expected = CloudConductorException.class)
+	public void testReportServerError() throws Exception {
+		this.server.respond(500, null);
+		PackageReporter.report(PackageReporterTest.packages("bash;4.2-1"));
+	}
+	
+	private PackageStateDelta delta(ServerStub.Request request) throws IOException {
+		Assert.assertEquals("PUT", request.getMethod());
+		Assert.assertTrue(request.getPath(), request.getPath().startsWith("/agent/test/"));
+		Assert.assertTrue(request.getPath(), request.getPath().endsWith("/package/delta"));
+		return this.mapper.readValue(request.getBody(), PackageStateDelta.class);
+	}
+	
+	private static List<PackageVersion> packages(String... lines) {
+		List<PackageVersion> packages = new ArrayList<>();
+		for (String line : lines) {
+			String[] parts = line.split(";");
+			packages.add(new PackageVersion(parts[0], parts[1], null));
+		}
+		return packages;
+	}
+	
+	private static List<String> lines(List<PackageVersion> packages) {
+		List<String> lines = new ArrayList<>();
+		for (PackageVersion pkg : packages) {
+			lines.add(pkg.getName() + ";" + pkg.getVersion());
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,212 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * A local http server standing in for the cloudconductor server. {@link ServerCom} binds to the server url once per JVM, so all
+ * tests share one stub, started on first use. Every request gets the next queued response and is recorded.
+ */
+public final class ServerStub {
+	
+	/**
+	 * A request the stub received.
+	 */
+	public static final class Request {
+		
+		private final String method;
+		private final String path;
+		private final String ifNoneMatch;
+		private final String body;
+		
+		
+		Request(String method, String path, String ifNoneMatch, String body) {
+			this.method = method;
+			this.path = path;
+			this.ifNoneMatch = ifNoneMatch;
+			this.body = body;
+		}
+		
+		/**
+		 * @return the http method
+		 */
+		public String getMethod() {
+			return this.method;
+		}
+		
+		/**
+		 * @return the path below the api path
+		 */
+		public String getPath() {
+			return this.path;
+		}
+		
+		/**
+		 * @return the If-None-Match header or null
+		 */
+		public String getIfNoneMatch() {
+			return this.ifNoneMatch;
+		}
+		
+		/**
+		 * @return the request body
+		 */
+		public String getBody() {
+			return this.body;
+		}
+	}
+	
+	private static final class Response {
+		
+		private final int status;
+		private final String body;
+		private final String etag;
+		
+		
+		Response(int status, String body, String etag) {
+			this.status = status;
+			this.body = body;
+			this.etag = etag;
+		}
+	}
+	
+	
+	private static ServerStub instance;
+	
+	private final HttpServer server;
+	private final Deque<Response> responses = new ArrayDeque<>();
+	private final List<Request> requests = new ArrayList<>();
+	
+	
+	/**
+	 * @return the stub, the agent is configured to talk to it
+	 * @throws IOException if the stub couldn't be started
+	 */
+	public static synchronized ServerStub get() throws IOException {
+		if (ServerStub.instance == null) {
+			ServerStub.instance = new ServerStub();
+			System.setProperty(AgentVars.CLOUDCONDUCTOR_URL_PROP, "http://127.0.0.1:" + ServerStub.instance.server.getAddress().getPort());
+			System.setProperty(AgentVars.TEMPLATE_PROP, "test");
+		}
+		return ServerStub.instance;
+	}
+	
+	private ServerStub() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+		this.server.createContext("/", new HttpHandler() {
+			
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				ServerStub.this.handle(exchange);
+			}
+		});
+		this.server.start();
+	}
+	
+	/**
+	 * forgets the queued responses and the recorded requests
+	 */
+	public synchronized void reset() {
+		this.responses.clear();
+		this.requests.clear();
+	}
+	
+	/**
+	 * @param status the status of the next response
+	 * @param body the body, null for none
+	 */
+	public synchronized void respond(int status, String body) {
+		this.respond(status, body, null);
+	}
+	
+	/**
+	 * @param status the status of the next response
+	 * @param body the body, null for none
+	 * @param etag the entity tag, null for none
+	 */
+	public synchronized void respond(int status, String body, String etag) {
+		this.responses.add(new Response(status, body, etag));
+	}
+	
+	/**
+	 * @return the requests received since the last reset
+	 */
+	public synchronized List<Request> getRequests() {
+		return new ArrayList<>(this.requests);
+	}
+	
+	private void handle(HttpExchange exchange) throws IOException {
+		Response response;
+		synchronized (this) {
+			String path = exchange.getRequestURI().getPath();
+			if (path.startsWith(AgentVars.CLOUDCONDUCTOR_API_PATH)) {
+				path = path.substring(AgentVars.CLOUDCONDUCTOR_API_PATH.length());
+			}
+			String body = ServerStub.read(exchange.getRequestBody());
+			this.requests.add(new Request(exchange.getRequestMethod(), path, exchange.getRequestHeaders().getFirst("If-None-Match"), body));
+			response = this.responses.poll();
+		}
+		if (response == null) {
+			response = new Response(500, null, null);
+		}
+		if (response.etag != null) {
+			exchange.getResponseHeaders().add("ETag", response.etag);
+		}
+		if (response.body == null) {
+			exchange.sendResponseHeaders(response.status, -1);
+		} else {
+			byte[] bytes = response.body.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(response.status, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		}
+		exchange.close();
+	}
+	
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, read);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,112 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.Velocity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Rendering a config file template cold, i.e. parsed by Velocity.evaluate() on every call as before, compared to warm from the
+ * {@link TemplateCache}. Run with <code>mvn test-compile</code> and the main method on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateRenderBenchmark {
+	
+	private VelocityContext global;
+	private String template;
+	
+	
+	/**
+	 * builds the template and the context
+	 *
+	 * @throws Exception on errors
+	 */
+	@Setup
+	public void setup() throws Exception {
+		Velocity.init();
+		this.global = new VelocityContext();
+		this.global.put("host", "web01");
+		this.global.put("ports", Arrays.asList(8080, 8081, 8082));
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			b.append("# section ").append(i).append('\n');
+			b.append("#set($name = \"$host-").append(i).append("\")\n");
+			b.append("server.").append(i).append(".name=$name\n");
+			b.append("#foreach($port in $ports)server.").append(i).append(".port.$velocityCount=$port\n#end\n");
+			b.append("#if($host == \"web01\")primary=true#else primary=false#end\n");
+		}
+		this.template = b.toString();
+	}
+	
+	/**
+	 * @return the rendered content
+	 * @throws Exception on errors
+	 */
+	@Benchmark
+	public String cold() throws Exception {
+		StringWriter w = new StringWriter();
+		Velocity.evaluate(new VelocityContext(this.global), w, "configfileGen", this.template);
+		return w.toString();
+	}
+	
+	/**
+	 * @return the rendered content
+	 * @throws Exception on errors
+	 */
+	@Benchmark
+	public String warm() throws Exception {
+		StringWriter w = new StringWriter();
+		TemplateCache.get(this.template).merge(new VelocityContext(this.global), w);
+		return w.toString();
+	}
+	
+	/**
+	 * @param args not used
+	 * @throws RunnerException on errors
+	 */
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(TemplateRenderBenchmark.class.getSimpleName()).build()).run();
+	}
+}
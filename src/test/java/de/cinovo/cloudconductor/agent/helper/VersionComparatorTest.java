@@ -0,0 +1,69 @@
+package de.cinovo.cloudconductor.agent.helper;
+
+/*
+ * #%L
+ * Node Agent for cloudconductor framework
+ * %%
+ * Copyright (C) 2013 - 2014 Cinovo AG
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Copyright 2014 Cinovo AG<br>
+ * <br>
+ * Orderings of the {@link VersionComparator}, the expected results are the ones of rpmvercmp and dpkg --compare-versions.
+ */
+public class VersionComparatorTest {
+	
+	@Test
+	public void testRpm() {
+		VersionComparatorTest.assertOrder(VersionComparator.RPM, "1.0", "1.0-1");
+		VersionComparatorTest.assertOrder(VersionComparator.RPM, "1.0-1", "1.0-2");
+		VersionComparatorTest.assertOrder(VersionComparator.RPM, "1.0-1", "1.0-1.el7");
+		VersionComparatorTest.assertOrder(VersionComparator.RPM, "1.0-9", "1.0-10");
+		VersionComparatorTest.assertOrder(VersionComparator.RPM, "1.0a", "1.0.1");
+		VersionComparatorTest.assertOrder(VersionComparator.RPM, "1.0~rc1", "1.0");
+		VersionComparatorTest.assertOrder(VersionComparator.RPM, "1.0", "1.0^git1");
+		VersionComparatorTest.assertOrder(VersionComparator.RPM, "2.0-1", "1:1.0-1");
+		VersionComparatorTest.assertEqual(VersionComparator.RPM, "1.01-1", "1.1-1");
+		VersionComparatorTest.assertEqual(VersionComparator.RPM, "0:1.0-1", "1.0-1");
+	}
+	
+	@Test
+	public void testDeb() {
+		VersionComparatorTest.assertOrder(VersionComparator.DEB, "1.0", "1.0-1");
+		VersionComparatorTest.assertOrder(VersionComparator.DEB, "1.0-1", "1.0-1ubuntu1");
+		VersionComparatorTest.assertOrder(VersionComparator.DEB, "1.0~rc1-1", "1.0-1");
+		VersionComparatorTest.assertOrder(VersionComparator.DEB, "1.0-1", "1.0+b1-1");
+		VersionComparatorTest.assertOrder(VersionComparator.DEB, "1.0-9", "1.0-10");
+		VersionComparatorTest.assertOrder(VersionComparator.DEB, "1:9.9", "2:1.0");
+		VersionComparatorTest.assertOrder(VersionComparator.DEB, "1.0-1-1", "1.0-1-2");
+		VersionComparatorTest.assertEqual(VersionComparator.DEB, "1.0", "1.0-0");
+		VersionComparatorTest.assertEqual(VersionComparator.DEB, "0:1.0-1", "1.0-1");
+	}
+	
+	private static void assertOrder(VersionComparator comparator, String older, String newer) {
+		Assert.assertTrue(older + " < " + newer, comparator.compare(older, newer) < 0);
+		Assert.assertTrue(newer + " > " + older, comparator.compare(newer, older) > 0);
+	}
+	
+	private static void assertEqual(VersionComparator comparator, String a, String b) {
+		Assert.assertEquals(a + " = " + b, 0, comparator.compare(a, b));
+		Assert.assertEquals(b + " = " + a, 0, comparator.compare(b, a));
+	}
+}
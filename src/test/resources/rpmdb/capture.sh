@@ -0,0 +1,59 @@
+#!/bin/bash
+
+# Captures a small rpm database fixture written by rpm itself, needs rpm 4.16 or later built with the backend.
+# usage: capture.sh <sqlite|ndb> <package.rpm>... [-e <name>]
+# The packages are only registered (--justdb), nothing gets installed. A package named with -e is removed again afterwards,
+# so the database has a freed slot or removed row like a real one. Writes the database and the matching rpm-qa.txt into the
+# folder of the backend next to this script.
+
+BACKEND=$1
+shift
+PACKAGES=()
+ERASE=
+while [ $# -gt 0 ]; do
+	if [ "$1" == "-e" ]; then
+		ERASE=$2
+		shift 2
+	else
+		PACKAGES+=("$1")
+		shift
+	fi
+done
+case "$BACKEND" in
+	sqlite)
+		DBFILE=rpmdb.sqlite
+		;;
+	ndb)
+		DBFILE=Packages.db
+		;;
+	*)
+		echo "usage: $0 <sqlite|ndb> <package.rpm>... [-e <name>]" 1>&2
+		exit 1
+		;;
+esac
+if [ ${#PACKAGES[@]} -eq 0 ]; then
+	echo "No packages were given" 1>&2
+	exit 1
+fi
+
+set -e
+TARGET=$(cd "$(dirname "$0")" && pwd)/$BACKEND
+DB=$(mktemp -d)
+trap 'rm -rf "$DB"' EXIT
+RPM=(rpm --dbpath "$DB" --define "_db_backend $BACKEND")
+
+"${RPM[@]}" --initdb
+"${RPM[@]}" -i --justdb --nodeps --noscripts --notriggers --ignorearch --ignoreos "${PACKAGES[@]}"
+if [ -n "$ERASE" ]; then
+	"${RPM[@]}" -e --justdb --nodeps --noscripts --notriggers "$ERASE"
+fi
+
+## rpm checkpoints the sqlite journal when it closes the database, the reader refuses a database with a pending one
+if [ -s "$DB/$DBFILE-wal" ]; then
+	echo "The database still has a write-ahead log" 1>&2
+	exit 1
+fi
+mkdir -p "$TARGET"
+cp "$DB/$DBFILE" "$TARGET/$DBFILE"
+"${RPM[@]}" -qa --queryformat '%{NAME};%{VERSION}-%{RELEASE}\n' > "$TARGET/rpm-qa.txt"
+echo "Captured $(wc -l < "$TARGET/rpm-qa.txt") packages into $TARGET"